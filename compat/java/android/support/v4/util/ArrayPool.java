@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A pool of {@code byte[]} and {@code int[]} arrays, used to avoid allocating large temporary
+ * buffers over and over again.
+ * <p>
+ * Arrays are handed out by power-of-two size classes, so an array returned by
+ * {@link #acquireByteArray(int)} or {@link #acquireIntArray(int)} may be longer than requested
+ * and its contents are undefined. Once the caller is done with an array it should give it back
+ * with {@link #release(byte[])} or {@link #release(int[])} and stop using it.
+ * <p>
+ * The total size of the pooled arrays is bounded by a byte budget. When the budget is exceeded,
+ * arrays from the least recently used size classes are dropped first. Apps can let the pool
+ * react to memory pressure by forwarding {@link #onTrimMemory(int)} from their
+ * {@link android.app.Application} or components.
+ * <p>
+ * This class is thread safe.
+ */
+public final class ArrayPool {
+
+    /** Size of the process wide pool returned by {@link #getDefault()}. */
+    private static final int DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    /** Arrays shorter than this are cheap to allocate and are never pooled. */
+    private static final int MIN_POOLED_LENGTH = 64;
+
+    private static final int TYPE_BYTE = 0;
+    private static final int TYPE_INT = 1;
+
+    private static final Object sDefaultLock = new Object();
+    private static ArrayPool sDefault;
+
+    /** Size class buckets, iterated from least to most recently used. */
+    private final LinkedHashMap<Integer, ArrayList<Object>> mBuckets =
+            new LinkedHashMap<Integer, ArrayList<Object>>(0, 0.75f, true);
+
+    private final int mMaxSizeBytes;
+    private int mSizeBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * Returns the process wide pool shared by the support library.
+     */
+    @NonNull
+    public static ArrayPool getDefault() {
+        synchronized (sDefaultLock) {
+            if (sDefault == null) {
+                sDefault = new ArrayPool(DEFAULT_MAX_SIZE_BYTES);
+            }
+            return sDefault;
+        }
+    }
+
+    /**
+     * @param maxSizeBytes the maximum total size in bytes of the arrays held by the pool.
+     */
+    public ArrayPool(int maxSizeBytes) {
+        if (maxSizeBytes <= 0) {
+            throw new IllegalArgumentException("maxSizeBytes <= 0");
+        }
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns a {@code byte[]} which is at least {@code minLength} long. The contents of the
+     * array are undefined.
+     */
+    @NonNull
+    public byte[] acquireByteArray(int minLength) {
+        final int length = sizeClassLength(minLength);
+        final byte[] array = (byte[]) acquire(TYPE_BYTE, length);
+        return array != null ? array : new byte[length];
+    }
+
+    /**
+     * Returns an {@code int[]} which is at least {@code minLength} long. The contents of the
+     * array are undefined.
+     */
+    @NonNull
+    public int[] acquireIntArray(int minLength) {
+        final int length = sizeClassLength(minLength);
+        final int[] array = (int[]) acquire(TYPE_INT, length);
+        return array != null ? array : new int[length];
+    }
+
+    /**
+     * Gives an array back to the pool. The caller must not use the array afterwards.
+     */
+    public void release(@NonNull byte[] array) {
+        release(TYPE_BYTE, array, array.length, array.length);
+    }
+
+    /**
+     * Gives an array back to the pool. The caller must not use the array afterwards.
+     */
+    public void release(@NonNull int[] array) {
+        release(TYPE_INT, array, array.length, array.length * 4);
+    }
+
+    /**
+     * Drops pooled arrays, least recently used size classes first, until the pooled arrays use
+     * at most {@code maxSizeBytes} bytes.
+     */
+    public synchronized void trimToSize(int maxSizeBytes) {
+        final Iterator<ArrayList<Object>> it = mBuckets.values().iterator();
+        while (mSizeBytes > maxSizeBytes && it.hasNext()) {
+            final ArrayList<Object> bucket = it.next();
+            while (mSizeBytes > maxSizeBytes && !bucket.isEmpty()) {
+                // Evict the array which has been sitting in the bucket the longest
+                mSizeBytes -= sizeInBytes(bucket.remove(0));
+                mEvictionCount++;
+            }
+            if (bucket.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all pooled arrays.
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSizeBytes() / 2);
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the arrays currently held by the pool.
+     */
+    public synchronized int sizeBytes() {
+        return mSizeBytes;
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the arrays held by the pool.
+     */
+    public synchronized int maxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    /**
+     * Returns the number of times an acquire call was served from the pool.
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of times an acquire call had to allocate a new array.
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of arrays which have been dropped to stay within the budget.
+     */
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final int accesses = mHitCount + mMissCount;
+        final int hitPercent = accesses != 0 ? (100 * mHitCount / accesses) : 0;
+        return String.format("ArrayPool[maxSizeBytes=%d,sizeBytes=%d,hits=%d,misses=%d,"
+                + "hitRate=%d%%]", mMaxSizeBytes, mSizeBytes, mHitCount, mMissCount, hitPercent);
+    }
+
+    private synchronized Object acquire(int type, int length) {
+        final Integer key = bucketKey(type, length);
+        final ArrayList<Object> bucket = mBuckets.get(key);
+        if (bucket == null || bucket.isEmpty()) {
+            mMissCount++;
+            return null;
+        }
+        final Object array = bucket.remove(bucket.size() - 1);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(key);
+        }
+        mSizeBytes -= sizeInBytes(array);
+        mHitCount++;
+        return array;
+    }
+
+    private void release(int type, Object array, int length, int sizeBytes) {
+        if (length < MIN_POOLED_LENGTH || Integer.bitCount(length) != 1) {
+            // Not one of our size classes
+            return;
+        }
+        synchronized (this) {
+            if (sizeBytes > mMaxSizeBytes / 2) {
+                // Too big, it would flush most of the pool
+                return;
+            }
+            final Integer key = bucketKey(type, length);
+            ArrayList<Object> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Object>();
+                mBuckets.put(key, bucket);
+            }
+            bucket.add(array);
+            mSizeBytes += sizeBytes;
+        }
+        trimToSize(maxSizeBytes());
+    }
+
+    private static Integer bucketKey(int type, int length) {
+        // Lengths are powers of two, so the bit index identifies the size class
+        return (Integer.numberOfTrailingZeros(length) << 1) | type;
+    }
+
+    private static int sizeInBytes(Object array) {
+        return array instanceof int[] ? ((int[]) array).length * 4 : ((byte[]) array).length;
+    }
+
+    private static int sizeClassLength(int minLength) {
+        if (minLength < 0) {
+            throw new IllegalArgumentException("minLength < 0");
+        }
+        if (minLength <= MIN_POOLED_LENGTH) {
+            return MIN_POOLED_LENGTH;
+        }
+        if (minLength > (1 << 30)) {
+            // No power of two is big enough, hand out an exactly sized array
+            return minLength;
+        }
+        final int length = Integer.highestOneBit(minLength);
+        return length == minLength ? length : length << 1;
+    }
+}
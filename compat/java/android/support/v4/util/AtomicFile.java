@@ -18,11 +18,17 @@ package android.support.v4.util;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
 
 /**
  * Static library support version of the framework's {@link android.util.AtomicFile},
@@ -38,19 +44,46 @@ import java.io.IOException;
  * Do not use this class when the file may be accessed or modified concurrently
  * by multiple threads or processes.  The caller is responsible for ensuring
  * appropriate mutual exclusion invariants whenever it accesses the file.
+ * </p><p>
+ * Small, frequent updates can be written with {@link #append(byte[])} instead
+ * of rewriting the whole file.  Appended data goes to a journal next to the
+ * base file as checksummed records, and {@link #readFully()} returns the base
+ * file followed by every intact record.  Once the journal grows past
+ * {@link #setCompactionRatio(float) a ratio} of the base file size, it is
+ * folded back into the base file with a regular atomic write.
  * </p>
  */
 public class AtomicFile {
+    private static final int JOURNAL_MAGIC = 0x41464a31;
+    /** Magic, length and CRC of the base file the journal applies to. */
+    private static final int JOURNAL_HEADER_SIZE = 4 + 8 + 4;
+    /** Length and CRC of the record payload. */
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+    /** Journals smaller than this are never compacted, whatever the ratio. */
+    private static final int MIN_COMPACTION_SIZE = 4096;
+    private static final float DEFAULT_COMPACTION_RATIO = 1.0f;
+
     private final File mBaseName;
     private final File mBackupName;
+    private final File mJournalName;
+
+    private float mCompactionRatio = DEFAULT_COMPACTION_RATIO;
+
+    // State of the journal as of the last append, or -1 if it has to be read again
+    private long mJournalLength = -1;
+    private int mJournalBaseLength;
+    private int mJournalBaseCrc;
 
     /**
      * Create a new AtomicFile for a file located at the given File path.
-     * The secondary backup file will be the same file path with ".bak" appended.
+     * The secondary backup file will be the same file path with ".bak" appended,
+     * and the journal used by {@link #append(byte[])} the same path with
+     * ".journal" appended.
      */
     public AtomicFile(File baseName) {
         mBaseName = baseName;
         mBackupName = new File(baseName.getPath() + ".bak");
+        mJournalName = new File(baseName.getPath() + ".journal");
     }
 
     /**
@@ -62,11 +95,13 @@ public class AtomicFile {
     }
 
     /**
-     * Delete the atomic file.  This deletes both the base and backup files.
+     * Delete the atomic file.  This deletes the base, backup and journal files.
      */
     public void delete() {
         mBaseName.delete();
         mBackupName.delete();
+        mJournalName.delete();
+        mJournalLength = -1;
     }
 
     /**
@@ -82,8 +117,12 @@ public class AtomicFile {
      * thread finishes the write the new write operation will no longer be
      * safe (or will be lost).  You must do your own threading protection for
      * access to AtomicFile.
+     *
+     * <p>Once the write is finished, any data previously added with
+     * {@link #append(byte[])} is discarded.
      */
     public FileOutputStream startWrite() throws IOException {
+        mJournalLength = -1;
         // Rename the current file so it may be used as a backup during the next read
         if (mBaseName.exists()) {
             if (!mBackupName.exists()) {
@@ -124,6 +163,9 @@ public class AtomicFile {
             try {
                 str.close();
                 mBackupName.delete();
+                // The journal no longer matches the base file; should deleting it fail,
+                // its header makes sure it will be ignored
+                mJournalName.delete();
             } catch (IOException e) {
                 Log.w("AtomicFile", "finishWrite: Got exception:", e);
             }
@@ -159,6 +201,9 @@ public class AtomicFile {
      * write and roll back, causing the new data currently being written to
      * be dropped.  You must do your own threading protection for access to
      * AtomicFile.
+     *
+     * <p>The returned stream only covers the base file; use {@link #readFully()}
+     * to also read data added with {@link #append(byte[])}.
      */
     public FileInputStream openRead() throws FileNotFoundException {
         if (mBackupName.exists()) {
@@ -170,9 +215,14 @@ public class AtomicFile {
 
     /**
      * A convenience for {@link #openRead()} that also reads all of the
-     * file contents into a byte array which is returned.
+     * file contents into a byte array which is returned.  This includes
+     * the data added with {@link #append(byte[])}.
      */
     public byte[] readFully() throws IOException {
+        if (!mBaseName.exists() && !mBackupName.exists() && mJournalName.exists()) {
+            // Only appended to so far
+            return replayJournal(new byte[0], 0);
+        }
         FileInputStream stream = openRead();
         try {
             int pos = 0;
@@ -185,7 +235,7 @@ public class AtomicFile {
                 if (amt <= 0) {
                     //Log.i("foo", "**** FINISHED READING: pos=" + pos
                     //        + " len=" + data.length);
-                    return data;
+                    return replayJournal(data, pos);
                 }
                 pos += amt;
                 avail = stream.available();
@@ -200,6 +250,197 @@ public class AtomicFile {
         }
     }
 
+    /**
+     * Append data to the file without rewriting it.  The data is written to
+     * the journal as a checksummed record and synced before this returns, so
+     * it is either entirely visible to {@link #readFully()} or not at all.
+     * When the journal has grown large enough, this also runs {@link #compact()}.
+     */
+    public void append(byte[] data) throws IOException {
+        append(data, 0, data.length);
+    }
+
+    /**
+     * Append {@code length} bytes of {@code data} starting at {@code offset}.
+     *
+     * @see #append(byte[])
+     */
+    public void append(byte[] data, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length
+                    + " data.length=" + data.length);
+        }
+        if (mJournalLength < 0) {
+            final byte[] base = readBase();
+            mJournalBaseLength = base.length;
+            mJournalBaseCrc = crc(base, 0, base.length);
+            mJournalLength = readJournal(base, base.length, null);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                JOURNAL_HEADER_SIZE + RECORD_HEADER_SIZE + length);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        if (mJournalLength == 0) {
+            out.writeInt(JOURNAL_MAGIC);
+            out.writeLong(mJournalBaseLength);
+            out.writeInt(mJournalBaseCrc);
+        }
+        out.writeInt(length);
+        out.writeInt(crc(data, offset, length));
+        out.write(data, offset, length);
+
+        final RandomAccessFile journal = openJournal();
+        try {
+            // Writing at the end of the last intact record also drops a record
+            // torn by an earlier crash
+            journal.seek(mJournalLength);
+            journal.write(bytes.toByteArray());
+            journal.setLength(mJournalLength + bytes.size());
+            journal.getFD().sync();
+        } catch (IOException e) {
+            mJournalLength = -1;
+            throw e;
+        } finally {
+            journal.close();
+        }
+        mJournalLength += bytes.size();
+
+        if (mJournalLength >= MIN_COMPACTION_SIZE
+                && mJournalLength > mCompactionRatio * mJournalBaseLength) {
+            compact();
+        }
+    }
+
+    /**
+     * Fold the data added with {@link #append(byte[])} into the base file,
+     * using a regular atomic write, and remove the journal.
+     */
+    public void compact() throws IOException {
+        final byte[] data = readFully();
+        final FileOutputStream str = startWrite();
+        try {
+            str.write(data);
+        } catch (IOException e) {
+            failWrite(str);
+            throw e;
+        }
+        finishWrite(str);
+    }
+
+    /**
+     * Set how large the journal may grow, relative to the size of the base
+     * file, before {@link #append(byte[])} compacts it.  Defaults to 1, so that
+     * the journal is compacted once it is larger than the base file.
+     */
+    public void setCompactionRatio(float ratio) {
+        if (ratio <= 0) {
+            throw new IllegalArgumentException("ratio <= 0");
+        }
+        mCompactionRatio = ratio;
+    }
+
+    private byte[] readBase() throws IOException {
+        if (!mBaseName.exists() && !mBackupName.exists()) {
+            return new byte[0];
+        }
+        final FileInputStream stream = openRead();
+        try {
+            final DataInputStream in = new DataInputStream(stream);
+            final byte[] data = new byte[(int) stream.getChannel().size()];
+            in.readFully(data);
+            return data;
+        } finally {
+            stream.close();
+        }
+    }
+
+    private RandomAccessFile openJournal() throws IOException {
+        try {
+            return new RandomAccessFile(mJournalName, "rw");
+        } catch (FileNotFoundException e) {
+            File parent = mJournalName.getParentFile();
+            if (!parent.mkdirs()) {
+                throw new IOException("Couldn't create directory " + mJournalName);
+            }
+            try {
+                return new RandomAccessFile(mJournalName, "rw");
+            } catch (FileNotFoundException e2) {
+                throw new IOException("Couldn't create " + mJournalName);
+            }
+        }
+    }
+
+    /**
+     * Returns the first {@code baseLength} bytes of {@code base} followed by
+     * the records of the journal, or {@code base} itself if there are none.
+     */
+    private byte[] replayJournal(byte[] base, int baseLength) throws IOException {
+        if (!mJournalName.exists()) {
+            return base;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(base, 0, baseLength);
+        if (readJournal(base, baseLength, out) <= JOURNAL_HEADER_SIZE) {
+            return base;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the journal, writing the payload of every intact record to
+     * {@code payloads} if it is not null.
+     *
+     * @return the length of the intact part of the journal, or 0 if there is no
+     * journal for the given base file contents.
+     */
+    private long readJournal(byte[] base, int baseLength, ByteArrayOutputStream payloads)
+            throws IOException {
+        final long journalSize = mJournalName.length();
+        if (journalSize < JOURNAL_HEADER_SIZE) {
+            return 0;
+        }
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mJournalName)));
+        try {
+            if (in.readInt() != JOURNAL_MAGIC
+                    || in.readLong() != baseLength
+                    || in.readInt() != crc(base, 0, baseLength)) {
+                // Left over from a previous version of the base file
+                return 0;
+            }
+            long validLength = JOURNAL_HEADER_SIZE;
+            byte[] record = null;
+            while (validLength + RECORD_HEADER_SIZE <= journalSize) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if (length < 0 || validLength + RECORD_HEADER_SIZE + length > journalSize) {
+                    // Torn write
+                    break;
+                }
+                if (record == null || record.length < length) {
+                    record = new byte[length];
+                }
+                in.readFully(record, 0, length);
+                if (crc(record, 0, length) != checksum) {
+                    break;
+                }
+                if (payloads != null) {
+                    payloads.write(record, 0, length);
+                }
+                validLength += RECORD_HEADER_SIZE + length;
+            }
+            return validLength;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
     static boolean sync(FileOutputStream stream) {
         try {
             if (stream != null) {
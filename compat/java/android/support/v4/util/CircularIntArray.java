@@ -41,6 +41,32 @@ public final class CircularIntArray
         mCapacityBitmask = newCapacity - 1;
     }
 
+    private void ensureCapacity(int minCapacity) {
+        int newCapacity = mElements.length;
+        while (newCapacity < minCapacity) {
+            newCapacity <<= 1;
+            if (newCapacity <= 0) {
+                throw new RuntimeException("Max array capacity exceeded");
+            }
+        }
+        if (newCapacity == mElements.length) {
+            return;
+        }
+        final int size = size();
+        int[] a = new int[newCapacity];
+        copyElements(a, 0, size);
+        mElements = a;
+        mHead = 0;
+        mTail = size;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    private void copyElements(int[] dst, int offset, int count) {
+        final int firstPart = Math.min(count, mElements.length - mHead);
+        System.arraycopy(mElements, mHead, dst, offset, firstPart);
+        System.arraycopy(mElements, 0, dst, offset + firstPart, count - firstPart);
+    }
+
     /**
      * Creates a circular array with default capacity.
      */
@@ -99,6 +125,55 @@ public final class CircularIntArray
         }
     }
 
+    /**
+     * Add integers at end of the CircularIntArray, in order. The capacity is grown at most once.
+     * @param src  Array holding the integers to add.
+     * @param offset  Index in src of the first integer to add.
+     * @param length  Number of integers to add.
+     * @throws ArrayIndexOutOfBoundsException if offset and length are out of the bounds of src.
+     */
+    public void addAll(int[] src, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > src.length - length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        // One slot always stays empty so that a full array can be told apart from an empty one
+        ensureCapacity(size() + length + 1);
+        final int firstPart = Math.min(length, mElements.length - mTail);
+        System.arraycopy(src, offset, mElements, mTail, firstPart);
+        System.arraycopy(src, offset + firstPart, mElements, 0, length - firstPart);
+        mTail = (mTail + length) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove integers from front of the CircularIntArray and copy them into dst, until dst is
+     * full or the CircularIntArray is empty.
+     * @param dst  Array to copy the integers to.
+     * @return  Number of integers removed.
+     */
+    public int drainTo(int[] dst) {
+        return drainTo(dst, 0, dst.length);
+    }
+
+    /**
+     * Remove at most maxLength integers from front of the CircularIntArray and copy them into
+     * dst starting at offset.
+     * @param dst  Array to copy the integers to.
+     * @param offset  Index in dst of the first integer to copy.
+     * @param maxLength  Maximum number of integers to remove.
+     * @return  Number of integers removed.
+     * @throws ArrayIndexOutOfBoundsException if offset and maxLength are out of the bounds of
+     *         dst.
+     */
+    public int drainTo(int[] dst, int offset, int maxLength) {
+        if (offset < 0 || maxLength < 0 || offset > dst.length - maxLength) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        final int count = Math.min(maxLength, size());
+        copyElements(dst, offset, count);
+        mHead = (mHead + count) & mCapacityBitmask;
+        return count;
+    }
+
     /**
      * Remove first integer from front of the CircularIntArray and return it.
      * @return  The integer removed.
@@ -204,6 +279,50 @@ public final class CircularIntArray
         return (mTail - mHead) & mCapacityBitmask;
     }
 
+    /**
+     * Get the array backing the CircularIntArray, to read integers in place without copying
+     * them. The integers are stored in order in segment 0 followed by segment 1, see
+     * {@link #getSegmentOffset(int)} and {@link #getSegmentLength(int)}. The returned array is
+     * only valid until the CircularIntArray is next modified and must not be written to.
+     * @return The backing array.
+     */
+    public int[] getBackingArray() {
+        return mElements;
+    }
+
+    /**
+     * Get the index in {@link #getBackingArray()} of the first integer of a segment.
+     * @param segment  0 for the segment holding the first integers, 1 for the one holding the
+     *                 integers that wrapped around the end of the backing array.
+     * @return Index of the first integer of the segment.
+     * @throws ArrayIndexOutOfBoundsException if segment is not 0 or 1.
+     */
+    public int getSegmentOffset(int segment) {
+        if (segment == 0) {
+            return mHead;
+        } else if (segment == 1) {
+            return 0;
+        }
+        throw new ArrayIndexOutOfBoundsException();
+    }
+
+    /**
+     * Get number of integers in a segment of {@link #getBackingArray()}.
+     * @param segment  0 for the segment holding the first integers, 1 for the one holding the
+     *                 integers that wrapped around the end of the backing array.
+     * @return Number of integers in the segment, possibly 0.
+     * @throws ArrayIndexOutOfBoundsException if segment is not 0 or 1.
+     */
+    public int getSegmentLength(int segment) {
+        final boolean wrapped = mTail < mHead;
+        if (segment == 0) {
+            return wrapped ? mElements.length - mHead : mTail - mHead;
+        } else if (segment == 1) {
+            return wrapped ? mTail : 0;
+        }
+        throw new ArrayIndexOutOfBoundsException();
+    }
+
     /**
      * Return true if size() is 0.
      * @return true if size() is 0.
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package android.support.v4.util;
+
+/**
+ * CircularLongArray is a circular long array data structure that provides O(1) random read, O(1)
+ * prepend and O(1) append. The CircularLongArray automatically grows its capacity when number of
+ * added longs is over its capacity.
+ */
+public final class CircularLongArray
+{
+    private long[] mElements;
+    private int mHead;
+    private int mTail;
+    private int mCapacityBitmask;
+
+    private void doubleCapacity() {
+        int n = mElements.length;
+        int r = n - mHead;
+        int newCapacity = n << 1;
+        if (newCapacity < 0) {
+            throw new RuntimeException("Max array capacity exceeded");
+        }
+        long[] a = new long[newCapacity];
+        System.arraycopy(mElements, mHead, a, 0, r);
+        System.arraycopy(mElements, 0, a, r, mHead);
+        mElements = a;
+        mHead = 0;
+        mTail = n;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        int newCapacity = mElements.length;
+        while (newCapacity < minCapacity) {
+            newCapacity <<= 1;
+            if (newCapacity <= 0) {
+                throw new RuntimeException("Max array capacity exceeded");
+            }
+        }
+        if (newCapacity == mElements.length) {
+            return;
+        }
+        final int size = size();
+        long[] a = new long[newCapacity];
+        copyElements(a, 0, size);
+        mElements = a;
+        mHead = 0;
+        mTail = size;
+        mCapacityBitmask = newCapacity - 1;
+    }
+
+    private void copyElements(long[] dst, int offset, int count) {
+        final int firstPart = Math.min(count, mElements.length - mHead);
+        System.arraycopy(mElements, mHead, dst, offset, firstPart);
+        System.arraycopy(mElements, 0, dst, offset + firstPart, count - firstPart);
+    }
+
+    /**
+     * Creates a circular array with default capacity.
+     */
+    public CircularLongArray() {
+        this(8);
+    }
+
+    /**
+     * Creates a circular array with capacity for at least {@code minCapacity}
+     * elements.
+     *
+     * @param minCapacity the minimum capacity, between 1 and 2^30 inclusive
+     */
+    public CircularLongArray(int minCapacity) {
+        if (minCapacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1");
+        }
+        if (minCapacity > (2 << 29)) {
+            throw new IllegalArgumentException("capacity must be <= 2^30");
+        }
+
+        // If minCapacity isn't a power of 2, round up to the next highest
+        // power of 2.
+        final int arrayCapacity;
+        if (Integer.bitCount(minCapacity) != 1) {
+            arrayCapacity = Integer.highestOneBit(minCapacity - 1) << 1;
+        } else {
+            arrayCapacity = minCapacity;
+        }
+
+        mCapacityBitmask = arrayCapacity - 1;
+        mElements = new long[arrayCapacity];
+    }
+
+    /**
+     * Add a long in front of the CircularLongArray.
+     * @param e  Long to add.
+     */
+    public void addFirst(long e) {
+        mHead = (mHead - 1) & mCapacityBitmask;
+        mElements[mHead] = e;
+        if (mHead == mTail) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Add a long at end of the CircularLongArray.
+     * @param e  Long to add.
+     */
+    public void addLast(long e) {
+        mElements[mTail] = e;
+        mTail = (mTail + 1) & mCapacityBitmask;
+        if (mTail == mHead) {
+            doubleCapacity();
+        }
+    }
+
+    /**
+     * Add longs at end of the CircularLongArray, in order. The capacity is grown at most once.
+     * @param src  Array holding the longs to add.
+     * @param offset  Index in src of the first long to add.
+     * @param length  Number of longs to add.
+     * @throws ArrayIndexOutOfBoundsException if offset and length are out of the bounds of src.
+     */
+    public void addAll(long[] src, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > src.length - length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        // One slot always stays empty so that a full array can be told apart from an empty one
+        ensureCapacity(size() + length + 1);
+        final int firstPart = Math.min(length, mElements.length - mTail);
+        System.arraycopy(src, offset, mElements, mTail, firstPart);
+        System.arraycopy(src, offset + firstPart, mElements, 0, length - firstPart);
+        mTail = (mTail + length) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove longs from front of the CircularLongArray and copy them into dst, until dst is
+     * full or the CircularLongArray is empty.
+     * @param dst  Array to copy the longs to.
+     * @return  Number of longs removed.
+     */
+    public int drainTo(long[] dst) {
+        return drainTo(dst, 0, dst.length);
+    }
+
+    /**
+     * Remove at most maxLength longs from front of the CircularLongArray and copy them into
+     * dst starting at offset.
+     * @param dst  Array to copy the longs to.
+     * @param offset  Index in dst of the first long to copy.
+     * @param maxLength  Maximum number of longs to remove.
+     * @return  Number of longs removed.
+     * @throws ArrayIndexOutOfBoundsException if offset and maxLength are out of the bounds of
+     *         dst.
+     */
+    public int drainTo(long[] dst, int offset, int maxLength) {
+        if (offset < 0 || maxLength < 0 || offset > dst.length - maxLength) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        final int count = Math.min(maxLength, size());
+        copyElements(dst, offset, count);
+        mHead = (mHead + count) & mCapacityBitmask;
+        return count;
+    }
+
+    /**
+     * Remove first long from front of the CircularLongArray and return it.
+     * @return  The long removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularLongArray is empty.
+     */
+    public long popFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        long result = mElements[mHead];
+        mHead = (mHead + 1) & mCapacityBitmask;
+        return result;
+    }
+
+    /**
+     * Remove last long from end of the CircularLongArray and return it.
+     * @return  The long removed.
+     * @throws ArrayIndexOutOfBoundsException if CircularLongArray is empty.
+     */
+    public long popLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        int t = (mTail - 1) & mCapacityBitmask;
+        long result = mElements[t];
+        mTail = t;
+        return result;
+    }
+
+    /**
+     * Remove all longs from the CircularLongArray.
+     */
+    public void clear() {
+        mTail = mHead;
+    }
+
+    /**
+     * Remove multiple longs from front of the CircularLongArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of longs to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromStart(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mHead = (mHead + numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Remove multiple elements from end of the CircularLongArray, ignore when numOfElements
+     * is less than or equals to 0.
+     * @param numOfElements  Number of longs to remove.
+     * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than
+     *         {@link #size()}
+     */
+    public void removeFromEnd(int numOfElements) {
+        if (numOfElements <= 0) {
+            return;
+        }
+        if (numOfElements > size()) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        mTail = (mTail - numOfElements) & mCapacityBitmask;
+    }
+
+    /**
+     * Get first long of the CircularLongArray.
+     * @return The first long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularLongArray is empty.
+     */
+    public long getFirst() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[mHead];
+    }
+
+    /**
+     * Get last long of the CircularLongArray.
+     * @return The last long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if CircularLongArray is empty.
+     */
+    public long getLast() {
+        if (mHead == mTail) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mTail - 1) & mCapacityBitmask];
+    }
+
+    /**
+     * Get nth (0 <= n <= size()-1) long of the CircularLongArray.
+     * @param n  The zero based element index in the CircularLongArray.
+     * @return The nth long.
+     * @throws {@link ArrayIndexOutOfBoundsException} if n < 0 or n >= size().
+     */
+    public long get(int n) {
+        if (n < 0 || n >= size()) throw new ArrayIndexOutOfBoundsException();
+        return mElements[(mHead + n) & mCapacityBitmask];
+    }
+
+    /**
+     * Get number of longs in the CircularLongArray.
+     * @return Number of longs in the CircularLongArray.
+     */
+    public int size() {
+        return (mTail - mHead) & mCapacityBitmask;
+    }
+
+    /**
+     * Get the array backing the CircularLongArray, to read longs in place without copying
+     * them. The longs are stored in order in segment 0 followed by segment 1, see
+     * {@link #getSegmentOffset(int)} and {@link #getSegmentLength(int)}. The returned array is
+     * only valid until the CircularLongArray is next modified and must not be written to.
+     * @return The backing array.
+     */
+    public long[] getBackingArray() {
+        return mElements;
+    }
+
+    /**
+     * Get the index in {@link #getBackingArray()} of the first long of a segment.
+     * @param segment  0 for the segment holding the first longs, 1 for the one holding the
+     *                 longs that wrapped around the end of the backing array.
+     * @return Index of the first long of the segment.
+     * @throws ArrayIndexOutOfBoundsException if segment is not 0 or 1.
+     */
+    public int getSegmentOffset(int segment) {
+        if (segment == 0) {
+            return mHead;
+        } else if (segment == 1) {
+            return 0;
+        }
+        throw new ArrayIndexOutOfBoundsException();
+    }
+
+    /**
+     * Get number of longs in a segment of {@link #getBackingArray()}.
+     * @param segment  0 for the segment holding the first longs, 1 for the one holding the
+     *                 longs that wrapped around the end of the backing array.
+     * @return Number of longs in the segment, possibly 0.
+     * @throws ArrayIndexOutOfBoundsException if segment is not 0 or 1.
+     */
+    public int getSegmentLength(int segment) {
+        final boolean wrapped = mTail < mHead;
+        if (segment == 0) {
+            return wrapped ? mElements.length - mHead : mTail - mHead;
+        } else if (segment == 1) {
+            return wrapped ? mTail : 0;
+        }
+        throw new ArrayIndexOutOfBoundsException();
+    }
+
+    /**
+     * Return true if size() is 0.
+     * @return true if size() is 0.
+     */
+    public boolean isEmpty() {
+        return mHead == mTail;
+    }
+
+}
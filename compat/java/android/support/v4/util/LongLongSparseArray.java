@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SparseArray mapping longs to longs.  Unlike {@link LongSparseArray}, values are stored
+ * as primitives, so no boxing is needed and each mapping only costs the 16 bytes of its key
+ * and value.
+ *
+ * <p>The mappings can either be kept in Java arrays, or in a direct {@link ByteBuffer} so that
+ * large tables live outside of the Java heap.  A table written with {@link #writeTo(File)} can
+ * be memory-mapped back with {@link #map(File)} without reading it into memory.</p>
+ *
+ * <p>Like the platform's {@code SparseLongArray}, this container removes entries eagerly,
+ * so it never needs a garbage collection step.  Lookups use a binary search and adds and
+ * removes require inserting and deleting entries in the arrays; large tables should be built
+ * with {@link #putAllSorted(long[], long[], int, int)} rather than one {@link #put} at a
+ * time.</p>
+ */
+public class LongLongSparseArray {
+    private static final int FILE_MAGIC = 0x4c4c5341;
+    /** Magic and size, keeping the key and value sections 8 byte aligned. */
+    private static final int FILE_HEADER_SIZE = 8;
+    /** A direct buffer is indexed by int, so it holds at most this many mappings. */
+    private static final int MAX_DIRECT_CAPACITY = Integer.MAX_VALUE / 16;
+
+    private final boolean mDirect;
+    private final boolean mReadOnly;
+
+    // Heap storage
+    private long[] mKeys;
+    private long[] mValues;
+
+    // Direct or mapped storage
+    private LongBuffer mKeyBuffer;
+    private LongBuffer mValueBuffer;
+
+    private int mCapacity;
+    private int mSize;
+
+    /**
+     * Creates a new LongLongSparseArray containing no mappings.
+     */
+    public LongLongSparseArray() {
+        this(10);
+    }
+
+    /**
+     * Creates a new LongLongSparseArray containing no mappings that will not
+     * require any additional memory allocation to store the specified
+     * number of mappings.
+     */
+    public LongLongSparseArray(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    /**
+     * Creates a new LongLongSparseArray containing no mappings that will not
+     * require any additional memory allocation to store the specified
+     * number of mappings.
+     *
+     * @param direct true to keep the mappings in a direct {@link ByteBuffer}
+     *     rather than in Java arrays.
+     */
+    public LongLongSparseArray(int initialCapacity, boolean direct) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity < 0");
+        }
+        mDirect = direct;
+        mReadOnly = false;
+        if (direct) {
+            allocateBuffers(initialCapacity);
+        } else {
+            mCapacity = initialCapacity == 0
+                    ? 0 : ContainerHelpers.idealLongArraySize(initialCapacity);
+            mKeys = initialCapacity == 0 ? ContainerHelpers.EMPTY_LONGS : new long[mCapacity];
+            mValues = initialCapacity == 0 ? ContainerHelpers.EMPTY_LONGS : new long[mCapacity];
+        }
+        mSize = 0;
+    }
+
+    private LongLongSparseArray(ByteBuffer mapped, int size) {
+        mDirect = true;
+        mReadOnly = true;
+        mapped.position(FILE_HEADER_SIZE);
+        mKeyBuffer = mapped.slice().order(mapped.order()).asLongBuffer();
+        mapped.position(FILE_HEADER_SIZE + size * 8);
+        mValueBuffer = mapped.slice().order(mapped.order()).asLongBuffer();
+        mCapacity = size;
+        mSize = size;
+    }
+
+    /**
+     * Memory-maps a table written by {@link #writeTo(File)}.  The returned array reads its
+     * mappings straight from the file and is read-only: methods modifying it throw
+     * {@link UnsupportedOperationException}.
+     */
+    public static LongLongSparseArray map(File file) throws IOException {
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final long fileSize = channel.size();
+            if (fileSize < FILE_HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Invalid table size " + fileSize + " for " + file);
+            }
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            final int size = mapped.getInt(4);
+            if (mapped.getInt(0) != FILE_MAGIC || size < 0
+                    || FILE_HEADER_SIZE + (long) size * 16 != fileSize) {
+                throw new IOException("Not a LongLongSparseArray table: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            return new LongLongSparseArray(mapped, size);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes all mappings to {@code file}, replacing its contents, in a format which can be
+     * read back with {@link #map(File)}.
+     */
+    public void writeTo(File file) throws IOException {
+        final FileOutputStream stream = new FileOutputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(FILE_MAGIC).putInt(mSize).flip();
+            writeFully(channel, header);
+            writeSection(channel, mKeys, mKeyBuffer);
+            writeSection(channel, mValues, mValueBuffer);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void writeSection(FileChannel channel, long[] array, LongBuffer buffer)
+            throws IOException {
+        final int chunkSize = 8192;
+        final ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final LongBuffer longs = chunk.asLongBuffer();
+        for (int start = 0; start < mSize; start += chunkSize) {
+            final int count = Math.min(chunkSize, mSize - start);
+            longs.clear();
+            if (array != null) {
+                longs.put(array, start, count);
+            } else {
+                final LongBuffer src = buffer.duplicate();
+                src.position(start);
+                src.limit(start + count);
+                longs.put(src);
+            }
+            chunk.position(0);
+            chunk.limit(count * 8);
+            writeFully(channel, chunk);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns whether the mappings are kept outside of the Java heap.
+     */
+    public boolean isDirect() {
+        return mDirect;
+    }
+
+    /**
+     * Gets the value mapped from the specified key, or <code>0</code>
+     * if no such mapping has been made.
+     */
+    public long get(long key) {
+        return get(key, 0);
+    }
+
+    /**
+     * Gets the value mapped from the specified key, or the specified value
+     * if no such mapping has been made.
+     */
+    public long get(long key, long valueIfKeyNotFound) {
+        int i = binarySearch(key);
+
+        if (i < 0) {
+            return valueIfKeyNotFound;
+        } else {
+            return valueAt(i);
+        }
+    }
+
+    /**
+     * Removes the mapping from the specified key, if there was any.
+     */
+    public void delete(long key) {
+        int i = binarySearch(key);
+
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    /**
+     * Alias for {@link #delete(long)}.
+     */
+    public void remove(long key) {
+        delete(key);
+    }
+
+    /**
+     * Removes the mapping at the specified index.
+     */
+    public void removeAt(int index) {
+        checkWritable();
+        if (index < 0 || index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        if (mKeys != null) {
+            System.arraycopy(mKeys, index + 1, mKeys, index, mSize - (index + 1));
+            System.arraycopy(mValues, index + 1, mValues, index, mSize - (index + 1));
+        } else {
+            for (int i = index + 1; i < mSize; i++) {
+                mKeyBuffer.put(i - 1, mKeyBuffer.get(i));
+                mValueBuffer.put(i - 1, mValueBuffer.get(i));
+            }
+        }
+        mSize--;
+    }
+
+    /**
+     * Adds a mapping from the specified key to the specified value,
+     * replacing the previous mapping from the specified key if there
+     * was one.
+     */
+    public void put(long key, long value) {
+        checkWritable();
+        int i = binarySearch(key);
+
+        if (i >= 0) {
+            setValueAt(i, value);
+        } else {
+            i = ~i;
+            ensureCapacity(mSize + 1);
+
+            if (mKeys != null) {
+                System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+                System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+                mKeys[i] = key;
+                mValues[i] = value;
+            } else {
+                for (int j = mSize; j > i; j--) {
+                    mKeyBuffer.put(j, mKeyBuffer.get(j - 1));
+                    mValueBuffer.put(j, mValueBuffer.get(j - 1));
+                }
+                mKeyBuffer.put(i, key);
+                mValueBuffer.put(i, value);
+            }
+            mSize++;
+        }
+    }
+
+    /**
+     * Puts a key/value pair into the array, optimizing for the case where
+     * the key is greater than all existing keys in the array.
+     */
+    public void append(long key, long value) {
+        if (mSize != 0 && key <= keyAt(mSize - 1)) {
+            put(key, value);
+            return;
+        }
+        checkWritable();
+        ensureCapacity(mSize + 1);
+        setAt(mSize, key, value);
+        mSize++;
+    }
+
+    /**
+     * Adds {@code length} mappings, read from {@code keys} and {@code values} starting at
+     * {@code offset}, replacing the previous mappings of the same keys if there were any.
+     * The keys must be in strictly ascending order.  This grows the storage at most once and
+     * merges the new mappings in a single pass, which is much faster than calling
+     * {@link #put(long, long)} for each of them.
+     *
+     * @throws IllegalArgumentException if the keys are not in strictly ascending order.
+     */
+    public void putAllSorted(long[] keys, long[] values, int offset, int length) {
+        checkWritable();
+        if (offset < 0 || length < 0 || offset > keys.length - length
+                || offset > values.length - length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        for (int i = offset + 1; i < offset + length; i++) {
+            if (keys[i] <= keys[i - 1]) {
+                throw new IllegalArgumentException("Keys must be in strictly ascending order");
+            }
+        }
+        if (length == 0) {
+            return;
+        }
+
+        // Count the new keys so that the merge can be done in place, from the end
+        int added = 0;
+        for (int i = offset, j = 0; i < offset + length; i++) {
+            while (j < mSize && keyAt(j) < keys[i]) {
+                j++;
+            }
+            if (j == mSize || keyAt(j) != keys[i]) {
+                added++;
+            }
+        }
+        ensureCapacity(mSize + added);
+
+        int src = mSize - 1;
+        int dst = mSize + added - 1;
+        int i = offset + length - 1;
+        while (i >= offset) {
+            final long srcKey = src >= 0 ? keyAt(src) : Long.MIN_VALUE;
+            if (src >= 0 && srcKey > keys[i]) {
+                setAt(dst--, srcKey, valueAt(src--));
+            } else {
+                if (src >= 0 && srcKey == keys[i]) {
+                    // The new value replaces the existing one
+                    src--;
+                }
+                setAt(dst--, keys[i], values[i]);
+                i--;
+            }
+        }
+        // Whatever is left of the existing mappings is already in place
+        mSize += added;
+    }
+
+    /**
+     * Returns the number of key-value mappings that this LongLongSparseArray
+     * currently stores.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the key from the <code>index</code>th key-value mapping that this
+     * LongLongSparseArray stores.
+     */
+    public long keyAt(int index) {
+        return mKeys != null ? mKeys[index] : mKeyBuffer.get(index);
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the value from the <code>index</code>th key-value mapping that this
+     * LongLongSparseArray stores.
+     */
+    public long valueAt(int index) {
+        return mValues != null ? mValues[index] : mValueBuffer.get(index);
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, sets a new
+     * value for the <code>index</code>th key-value mapping that this
+     * LongLongSparseArray stores.
+     */
+    public void setValueAt(int index, long value) {
+        checkWritable();
+        if (mValues != null) {
+            mValues[index] = value;
+        } else {
+            mValueBuffer.put(index, value);
+        }
+    }
+
+    /**
+     * Returns the index for which {@link #keyAt} would return the
+     * specified key, or a negative number if the specified
+     * key is not mapped.
+     */
+    public int indexOfKey(long key) {
+        return binarySearch(key);
+    }
+
+    /**
+     * Returns an index for which {@link #valueAt} would return the
+     * specified key, or a negative number if no keys map to the
+     * specified value.
+     * Beware that this is a linear search, unlike lookups by key,
+     * and that multiple keys can map to the same value and this will
+     * find only one of them.
+     */
+    public int indexOfValue(long value) {
+        for (int i = 0; i < mSize; i++)
+            if (valueAt(i) == value)
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * Removes all key-value mappings from this LongLongSparseArray.
+     */
+    public void clear() {
+        checkWritable();
+        mSize = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (size() <= 0) {
+            return "{}";
+        }
+
+        StringBuilder buffer = new StringBuilder(mSize * 28);
+        buffer.append('{');
+        for (int i=0; i<mSize; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(keyAt(i));
+            buffer.append('=');
+            buffer.append(valueAt(i));
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    private void setAt(int index, long key, long value) {
+        if (mKeys != null) {
+            mKeys[index] = key;
+            mValues[index] = value;
+        } else {
+            mKeyBuffer.put(index, key);
+            mValueBuffer.put(index, value);
+        }
+    }
+
+    private void checkWritable() {
+        if (mReadOnly) {
+            throw new UnsupportedOperationException("This LongLongSparseArray is read-only");
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= mCapacity) {
+            return;
+        }
+        if (mKeys != null) {
+            final int n = ContainerHelpers.idealLongArraySize(minCapacity);
+
+            long[] nkeys = new long[n];
+            long[] nvalues = new long[n];
+
+            System.arraycopy(mKeys, 0, nkeys, 0, mSize);
+            System.arraycopy(mValues, 0, nvalues, 0, mSize);
+
+            mKeys = nkeys;
+            mValues = nvalues;
+            mCapacity = n;
+        } else {
+            final LongBuffer keys = mKeyBuffer;
+            final LongBuffer values = mValueBuffer;
+            allocateBuffers(Math.max(minCapacity,
+                    (int) Math.min((long) mCapacity * 2, MAX_DIRECT_CAPACITY)));
+            copyBuffer(keys, mKeyBuffer, mSize);
+            copyBuffer(values, mValueBuffer, mSize);
+        }
+    }
+
+    private void allocateBuffers(int capacity) {
+        if (capacity > MAX_DIRECT_CAPACITY) {
+            throw new OutOfMemoryError("Cannot store " + capacity
+                    + " mappings in a direct buffer, the maximum is " + MAX_DIRECT_CAPACITY);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(capacity * 16)
+                .order(ByteOrder.nativeOrder());
+        buffer.limit(capacity * 8);
+        mKeyBuffer = buffer.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+        buffer.limit(capacity * 16);
+        buffer.position(capacity * 8);
+        mValueBuffer = buffer.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+        mCapacity = capacity;
+    }
+
+    private static void copyBuffer(LongBuffer from, LongBuffer to, int count) {
+        final LongBuffer src = from.duplicate();
+        src.position(0);
+        src.limit(count);
+        final LongBuffer dst = to.duplicate();
+        dst.position(0);
+        dst.put(src);
+    }
+
+    // Same as ContainerHelpers.binarySearch(), for either storage
+    private int binarySearch(long value) {
+        int lo = 0;
+        int hi = mSize - 1;
+
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final long midVal = keyAt(mid);
+
+            if (midVal < value) {
+                lo = mid + 1;
+            } else if (midVal > value) {
+                hi = mid - 1;
+            } else {
+                return mid;  // value found
+            }
+        }
+        return ~lo;  // value not present
+    }
+}
@@ -17,6 +17,8 @@
 
 package android.support.v4.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Helper class for creating pools of objects. An example use looks like this:
@@ -163,4 +165,273 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Pool of objects that can be shared between many threads without a global lock.
+     * <p>
+     * Each thread keeps a small private cache of released instances which it serves
+     * from first; instances that do not fit into it go to a shared, bounded set of
+     * slots that are claimed and filled with compare-and-set operations. As a
+     * consequence the pool may retain up to {@code maxPoolSize} instances plus
+     * {@code threadCacheSize} instances for every thread that released into it.
+     * <p>
+     * Subclasses can override {@link #create()} to build a new instance when the
+     * pool is empty and {@link #reset(Object)} to clear the state of an instance
+     * before it is put back in the pool.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ConcurrentPool<T> implements Pool<T> {
+        private static final int DEFAULT_THREAD_CACHE_SIZE = 4;
+
+        private final AtomicReferenceArray<Object> mPool;
+        private final int mThreadCacheSize;
+        private final ThreadLocal<ThreadCache> mThreadCache;
+
+        /** Approximate number of instances in the shared slots, used to skip scans. */
+        private final AtomicInteger mSharedSize = new AtomicInteger();
+
+        private final AtomicInteger mHitCount = new AtomicInteger();
+        private final AtomicInteger mMissCount = new AtomicInteger();
+        private final AtomicInteger mCreateCount = new AtomicInteger();
+        private final AtomicInteger mReleaseCount = new AtomicInteger();
+        private final AtomicInteger mDropCount = new AtomicInteger();
+
+        /**
+         * Creates a new instance with a default per-thread cache size.
+         *
+         * @param maxPoolSize The max number of instances in the shared part of the pool.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize) {
+            this(maxPoolSize, Math.min(maxPoolSize, DEFAULT_THREAD_CACHE_SIZE));
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max number of instances in the shared part of the pool.
+         * @param threadCacheSize The max number of instances cached by each thread, or 0
+         *                        to only use the shared part of the pool.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero or the
+         *                                  thread cache size is negative.
+         */
+        public ConcurrentPool(int maxPoolSize, int threadCacheSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            if (threadCacheSize < 0) {
+                throw new IllegalArgumentException("The thread cache size must be >= 0");
+            }
+            mPool = new AtomicReferenceArray<Object>(maxPoolSize);
+            mThreadCacheSize = threadCacheSize;
+            mThreadCache = new ThreadLocal<ThreadCache>() {
+                @Override
+                protected ThreadCache initialValue() {
+                    return new ThreadCache(mThreadCacheSize);
+                }
+            };
+        }
+
+        /**
+         * @return An instance from the pool if such, otherwise the result of
+         *         {@link #create()}, which is null by default.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public T acquire() {
+            T instance = null;
+            if (mThreadCacheSize > 0) {
+                instance = (T) mThreadCache.get().pop();
+            }
+            if (instance == null) {
+                instance = acquireShared();
+            }
+            if (instance != null) {
+                mHitCount.incrementAndGet();
+                return instance;
+            }
+            mMissCount.incrementAndGet();
+            instance = create();
+            if (instance != null) {
+                mCreateCount.incrementAndGet();
+            }
+            return instance;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final ThreadCache cache = mThreadCacheSize > 0 ? mThreadCache.get() : null;
+            if ((cache != null && cache.contains(instance)) || isInSharedPool(instance)) {
+                throw new IllegalStateException("Already in the pool!");
+            }
+            reset(instance);
+            if ((cache != null && cache.push(instance)) || releaseShared(instance)) {
+                mReleaseCount.incrementAndGet();
+                return true;
+            }
+            mDropCount.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * Called when the pool is empty to create a new instance for {@link #acquire()}.
+         * The default implementation returns null.
+         * <p>
+         * The method is called without synchronization: other threads may access the
+         * pool while this method is executing.
+         */
+        protected T create() {
+            return null;
+        }
+
+        /**
+         * Called by {@link #release(Object)} before an instance is put back in the pool,
+         * to clear any state it holds. The default implementation does nothing.
+         * <p>
+         * The method is called without synchronization: other threads may access the
+         * pool while this method is executing.
+         */
+        protected void reset(T instance) {
+        }
+
+        /**
+         * Returns the number of times {@link #acquire()} returned a pooled instance.
+         */
+        public final int hitCount() {
+            return mHitCount.get();
+        }
+
+        /**
+         * Returns the number of times {@link #acquire()} found the pool empty.
+         */
+        public final int missCount() {
+            return mMissCount.get();
+        }
+
+        /**
+         * Returns the number of times {@link #create()} returned an instance.
+         */
+        public final int createCount() {
+            return mCreateCount.get();
+        }
+
+        /**
+         * Returns the number of instances {@link #release(Object)} put in the pool.
+         */
+        public final int releaseCount() {
+            return mReleaseCount.get();
+        }
+
+        /**
+         * Returns the number of instances {@link #release(Object)} dropped because the
+         * pool was full.
+         */
+        public final int dropCount() {
+            return mDropCount.get();
+        }
+
+        @Override
+        public String toString() {
+            final int hits = mHitCount.get();
+            final int accesses = hits + mMissCount.get();
+            final int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
+            return String.format("ConcurrentPool[maxPoolSize=%d,threadCacheSize=%d,hits=%d,"
+                    + "misses=%d,hitRate=%d%%]", mPool.length(), mThreadCacheSize, hits,
+                    accesses - hits, hitPercent);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T acquireShared() {
+            if (mSharedSize.get() <= 0) {
+                return null;
+            }
+            final int length = mPool.length();
+            final int start = probeStart(length);
+            for (int i = 0; i < length; i++) {
+                final int index = (start + i) % length;
+                final Object instance = mPool.get(index);
+                if (instance != null && mPool.compareAndSet(index, instance, null)) {
+                    mSharedSize.decrementAndGet();
+                    return (T) instance;
+                }
+            }
+            return null;
+        }
+
+        private boolean releaseShared(T instance) {
+            final int length = mPool.length();
+            if (mSharedSize.get() >= length) {
+                return false;
+            }
+            final int start = probeStart(length);
+            for (int i = 0; i < length; i++) {
+                final int index = (start + i) % length;
+                if (mPool.get(index) == null && mPool.compareAndSet(index, null, instance)) {
+                    mSharedSize.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isInSharedPool(T instance) {
+            if (mSharedSize.get() <= 0) {
+                return false;
+            }
+            final int length = mPool.length();
+            for (int i = 0; i < length; i++) {
+                if (mPool.get(i) == instance) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Spreads threads over the shared slots so that they do not all compete for
+         * the same ones.
+         */
+        private static int probeStart(int length) {
+            final int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+            return (hash >>> 1) % length;
+        }
+
+        private static final class ThreadCache {
+            final Object[] mItems;
+            int mSize;
+
+            ThreadCache(int capacity) {
+                mItems = new Object[capacity];
+            }
+
+            Object pop() {
+                if (mSize == 0) {
+                    return null;
+                }
+                final Object instance = mItems[--mSize];
+                mItems[mSize] = null;
+                return instance;
+            }
+
+            boolean push(Object instance) {
+                if (mSize == mItems.length) {
+                    return false;
+                }
+                mItems[mSize++] = instance;
+                return true;
+            }
+
+            boolean contains(Object instance) {
+                for (int i = 0; i < mSize; i++) {
+                    if (mItems[i] == instance) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.content.ComponentCallbacks2;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ArrayPoolTest {
+
+    @Test
+    public void testLengthIsRoundedUpToSizeClass() {
+        ArrayPool pool = new ArrayPool(1024 * 1024);
+        assertEquals(64, pool.acquireByteArray(1).length);
+        assertEquals(1024, pool.acquireIntArray(1000).length);
+        assertEquals(1024, pool.acquireIntArray(1024).length);
+    }
+
+    @Test
+    public void testReleasedArrayIsReused() {
+        ArrayPool pool = new ArrayPool(1024 * 1024);
+        int[] array = pool.acquireIntArray(500);
+        pool.release(array);
+        assertEquals(512 * 4, pool.sizeBytes());
+        assertSame(array, pool.acquireIntArray(300));
+        assertEquals(0, pool.sizeBytes());
+        assertEquals(1, pool.hitCount());
+    }
+
+    @Test
+    public void testTypesAreNotMixed() {
+        ArrayPool pool = new ArrayPool(1024 * 1024);
+        pool.release(new byte[256]);
+        pool.acquireIntArray(256);
+        assertEquals(0, pool.hitCount());
+        assertEquals(256, pool.sizeBytes());
+    }
+
+    @Test
+    public void testBudgetEvictsLeastRecentlyUsedSizeClass() {
+        ArrayPool pool = new ArrayPool(4096);
+        byte[] older = new byte[1024];
+        byte[] newer = new byte[2048];
+        pool.release(older);
+        pool.release(newer);
+        pool.release(new byte[1024]);
+        pool.release(new byte[1024]);
+        assertEquals(3072, pool.sizeBytes());
+        assertEquals(1, pool.evictionCount());
+        // The 2048 bucket was used less recently than the 1024 one
+        assertNotSame(newer, pool.acquireByteArray(2048));
+    }
+
+    @Test
+    public void testOnTrimMemoryClearsPool() {
+        ArrayPool pool = new ArrayPool(1024 * 1024);
+        pool.release(new int[1024]);
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, pool.sizeBytes());
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class AtomicFileTest {
+
+    private File mBaseFile;
+    private File mJournalFile;
+
+    @Before
+    public void setUp() {
+        mBaseFile = new File(InstrumentationRegistry.getContext().getCacheDir(), "atomic_file");
+        mJournalFile = new File(mBaseFile.getPath() + ".journal");
+        new AtomicFile(mBaseFile).delete();
+    }
+
+    @After
+    public void tearDown() {
+        new AtomicFile(mBaseFile).delete();
+    }
+
+    @Test
+    public void testAppendToEmptyFile() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        file.append(bytes("ab"));
+        file.append(bytes("cd"));
+        assertArrayEquals(bytes("abcd"), file.readFully());
+        assertArrayEquals(bytes("abcd"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testAppendAfterBase() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("12"));
+        file.append(bytes("345"), 1, 2);
+        assertArrayEquals(bytes("base1245"), file.readFully());
+    }
+
+    @Test
+    public void testTornTrailingRecordIsIgnored() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("first"));
+        file.append(bytes("second"));
+        // Cut the last record short, as a crash in the middle of a write would
+        truncateJournal(1);
+
+        final AtomicFile reopened = new AtomicFile(mBaseFile);
+        assertArrayEquals(bytes("basefirst"), reopened.readFully());
+
+        // The next append replaces the torn record
+        reopened.append(bytes("third"));
+        assertArrayEquals(bytes("basefirstthird"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testShortTrailingRecordHeaderIsIgnored() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("first"));
+        appendToJournal(new byte[] {0, 0, 1});
+        assertArrayEquals(bytes("basefirst"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testRecordWithBadChecksumIsIgnored() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("first"));
+        file.append(bytes("second"));
+        // Corrupt the last byte of the payload of the second record
+        final RandomAccessFile journal = new RandomAccessFile(mJournalFile, "rw");
+        try {
+            journal.seek(journal.length() - 1);
+            journal.write('x');
+        } finally {
+            journal.close();
+        }
+        assertArrayEquals(bytes("basefirst"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testStaleJournalIsIgnored() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("appended"));
+
+        // Replace the base file behind the journal's back, with a different length
+        final FileOutputStream out = new FileOutputStream(mBaseFile);
+        try {
+            out.write(bytes("replaced"));
+        } finally {
+            out.close();
+        }
+        assertTrue(mJournalFile.exists());
+        assertArrayEquals(bytes("replaced"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testStaleJournalWithSameBaseLengthIsIgnored() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("appended"));
+
+        final FileOutputStream out = new FileOutputStream(mBaseFile);
+        try {
+            out.write(bytes("BASE"));
+        } finally {
+            out.close();
+        }
+        assertArrayEquals(bytes("BASE"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testCompactionIsTriggeredByRatio() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        final byte[] base = filled(8192, 'b');
+        write(file, base);
+        file.setCompactionRatio(0.5f);
+
+        final byte[] record = filled(1024, 'r');
+        // 3 records of 1kB stay below half of the base file size
+        for (int i = 0; i < 3; i++) {
+            file.append(record);
+        }
+        assertTrue(mJournalFile.exists());
+        assertEquals(base.length, mBaseFile.length());
+
+        file.append(record);
+        assertFalse(mJournalFile.exists());
+        assertEquals(base.length + 4 * record.length, mBaseFile.length());
+    }
+
+    @Test
+    public void testReadFullyAfterCompact() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("12"));
+        file.append(bytes("34"));
+        file.compact();
+
+        assertFalse(mJournalFile.exists());
+        assertEquals(8, mBaseFile.length());
+        assertArrayEquals(bytes("base1234"), file.readFully());
+
+        // Appending after a compaction starts a new journal
+        file.append(bytes("56"));
+        assertArrayEquals(bytes("base123456"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompactionRatioMustBePositive() {
+        new AtomicFile(mBaseFile).setCompactionRatio(0f);
+    }
+
+    @Test
+    public void testFinishWriteDiscardsJournal() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("appended"));
+        write(file, "new");
+
+        assertFalse(mJournalFile.exists());
+        assertArrayEquals(bytes("new"), file.readFully());
+        assertArrayEquals(bytes("new"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    @Test
+    public void testFailWriteKeepsJournal() throws IOException {
+        final AtomicFile file = new AtomicFile(mBaseFile);
+        write(file, "base");
+        file.append(bytes("appended"));
+
+        final FileOutputStream out = file.startWrite();
+        out.write(bytes("discarded"));
+        file.failWrite(out);
+
+        assertArrayEquals(bytes("baseappended"), new AtomicFile(mBaseFile).readFully());
+    }
+
+    private static void write(AtomicFile file, String data) throws IOException {
+        write(file, bytes(data));
+    }
+
+    private static void write(AtomicFile file, byte[] data) throws IOException {
+        final FileOutputStream out = file.startWrite();
+        out.write(data);
+        file.finishWrite(out);
+    }
+
+    private void truncateJournal(int bytes) throws IOException {
+        final RandomAccessFile journal = new RandomAccessFile(mJournalFile, "rw");
+        try {
+            journal.setLength(journal.length() - bytes);
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void appendToJournal(byte[] data) throws IOException {
+        final FileOutputStream out = new FileOutputStream(mJournalFile, true);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] filled(int length, char c) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) c;
+        }
+        return data;
+    }
+
+    private static byte[] bytes(String data) {
+        try {
+            return data.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
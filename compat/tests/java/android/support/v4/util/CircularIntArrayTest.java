@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CircularIntArrayTest {
+
+    @Test
+    public void testSegmentsWithoutWrapAround() {
+        CircularIntArray array = new CircularIntArray(8);
+        array.addAll(new int[] {1, 2, 3}, 0, 3);
+        assertEquals(0, array.getSegmentOffset(0));
+        assertEquals(3, array.getSegmentLength(0));
+        assertEquals(0, array.getSegmentLength(1));
+        assertArrayEquals(new int[] {1, 2, 3}, readSegments(array));
+    }
+
+    @Test
+    public void testSegmentsWithWrapAround() {
+        CircularIntArray array = wrappedArray();
+        assertEquals(8, array.getBackingArray().length);
+        assertEquals(4, array.getSegmentOffset(0));
+        assertEquals(4, array.getSegmentLength(0));
+        assertEquals(0, array.getSegmentOffset(1));
+        assertEquals(2, array.getSegmentLength(1));
+        assertArrayEquals(new int[] {4, 5, 6, 7, 8, 9}, readSegments(array));
+    }
+
+    @Test
+    public void testSegmentsOfEmptyArray() {
+        CircularIntArray array = wrappedArray();
+        array.clear();
+        assertEquals(0, array.getSegmentLength(0));
+        assertEquals(0, array.getSegmentLength(1));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testInvalidSegmentOffset() {
+        new CircularIntArray().getSegmentOffset(2);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testInvalidSegmentLength() {
+        new CircularIntArray().getSegmentLength(-1);
+    }
+
+    @Test
+    public void testAddAllWrapsAroundWithoutGrowing() {
+        CircularIntArray array = wrappedArray();
+        array.popLast();
+        array.popLast();
+        array.popLast();
+        // Head at 4 and tail at 7, the added integers wrap around the end of the backing array
+        array.addAll(new int[] {-1, 10, 11, 12, -1}, 1, 3);
+        assertEquals(8, array.getBackingArray().length);
+        assertEquals(6, array.size());
+        assertArrayEquals(new int[] {4, 5, 6, 10, 11, 12}, readSegments(array));
+        assertArrayEquals(new int[] {4, 5, 6, 10, 11, 12}, readByIndex(array));
+    }
+
+    @Test
+    public void testAddAllGrowsWrappedArray() {
+        CircularIntArray array = wrappedArray();
+        final int[] added = new int[20];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = 10 + i;
+        }
+        array.addAll(added, 0, added.length);
+        assertEquals(32, array.getBackingArray().length);
+        assertEquals(26, array.size());
+        final int[] expected = new int[26];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = 4 + i;
+        }
+        assertArrayEquals(expected, readByIndex(array));
+        assertArrayEquals(expected, readSegments(array));
+        assertEquals(4, array.getFirst());
+        assertEquals(29, array.getLast());
+    }
+
+    @Test
+    public void testAddAllToFullArrayKeepsOneFreeSlot() {
+        CircularIntArray array = new CircularIntArray(4);
+        array.addAll(new int[] {1, 2, 3, 4}, 0, 4);
+        assertEquals(8, array.getBackingArray().length);
+        array.addLast(5);
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5}, readByIndex(array));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testAddAllOutOfBounds() {
+        new CircularIntArray().addAll(new int[4], 2, 3);
+    }
+
+    @Test
+    public void testPartialDrainTo() {
+        CircularIntArray array = wrappedArray();
+        final int[] dst = new int[6];
+        // Drains across the end of the backing array
+        assertEquals(5, array.drainTo(dst, 1, 5));
+        assertArrayEquals(new int[] {0, 4, 5, 6, 7, 8}, dst);
+        assertEquals(1, array.size());
+        assertEquals(9, array.getFirst());
+
+        array.addLast(10);
+        assertEquals(2, array.drainTo(dst));
+        assertEquals(9, dst[0]);
+        assertEquals(10, dst[1]);
+        assertEquals(0, array.size());
+        assertEquals(0, array.drainTo(dst));
+    }
+
+    @Test
+    public void testDrainToSmallerArray() {
+        CircularIntArray array = wrappedArray();
+        final int[] dst = new int[4];
+        assertEquals(4, array.drainTo(dst));
+        assertArrayEquals(new int[] {4, 5, 6, 7}, dst);
+        assertArrayEquals(new int[] {8, 9}, readByIndex(array));
+        assertEquals(0, array.getSegmentOffset(0));
+        assertEquals(2, array.getSegmentLength(0));
+        assertEquals(0, array.getSegmentLength(1));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testDrainToOutOfBounds() {
+        wrappedArray().drainTo(new int[4], 3, 2);
+    }
+
+    /**
+     * Returns an array of capacity 8 holding 4 to 9, with 8 and 9 wrapped around the end of the
+     * backing array.
+     */
+    private static CircularIntArray wrappedArray() {
+        CircularIntArray array = new CircularIntArray(8);
+        for (int i = 0; i < 6; i++) {
+            array.addLast(i);
+        }
+        array.removeFromStart(4);
+        for (int i = 6; i < 10; i++) {
+            array.addLast(i);
+        }
+        return array;
+    }
+
+    private static int[] readSegments(CircularIntArray array) {
+        final int[] result = new int[array.size()];
+        final int firstLength = array.getSegmentLength(0);
+        System.arraycopy(array.getBackingArray(), array.getSegmentOffset(0), result, 0,
+                firstLength);
+        System.arraycopy(array.getBackingArray(), array.getSegmentOffset(1), result, firstLength,
+                array.getSegmentLength(1));
+        return result;
+    }
+
+    private static int[] readByIndex(CircularIntArray array) {
+        final int[] result = new int[array.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+}
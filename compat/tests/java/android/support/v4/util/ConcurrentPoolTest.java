@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ConcurrentPoolTest {
+
+    @Test
+    public void testAcquireFromEmptyPool() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<Object>(2);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.missCount());
+        assertEquals(0, pool.createCount());
+    }
+
+    @Test
+    public void testReleaseThenAcquire() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<Object>(2, 0);
+        Object instance = new Object();
+        assertTrue(pool.release(instance));
+        assertSame(instance, pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(1, pool.hitCount());
+        assertEquals(1, pool.releaseCount());
+    }
+
+    @Test
+    public void testCapacityIsBounded() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<Object>(2, 1);
+        assertTrue(pool.release(new Object()));
+        assertTrue(pool.release(new Object()));
+        assertTrue(pool.release(new Object()));
+        assertFalse(pool.release(new Object()));
+        assertEquals(1, pool.dropCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleReleaseThrows() {
+        Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<Object>(4);
+        Object instance = new Object();
+        pool.release(instance);
+        pool.release(instance);
+    }
+
+    @Test
+    public void testCreateAndResetHooks() {
+        final AtomicInteger resets = new AtomicInteger();
+        Pools.ConcurrentPool<StringBuilder> pool = new Pools.ConcurrentPool<StringBuilder>(1) {
+            @Override
+            protected StringBuilder create() {
+                return new StringBuilder();
+            }
+
+            @Override
+            protected void reset(StringBuilder instance) {
+                instance.setLength(0);
+                resets.incrementAndGet();
+            }
+        };
+        StringBuilder builder = pool.acquire();
+        assertNotNull(builder);
+        assertEquals(1, pool.createCount());
+        builder.append("dirty");
+        pool.release(builder);
+        assertEquals(1, resets.get());
+        assertEquals(0, pool.acquire().length());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Throwable {
+        final int threadCount = 4;
+        final int iterations = 1000;
+        final Pools.ConcurrentPool<Object> pool = new Pools.ConcurrentPool<Object>(8) {
+            @Override
+            protected Object create() {
+                return new Object();
+            }
+        };
+        // The instances currently acquired by a thread, which must never be handed out twice
+        final Set<Object> outstanding =
+                Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            final Object instance = pool.acquire();
+                            assertNotNull(instance);
+                            assertTrue("Instance handed to two threads at once",
+                                    outstanding.add(instance));
+                            assertTrue(outstanding.remove(instance));
+                            pool.release(instance);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue("Workers did not finish in time", done.await(30, TimeUnit.SECONDS));
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        assertTrue(outstanding.isEmpty());
+        assertEquals(threadCount * iterations, pool.hitCount() + pool.missCount());
+        assertEquals(threadCount * iterations, pool.releaseCount() + pool.dropCount());
+    }
+}
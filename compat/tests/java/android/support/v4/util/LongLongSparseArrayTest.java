@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LongLongSparseArrayTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getContext().getCacheDir(), "long_long_table");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void testPutShiftsEntries() {
+        testPutShiftsEntries(new LongLongSparseArray(10, false));
+        testPutShiftsEntries(new LongLongSparseArray(10, true));
+    }
+
+    private static void testPutShiftsEntries(LongLongSparseArray array) {
+        array.put(30, 300);
+        array.put(10, 100);
+        array.put(20, 200);
+        array.put(40, 400);
+        array.put(20, 201);
+        assertContents(array, new long[] {10, 20, 30, 40}, new long[] {100, 201, 300, 400});
+        assertEquals(201, array.get(20));
+        assertEquals(0, array.get(25));
+        assertEquals(-1, array.get(25, -1));
+        assertEquals(~2, array.indexOfKey(25));
+        assertEquals(3, array.indexOfValue(400));
+        assertEquals(-1, array.indexOfValue(500));
+    }
+
+    @Test
+    public void testRemoveAtShiftsEntries() {
+        testRemoveAtShiftsEntries(new LongLongSparseArray(10, false));
+        testRemoveAtShiftsEntries(new LongLongSparseArray(10, true));
+    }
+
+    private static void testRemoveAtShiftsEntries(LongLongSparseArray array) {
+        for (int i = 0; i < 5; i++) {
+            array.append(i, i * 10);
+        }
+        array.removeAt(1);
+        assertContents(array, new long[] {0, 2, 3, 4}, new long[] {0, 20, 30, 40});
+        array.removeAt(3);
+        assertContents(array, new long[] {0, 2, 3}, new long[] {0, 20, 30});
+        array.delete(0);
+        array.delete(7);
+        assertContents(array, new long[] {2, 3}, new long[] {20, 30});
+        try {
+            array.removeAt(2);
+            fail("removeAt() past the size should throw");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testGrowth() {
+        testGrowth(new LongLongSparseArray(0, false));
+        testGrowth(new LongLongSparseArray(0, true));
+        testGrowth(new LongLongSparseArray(1, true));
+    }
+
+    private static void testGrowth(LongLongSparseArray array) {
+        final int count = 1000;
+        // Insert in descending order so that every put shifts all the previous entries
+        for (int i = count - 1; i >= 0; i--) {
+            array.put(i * 2, -i);
+        }
+        assertEquals(count, array.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * 2, array.keyAt(i));
+            assertEquals(-i, array.valueAt(i));
+        }
+    }
+
+    @Test
+    public void testPutAllSortedMerges() {
+        testPutAllSortedMerges(new LongLongSparseArray(2, false));
+        testPutAllSortedMerges(new LongLongSparseArray(2, true));
+    }
+
+    private static void testPutAllSortedMerges(LongLongSparseArray array) {
+        array.put(2, 20);
+        array.put(5, 50);
+        array.putAllSorted(new long[] {-1, 1, 2, 6, -1}, new long[] {0, 10, 21, 60, 0}, 1, 3);
+        assertContents(array, new long[] {1, 2, 5, 6}, new long[] {10, 21, 50, 60});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutAllSortedRejectsUnsortedKeys() {
+        new LongLongSparseArray().putAllSorted(new long[] {2, 1}, new long[] {0, 0}, 0, 2);
+    }
+
+    @Test
+    public void testDirectCapacityOverflow() {
+        try {
+            new LongLongSparseArray(Integer.MAX_VALUE / 8, true);
+            fail("A direct buffer larger than 2GB should not be allocated");
+        } catch (OutOfMemoryError expected) {
+        }
+    }
+
+    @Test
+    public void testWriteToAndMap() throws IOException {
+        testWriteToAndMap(new LongLongSparseArray(4, false));
+        testWriteToAndMap(new LongLongSparseArray(4, true));
+    }
+
+    private void testWriteToAndMap(LongLongSparseArray array) throws IOException {
+        // More than one chunk of the writer
+        final int count = 10000;
+        for (int i = 0; i < count; i++) {
+            array.append(i * 3L, Long.MAX_VALUE - i);
+        }
+        array.writeTo(mFile);
+        assertEquals(8 + count * 16, mFile.length());
+
+        final LongLongSparseArray mapped = LongLongSparseArray.map(mFile);
+        assertTrue(mapped.isDirect());
+        assertEquals(count, mapped.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * 3L, mapped.keyAt(i));
+            assertEquals(Long.MAX_VALUE - i, mapped.valueAt(i));
+        }
+        assertEquals(Long.MAX_VALUE - 5, mapped.get(15));
+        assertEquals(-1, mapped.get(16, -1));
+    }
+
+    @Test
+    public void testFileFormat() throws IOException {
+        final LongLongSparseArray array = new LongLongSparseArray();
+        array.put(0x0102030405060708L, -2);
+        array.writeTo(mFile);
+
+        final byte[] data = new byte[(int) mFile.length()];
+        final RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            file.readFully(data);
+        } finally {
+            file.close();
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(24, data.length);
+        // "ASLL" read as a little endian int
+        assertEquals(0x4c4c5341, buffer.getInt(0));
+        assertEquals(1, buffer.getInt(4));
+        assertEquals(0x08, data[8]);
+        assertEquals(0x0102030405060708L, buffer.getLong(8));
+        assertEquals(-2, buffer.getLong(16));
+    }
+
+    @Test
+    public void testMapEmptyTable() throws IOException {
+        new LongLongSparseArray().writeTo(mFile);
+        final LongLongSparseArray mapped = LongLongSparseArray.map(mFile);
+        assertEquals(0, mapped.size());
+        assertEquals("{}", mapped.toString());
+    }
+
+    @Test
+    public void testMappedTableIsReadOnly() throws IOException {
+        final LongLongSparseArray array = new LongLongSparseArray();
+        array.put(1, 10);
+        array.put(2, 20);
+        array.writeTo(mFile);
+        final LongLongSparseArray mapped = LongLongSparseArray.map(mFile);
+
+        try {
+            mapped.put(3, 30);
+            fail("put() should throw");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            mapped.append(3, 30);
+            fail("append() should throw");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            mapped.setValueAt(0, 11);
+            fail("setValueAt() should throw");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            mapped.removeAt(0);
+            fail("removeAt() should throw");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            mapped.clear();
+            fail("clear() should throw");
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertContents(mapped, new long[] {1, 2}, new long[] {10, 20});
+    }
+
+    @Test
+    public void testMapRejectsInvalidFiles() throws IOException {
+        final LongLongSparseArray array = new LongLongSparseArray();
+        array.put(1, 10);
+        array.writeTo(mFile);
+        // One byte short of the size in the header
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        assertMapFails();
+
+        final FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(new byte[] {1, 2, 3});
+        } finally {
+            out.close();
+        }
+        assertMapFails();
+    }
+
+    private void assertMapFails() {
+        try {
+            LongLongSparseArray.map(mFile);
+            fail("map() should reject " + mFile.length() + " bytes");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertContents(LongLongSparseArray array, long[] keys, long[] values) {
+        assertEquals(keys.length, array.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], array.keyAt(i));
+            assertEquals(values[i], array.valueAt(i));
+        }
+        assertFalse(array.indexOfKey(Long.MIN_VALUE) >= 0);
+    }
+}
@@ -60,9 +60,12 @@ import java.util.concurrent.ArrayBlockingQueue;
  * {@link ViewGroup#addView(View)} in the {@link OnInflateFinishedListener}
  * callback at a minimum.
  *
- * <p>This inflater does not support setting a {@link LayoutInflater.Factory}
- * nor {@link LayoutInflater.Factory2}. Similarly it does not support inflating
- * layouts that contain fragments.
+ * <p>A {@link LayoutInflaterFactory} can be given to
+ * {@link #AsyncLayoutInflater(Context, LayoutInflaterFactory)}, for example to
+ * create the tinted widgets of AppCompat. Since it is called on the background
+ * thread, the factory must be thread-safe. Setting a {@link LayoutInflater.Factory}
+ * or {@link LayoutInflater.Factory2} is not supported otherwise. This inflater
+ * does not support inflating layouts that contain fragments.
  */
 public final class AsyncLayoutInflater {
     private static final String TAG = "AsyncLayoutInflater";
@@ -77,6 +80,24 @@ public final class AsyncLayoutInflater {
         mInflateThread = InflateThread.getInstance();
     }
 
+    /**
+     * Creates an inflater which gives {@code factory} the first chance to create each view,
+     * as if it was set with {@link LayoutInflaterCompat#setFactory(LayoutInflater,
+     * LayoutInflaterFactory)}.
+     *
+     * @param context the context to inflate the layouts with.
+     * @param factory the factory to create the views with. It is called on the background
+     *                thread, and also on the UI thread when a layout cannot be inflated in
+     *                the background, so it must be thread-safe.
+     */
+    public AsyncLayoutInflater(@NonNull Context context,
+            @Nullable LayoutInflaterFactory factory) {
+        this(context);
+        if (factory != null) {
+            LayoutInflaterCompat.setFactory(mInflater, factory);
+        }
+    }
+
     @UiThread
     public void inflate(@LayoutRes int resid, @Nullable ViewGroup parent,
             @NonNull OnInflateFinishedListener callback) {
@@ -132,9 +153,14 @@ public final class AsyncLayoutInflater {
             super(context);
         }
 
+        BasicInflater(LayoutInflater original, Context newContext) {
+            // Copies the factory of the original inflater
+            super(original, newContext);
+        }
+
         @Override
         public LayoutInflater cloneInContext(Context newContext) {
-            return new BasicInflater(newContext);
+            return new BasicInflater(this, newContext);
         }
 
         @Override
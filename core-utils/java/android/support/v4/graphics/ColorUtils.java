@@ -39,6 +39,16 @@ public final class ColorUtils {
 
     private static final ThreadLocal<double[]> TEMP_ARRAY = new ThreadLocal<>();
 
+    // The linear value of each 8-bit sRGB component, so that the conversions of colors do not
+    // need to call Math.pow() for each component.
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            SRGB_TO_LINEAR[i] = srgbToLinear(i / 255.0);
+        }
+    }
+
     private ColorUtils() {}
 
     /**
@@ -74,10 +84,30 @@ public final class ColorUtils {
      */
     @FloatRange(from = 0.0, to = 1.0)
     public static double calculateLuminance(@ColorInt int color) {
-        final double[] result = getTempDouble3Array();
-        colorToXYZ(color, result);
-        // Luminance is the Y component
-        return result[1] / 100;
+        // Luminance is the Y component, computed without the X and Z components
+        return SRGB_TO_LINEAR[Color.red(color)] * 0.2126
+                + SRGB_TO_LINEAR[Color.green(color)] * 0.7152
+                + SRGB_TO_LINEAR[Color.blue(color)] * 0.0722;
+    }
+
+    /**
+     * Calculates the luminance of each color of {@code colors}, as
+     * {@link #calculateLuminance(int)} does for one color.
+     *
+     * @param colors         the colors
+     * @param outLuminances  array which holds the resulting luminances, in the order of
+     *                       {@code colors}. Its length must be at least the length of
+     *                       {@code colors}
+     */
+    public static void calculateLuminances(@NonNull int[] colors,
+            @NonNull double[] outLuminances) {
+        if (outLuminances.length < colors.length) {
+            throw new IllegalArgumentException(
+                    "outLuminances must be at least as long as colors.");
+        }
+        for (int i = 0; i < colors.length; i++) {
+            outLuminances[i] = calculateLuminance(colors[i]);
+        }
     }
 
     /**
@@ -88,17 +118,46 @@ public final class ColorUtils {
      * <a href="http://www.w3.org/TR/2008/REC-WCAG20-20081211/#contrast-ratiodef">here</a>.
      */
     public static double calculateContrast(@ColorInt int foreground, @ColorInt int background) {
-        if (Color.alpha(background) != 255) {
-            throw new IllegalArgumentException("background can not be translucent: #"
-                    + Integer.toHexString(background));
+        checkOpaqueBackground(background);
+        return calculateContrast(foreground, background, calculateLuminance(background));
+    }
+
+    /**
+     * Calculates the contrast ratios between the pairs of colors of {@code foregrounds} and
+     * {@code backgrounds}, as {@link #calculateContrast(int, int)} does for one pair. The
+     * luminance of a background is only calculated once for consecutive pairs which share it.
+     *
+     * @param foregrounds  the foreground colors
+     * @param backgrounds  the opaque background colors, one for each foreground color
+     * @param outContrasts array which holds the resulting contrast ratios, in the order of the
+     *                     pairs. Its length must be at least the number of pairs
+     */
+    public static void calculateContrasts(@NonNull int[] foregrounds, @NonNull int[] backgrounds,
+            @NonNull double[] outContrasts) {
+        checkPairs(foregrounds, backgrounds, outContrasts.length, "outContrasts");
+        int lastBackground = 0;
+        double lastBackgroundLuminance = -1;
+        for (int i = 0; i < foregrounds.length; i++) {
+            final int background = backgrounds[i];
+            if (lastBackgroundLuminance < 0 || background != lastBackground) {
+                checkOpaqueBackground(background);
+                lastBackground = background;
+                lastBackgroundLuminance = calculateLuminance(background);
+            }
+            outContrasts[i] = calculateContrast(foregrounds[i], background,
+                    lastBackgroundLuminance);
         }
+    }
+
+    private static double calculateContrast(int foreground, int background,
+            double backgroundLuminance) {
         if (Color.alpha(foreground) < 255) {
             // If the foreground is translucent, composite the foreground over the background
             foreground = compositeColors(foreground, background);
         }
 
         final double luminance1 = calculateLuminance(foreground) + 0.05;
-        final double luminance2 = calculateLuminance(background) + 0.05;
+        final double luminance2 = backgroundLuminance + 0.05;
 
         // Now return the lighter luminance divided by the darker luminance
         return Math.max(luminance1, luminance2) / Math.min(luminance1, luminance2);
@@ -116,14 +175,47 @@ public final class ColorUtils {
      */
     public static int calculateMinimumAlpha(@ColorInt int foreground, @ColorInt int background,
             float minContrastRatio) {
-        if (Color.alpha(background) != 255) {
-            throw new IllegalArgumentException("background can not be translucent: #"
-                    + Integer.toHexString(background));
+        checkOpaqueBackground(background);
+        return calculateMinimumAlpha(foreground, background, calculateLuminance(background),
+                minContrastRatio);
+    }
+
+    /**
+     * Calculates the minimum alpha values which can be applied to the colors of
+     * {@code foregrounds} so that they would have a contrast value of at least
+     * {@code minContrastRatio} when compared to the colors of {@code backgrounds}, as
+     * {@link #calculateMinimumAlpha(int, int, float)} does for one pair. The luminance of a
+     * background is only calculated once for consecutive pairs which share it.
+     *
+     * @param foregrounds      the foreground colors
+     * @param backgrounds      the opaque background colors, one for each foreground color
+     * @param minContrastRatio the minimum contrast ratio
+     * @param outAlphas        array which holds the resulting alpha values in the range 0-255,
+     *                         or -1 if no value could be calculated, in the order of the pairs.
+     *                         Its length must be at least the number of pairs
+     */
+    public static void calculateMinimumAlphas(@NonNull int[] foregrounds,
+            @NonNull int[] backgrounds, float minContrastRatio, @NonNull int[] outAlphas) {
+        checkPairs(foregrounds, backgrounds, outAlphas.length, "outAlphas");
+        int lastBackground = 0;
+        double lastBackgroundLuminance = -1;
+        for (int i = 0; i < foregrounds.length; i++) {
+            final int background = backgrounds[i];
+            if (lastBackgroundLuminance < 0 || background != lastBackground) {
+                checkOpaqueBackground(background);
+                lastBackground = background;
+                lastBackgroundLuminance = calculateLuminance(background);
+            }
+            outAlphas[i] = calculateMinimumAlpha(foregrounds[i], background,
+                    lastBackgroundLuminance, minContrastRatio);
         }
+    }
 
+    private static int calculateMinimumAlpha(int foreground, int background,
+            double backgroundLuminance, float minContrastRatio) {
         // First lets check that a fully opaque foreground has sufficient contrast
         int testForeground = setAlphaComponent(foreground, 255);
-        double testRatio = calculateContrast(testForeground, background);
+        double testRatio = calculateContrast(testForeground, background, backgroundLuminance);
         if (testRatio < minContrastRatio) {
             // Fully opaque foreground does not have sufficient contrast, return error
             return -1;
@@ -139,7 +231,7 @@ public final class ColorUtils {
             final int testAlpha = (minAlpha + maxAlpha) / 2;
 
             testForeground = setAlphaComponent(foreground, testAlpha);
-            testRatio = calculateContrast(testForeground, background);
+            testRatio = calculateContrast(testForeground, background, backgroundLuminance);
 
             if (testRatio < minContrastRatio) {
                 minAlpha = testAlpha;
@@ -154,6 +246,25 @@ public final class ColorUtils {
         return maxAlpha;
     }
 
+    private static void checkOpaqueBackground(int background) {
+        if (Color.alpha(background) != 255) {
+            throw new IllegalArgumentException("background can not be translucent: #"
+                    + Integer.toHexString(background));
+        }
+    }
+
+    private static void checkPairs(int[] foregrounds, int[] backgrounds, int outLength,
+            String outName) {
+        if (backgrounds.length != foregrounds.length) {
+            throw new IllegalArgumentException(
+                    "foregrounds and backgrounds must have the same length.");
+        }
+        if (outLength < foregrounds.length) {
+            throw new IllegalArgumentException(
+                    outName + " must be at least as long as foregrounds.");
+        }
+    }
+
     /**
      * Convert RGB components to HSL (hue-saturation-lightness).
      * <ul>
@@ -170,6 +281,10 @@ public final class ColorUtils {
     public static void RGBToHSL(@IntRange(from = 0x0, to = 0xFF) int r,
             @IntRange(from = 0x0, to = 0xFF) int g, @IntRange(from = 0x0, to = 0xFF) int b,
             @NonNull float[] outHsl) {
+        RGBToHSL(r, g, b, outHsl, 0);
+    }
+
+    private static void RGBToHSL(int r, int g, int b, float[] outHsl, int offset) {
         final float rf = r / 255f;
         final float gf = g / 255f;
         final float bf = b / 255f;
@@ -201,9 +316,9 @@ public final class ColorUtils {
             h += 360f;
         }
 
-        outHsl[0] = constrain(h, 0f, 360f);
-        outHsl[1] = constrain(s, 0f, 1f);
-        outHsl[2] = constrain(l, 0f, 1f);
+        outHsl[offset] = constrain(h, 0f, 360f);
+        outHsl[offset + 1] = constrain(s, 0f, 1f);
+        outHsl[offset + 2] = constrain(l, 0f, 1f);
     }
 
     /**
@@ -221,6 +336,27 @@ public final class ColorUtils {
         RGBToHSL(Color.red(color), Color.green(color), Color.blue(color), outHsl);
     }
 
+    /**
+     * Convert each ARGB color of {@code colors} to its HSL (hue-saturation-lightness)
+     * components, as {@link #colorToHSL(int, float[])} does for one color.
+     * <ul>
+     * <li>outHsl[3 * i] is the Hue of colors[i] [0 .. 360)</li>
+     * <li>outHsl[3 * i + 1] is the Saturation of colors[i] [0...1]</li>
+     * <li>outHsl[3 * i + 2] is the Lightness of colors[i] [0...1]</li>
+     * </ul>
+     *
+     * @param colors the ARGB colors to convert. The alpha components are ignored
+     * @param outHsl array which holds the resulting HSL components. Its length must be at least
+     *               {@code 3 * colors.length}
+     */
+    public static void colorsToHSL(@NonNull int[] colors, @NonNull float[] outHsl) {
+        checkComponentsLength(colors, outHsl.length, "outHsl");
+        for (int i = 0; i < colors.length; i++) {
+            final int color = colors[i];
+            RGBToHSL(Color.red(color), Color.green(color), Color.blue(color), outHsl, 3 * i);
+        }
+    }
+
     /**
      * Convert HSL (hue-saturation-lightness) components to a RGB color.
      * <ul>
@@ -310,6 +446,29 @@ public final class ColorUtils {
         RGBToLAB(Color.red(color), Color.green(color), Color.blue(color), outLab);
     }
 
+    /**
+     * Convert each ARGB color of {@code colors} to its CIE Lab representative components, as
+     * {@link #colorToLAB(int, double[])} does for one color.
+     * <ul>
+     * <li>outLab[3 * i] is the L of colors[i] [0 ...1)</li>
+     * <li>outLab[3 * i + 1] is the a of colors[i] [-128...127)</li>
+     * <li>outLab[3 * i + 2] is the b of colors[i] [-128...127)</li>
+     * </ul>
+     *
+     * @param colors the ARGB colors to convert. The alpha components are ignored
+     * @param outLab array which holds the resulting LAB components. Its length must be at least
+     *               {@code 3 * colors.length}
+     */
+    public static void colorsToLAB(@NonNull int[] colors, @NonNull double[] outLab) {
+        checkComponentsLength(colors, outLab.length, "outLab");
+        for (int i = 0; i < colors.length; i++) {
+            final int color = colors[i];
+            final int offset = 3 * i;
+            RGBToXYZ(Color.red(color), Color.green(color), Color.blue(color), outLab, offset);
+            XYZToLAB(outLab[offset], outLab[offset + 1], outLab[offset + 2], outLab, offset);
+        }
+    }
+
     /**
      * Convert RGB components to its CIE Lab representative components.
      *
@@ -353,6 +512,34 @@ public final class ColorUtils {
         RGBToXYZ(Color.red(color), Color.green(color), Color.blue(color), outXyz);
     }
 
+    /**
+     * Convert each ARGB color of {@code colors} to its CIE XYZ representative components, as
+     * {@link #colorToXYZ(int, double[])} does for one color.
+     * <ul>
+     * <li>outXyz[3 * i] is the X of colors[i] [0 ...95.047)</li>
+     * <li>outXyz[3 * i + 1] is the Y of colors[i] [0...100)</li>
+     * <li>outXyz[3 * i + 2] is the Z of colors[i] [0...108.883)</li>
+     * </ul>
+     *
+     * @param colors the ARGB colors to convert. The alpha components are ignored
+     * @param outXyz array which holds the resulting XYZ components. Its length must be at least
+     *               {@code 3 * colors.length}
+     */
+    public static void colorsToXYZ(@NonNull int[] colors, @NonNull double[] outXyz) {
+        checkComponentsLength(colors, outXyz.length, "outXyz");
+        for (int i = 0; i < colors.length; i++) {
+            final int color = colors[i];
+            RGBToXYZ(Color.red(color), Color.green(color), Color.blue(color), outXyz, 3 * i);
+        }
+    }
+
+    private static void checkComponentsLength(int[] colors, int outLength, String outName) {
+        if (outLength < 3 * colors.length) {
+            throw new IllegalArgumentException(
+                    outName + " must have a length of at least 3 * colors.length.");
+        }
+    }
+
     /**
      * Convert RGB components to its CIE XYZ representative components.
      *
@@ -376,17 +563,27 @@ public final class ColorUtils {
         if (outXyz.length != 3) {
             throw new IllegalArgumentException("outXyz must have a length of 3.");
         }
+        RGBToXYZ(r, g, b, outXyz, 0);
+    }
+
+    private static void RGBToXYZ(int r, int g, int b, double[] outXyz, int offset) {
+        final double sr = linearComponent(r);
+        final double sg = linearComponent(g);
+        final double sb = linearComponent(b);
 
-        double sr = r / 255.0;
-        sr = sr < 0.04045 ? sr / 12.92 : Math.pow((sr + 0.055) / 1.055, 2.4);
-        double sg = g / 255.0;
-        sg = sg < 0.04045 ? sg / 12.92 : Math.pow((sg + 0.055) / 1.055, 2.4);
-        double sb = b / 255.0;
-        sb = sb < 0.04045 ? sb / 12.92 : Math.pow((sb + 0.055) / 1.055, 2.4);
+        outXyz[offset] = 100 * (sr * 0.4124 + sg * 0.3576 + sb * 0.1805);
+        outXyz[offset + 1] = 100 * (sr * 0.2126 + sg * 0.7152 + sb * 0.0722);
+        outXyz[offset + 2] = 100 * (sr * 0.0193 + sg * 0.1192 + sb * 0.9505);
+    }
+
+    private static double linearComponent(int component) {
+        return component >= 0 && component <= 255
+                ? SRGB_TO_LINEAR[component] : srgbToLinear(component / 255.0);
+    }
 
-        outXyz[0] = 100 * (sr * 0.4124 + sg * 0.3576 + sb * 0.1805);
-        outXyz[1] = 100 * (sr * 0.2126 + sg * 0.7152 + sb * 0.0722);
-        outXyz[2] = 100 * (sr * 0.0193 + sg * 0.1192 + sb * 0.9505);
+    private static double srgbToLinear(double component) {
+        return component < 0.04045
+                ? component / 12.92 : Math.pow((component + 0.055) / 1.055, 2.4);
     }
 
     /**
@@ -413,12 +610,16 @@ public final class ColorUtils {
         if (outLab.length != 3) {
             throw new IllegalArgumentException("outLab must have a length of 3.");
         }
+        XYZToLAB(x, y, z, outLab, 0);
+    }
+
+    private static void XYZToLAB(double x, double y, double z, double[] outLab, int offset) {
         x = pivotXyzComponent(x / XYZ_WHITE_REFERENCE_X);
         y = pivotXyzComponent(y / XYZ_WHITE_REFERENCE_Y);
         z = pivotXyzComponent(z / XYZ_WHITE_REFERENCE_Z);
-        outLab[0] = Math.max(0, 116 * y - 16);
-        outLab[1] = 500 * (x - y);
-        outLab[2] = 200 * (y - z);
+        outLab[offset] = Math.max(0, 116 * y - 16);
+        outLab[offset + 1] = 500 * (x - y);
+        outLab[offset + 2] = 200 * (y - z);
     }
 
     /**
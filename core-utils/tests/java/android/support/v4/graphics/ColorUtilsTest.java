@@ -158,6 +158,70 @@ public class ColorUtilsTest {
         }
     }
 
+    @Test
+    public void testBulkConversionsMatchSingleConversions() {
+        final int count = sEntryList.size();
+        final int[] colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = sEntryList.get(i).rgb;
+        }
+        final float[] hsl = new float[3 * count];
+        final double[] xyz = new double[3 * count];
+        final double[] lab = new double[3 * count];
+        final double[] luminances = new double[count];
+        ColorUtils.colorsToHSL(colors, hsl);
+        ColorUtils.colorsToXYZ(colors, xyz);
+        ColorUtils.colorsToLAB(colors, lab);
+        ColorUtils.calculateLuminances(colors, luminances);
+
+        final float[] expectedHsl = new float[3];
+        final double[] expected = new double[3];
+        for (int i = 0; i < count; i++) {
+            ColorUtils.colorToHSL(colors[i], expectedHsl);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(expectedHsl[j], hsl[3 * i + j], 0f);
+            }
+            ColorUtils.colorToXYZ(colors[i], expected);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(expected[j], xyz[3 * i + j], 0);
+            }
+            ColorUtils.colorToLAB(colors[i], expected);
+            for (int j = 0; j < 3; j++) {
+                assertEquals(expected[j], lab[3 * i + j], 0);
+            }
+            assertEquals(ColorUtils.calculateLuminance(colors[i]), luminances[i], 0);
+        }
+    }
+
+    @Test
+    public void testBulkContrastsMatchSingleContrasts() {
+        final int count = sEntryList.size();
+        final int[] foregrounds = new int[2 * count];
+        final int[] backgrounds = new int[2 * count];
+        for (int i = 0; i < count; i++) {
+            foregrounds[2 * i] = Color.BLACK;
+            foregrounds[2 * i + 1] = ColorUtils.setAlphaComponent(Color.WHITE, 0x80);
+            backgrounds[2 * i] = backgrounds[2 * i + 1] = sEntryList.get(i).rgb;
+        }
+        final double[] contrasts = new double[foregrounds.length];
+        final int[] alphas = new int[foregrounds.length];
+        ColorUtils.calculateContrasts(foregrounds, backgrounds, contrasts);
+        ColorUtils.calculateMinimumAlphas(foregrounds, backgrounds, 4.5f, alphas);
+
+        for (int i = 0; i < foregrounds.length; i++) {
+            assertEquals(ColorUtils.calculateContrast(foregrounds[i], backgrounds[i]),
+                    contrasts[i], 0);
+            assertEquals(ColorUtils.calculateMinimumAlpha(foregrounds[i], backgrounds[i], 4.5f),
+                    alphas[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkContrastsTranslucentBackground() {
+        ColorUtils.calculateContrasts(new int[] {Color.BLACK}, new int[] {0x80FFFFFF},
+                new double[1]);
+    }
+
     @Test
     public void testCircularInterpolationForwards() {
         assertEquals(0f, ColorUtils.circularInterpolate(0, 180, 0f), 0f);
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.media;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a few common Exif values from many image files in parallel.
+ * <p>
+ * The values are stored in arrays indexed like the given files, one array per column, rather
+ * than in one {@link ExifInterface} per file. Only the tags of the requested columns are decoded,
+ * and each worker reads the beginning of JPEG files into a buffer which it reuses for all of its
+ * files. Other image formats, and JPEG files whose metadata do not fit in the buffer, are mapped
+ * to memory instead.
+ * </p>
+ * <pre>
+ * ExifBatchReader reader = new ExifBatchReader(executor, 4,
+ *         ExifBatchReader.COLUMN_ORIENTATION | ExifBatchReader.COLUMN_DATE_TIME);
+ * ExifBatchReader.Result result = reader.read(paths);
+ * for (int i = 0; i < result.size(); i++) {
+ *     index(paths.get(i), result.getOrientation(i), result.getDateTime(i));
+ * }
+ * </pre>
+ * Instances can be shared between threads.
+ */
+public final class ExifBatchReader {
+
+    private static final String TAG = "ExifBatchReader";
+
+    /** Reads {@link ExifInterface#TAG_ORIENTATION}. */
+    public static final int COLUMN_ORIENTATION = 1;
+    /** Reads the date and time of the image, see {@link Result#getDateTime(int)}. */
+    public static final int COLUMN_DATE_TIME = 1 << 1;
+    /** Reads the latitude and the longitude of the image. */
+    public static final int COLUMN_LAT_LONG = 1 << 2;
+
+    // The sizes of the beginning of JPEG files which are read, the last one being large enough
+    // for the metadata segments of almost every JPEG file.
+    private static final int[] READ_SIZES = {32 * 1024, 256 * 1024};
+
+    private final Executor mExecutor;
+    private final int mParallelism;
+    private final int mColumns;
+    private final Set<String> mTags;
+
+    // Buffers of the workers, kept for the next batches.
+    private final List<ByteBuffer> mBuffers = new ArrayList<>();
+
+    /**
+     * @param executor the executor running the workers.
+     * @param parallelism the maximum number of files read at the same time.
+     * @param columns the values to read, a combination of {@link #COLUMN_ORIENTATION},
+     *                {@link #COLUMN_DATE_TIME} and {@link #COLUMN_LAT_LONG}.
+     */
+    public ExifBatchReader(@NonNull Executor executor, int parallelism, int columns) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        }
+        mExecutor = executor;
+        mParallelism = parallelism;
+        mColumns = columns;
+
+        mTags = new HashSet<>();
+        if ((columns & COLUMN_ORIENTATION) != 0) {
+            mTags.add(ExifInterface.TAG_ORIENTATION);
+        }
+        if ((columns & COLUMN_DATE_TIME) != 0) {
+            mTags.add(ExifInterface.TAG_DATETIME);
+            mTags.add(ExifInterface.TAG_SUBSEC_TIME);
+        }
+        if ((columns & COLUMN_LAT_LONG) != 0) {
+            mTags.addAll(Arrays.asList(ExifInterface.TAG_GPS_LATITUDE,
+                    ExifInterface.TAG_GPS_LATITUDE_REF, ExifInterface.TAG_GPS_LONGITUDE,
+                    ExifInterface.TAG_GPS_LONGITUDE_REF));
+        }
+    }
+
+    /**
+     * Reads the image files with the given paths. This blocks until all the files are read, so it
+     * should not be called on the main thread.
+     */
+    @NonNull
+    public Result read(@NonNull List<String> paths) throws InterruptedException {
+        return readAll(paths);
+    }
+
+    /**
+     * Reads the image files with the given descriptors, each from its current offset. The offsets
+     * are left unchanged and the descriptors are not closed. This blocks until all the files are
+     * read, so it should not be called on the main thread.
+     */
+    @NonNull
+    public Result readFileDescriptors(@NonNull List<FileDescriptor> fileDescriptors)
+            throws InterruptedException {
+        return readAll(fileDescriptors);
+    }
+
+    private Result readAll(final List<?> files) throws InterruptedException {
+        final Result result = new Result(files.size());
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min(mParallelism, files.size());
+        final CountDownLatch done = new CountDownLatch(workers);
+
+        for (int i = 0; i < workers; i++) {
+            Runnable worker = new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuffer buffer = obtainBuffer();
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < files.size()) {
+                            readFile(files.get(index), buffer, result, index);
+                        }
+                    } finally {
+                        releaseBuffer(buffer);
+                        done.countDown();
+                    }
+                }
+            };
+            try {
+                mExecutor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // Read the remaining files on this thread rather than waiting forever.
+                worker.run();
+            }
+        }
+        done.await();
+        return result;
+    }
+
+    private void readFile(Object file, ByteBuffer buffer, Result result, int index) {
+        FileInputStream in = null;
+        try {
+            in = file instanceof FileDescriptor
+                    ? new FileInputStream((FileDescriptor) file)
+                    : new FileInputStream((String) file);
+            FileChannel channel = in.getChannel();
+            long position = channel.position();
+            long size = channel.size() - position;
+
+            // Read the beginning of the file first, then up to the whole buffer if that was not
+            // enough for a JPEG file. Positional reads do not move the offset of a shared file
+            // descriptor.
+            ExifInterface exifInterface = null;
+            int length = 0;
+            for (int readSize : READ_SIZES) {
+                buffer.limit(readSize);
+                buffer.position(length);
+                while (buffer.hasRemaining()
+                        && channel.read(buffer, position + buffer.position()) > 0) {
+                    // Keep reading up to the read size
+                }
+                length = buffer.position();
+                buffer.flip();
+                if (length < size && !isJpeg(buffer)) {
+                    // Other formats may point to any part of the file.
+                    break;
+                }
+                exifInterface = new ExifInterface(buffer, mTags);
+                if (exifInterface.isSupportedJpeg() || length >= size) {
+                    break;
+                }
+                exifInterface = null;
+            }
+            if (exifInterface == null) {
+                exifInterface = new ExifInterface(
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, size), mTags);
+            }
+            result.set(index, exifInterface, mColumns);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read " + file, e);
+        } finally {
+            // The descriptors given by the caller are not closed.
+            if (!(file instanceof FileDescriptor) && in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignored
+                }
+            }
+        }
+    }
+
+    private static boolean isJpeg(ByteBuffer buffer) {
+        return buffer.limit() >= 3 && buffer.get(0) == (byte) 0xff
+                && buffer.get(1) == (byte) 0xd8 && buffer.get(2) == (byte) 0xff;
+    }
+
+    private ByteBuffer obtainBuffer() {
+        synchronized (mBuffers) {
+            if (!mBuffers.isEmpty()) {
+                return mBuffers.remove(mBuffers.size() - 1);
+            }
+        }
+        return ByteBuffer.allocate(READ_SIZES[READ_SIZES.length - 1]);
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        synchronized (mBuffers) {
+            if (mBuffers.size() < mParallelism) {
+                mBuffers.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * The values read from a batch of image files, indexed like the files. The values of the
+     * columns which were not requested, and of the files which could not be read, are the default
+     * ones.
+     */
+    public static final class Result {
+        private final boolean[] mRead;
+        private final int[] mOrientations;
+        private final long[] mDateTimes;
+        private final double[] mLatitudes;
+        private final double[] mLongitudes;
+
+        Result(int size) {
+            mRead = new boolean[size];
+            mOrientations = new int[size];
+            mDateTimes = new long[size];
+            mLatitudes = new double[size];
+            mLongitudes = new double[size];
+            Arrays.fill(mDateTimes, -1);
+            Arrays.fill(mLatitudes, Double.NaN);
+            Arrays.fill(mLongitudes, Double.NaN);
+        }
+
+        void set(int index, ExifInterface exifInterface, int columns) {
+            if ((columns & COLUMN_ORIENTATION) != 0) {
+                mOrientations[index] = exifInterface.getAttributeInt(
+                        ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+            }
+            if ((columns & COLUMN_DATE_TIME) != 0) {
+                mDateTimes[index] = exifInterface.getDateTime();
+            }
+            if ((columns & COLUMN_LAT_LONG) != 0) {
+                double[] latLong = exifInterface.getLatLong();
+                if (latLong != null) {
+                    mLatitudes[index] = latLong[0];
+                    mLongitudes[index] = latLong[1];
+                }
+            }
+            mRead[index] = true;
+        }
+
+        /**
+         * Returns the number of files.
+         */
+        public int size() {
+            return mRead.length;
+        }
+
+        /**
+         * Returns whether the file at the given index could be read.
+         */
+        public boolean isRead(int index) {
+            return mRead[index];
+        }
+
+        /**
+         * Returns the orientation of the image, or {@link ExifInterface#ORIENTATION_UNDEFINED}.
+         */
+        public int getOrientation(int index) {
+            return mOrientations[index];
+        }
+
+        /**
+         * Returns the date and time of the image as the number of milliseconds since Jan. 1,
+         * 1970 in the local time of the image, or -1.
+         */
+        public long getDateTime(int index) {
+            return mDateTimes[index];
+        }
+
+        /**
+         * Returns the latitude of the image, or {@link Double#NaN}.
+         */
+        public double getLatitude(int index) {
+            return mLatitudes[index];
+        }
+
+        /**
+         * Returns the longitude of the image, or {@link Double#NaN}.
+         */
+        public double getLongitude(int index) {
+            return mLongitudes[index];
+        }
+
+        /**
+         * Returns the orientations of all the images. The array is not copied.
+         */
+        @NonNull
+        public int[] getOrientations() {
+            return mOrientations;
+        }
+
+        /**
+         * Returns the dates and times of all the images. The array is not copied.
+         */
+        @NonNull
+        public long[] getDateTimes() {
+            return mDateTimes;
+        }
+
+        /**
+         * Returns the latitudes of all the images. The array is not copied.
+         */
+        @NonNull
+        public double[] getLatitudes() {
+            return mLatitudes;
+        }
+
+        /**
+         * Returns the longitudes of all the images. The array is not copied.
+         */
+        @NonNull
+        public double[] getLongitudes() {
+            return mLongitudes;
+        }
+    }
+}
@@ -21,16 +21,19 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.util.Pair;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -38,10 +41,12 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
@@ -430,7 +435,16 @@ public class ExifInterface {
     // See http://www.exiv2.org/makernote.html#R11
     private static final int PEF_MAKER_NOTE_SKIP_SIZE = 6;
 
-    private static SimpleDateFormat sFormatter;
+    // SimpleDateFormat is not thread safe, so each thread parsing dates has its own.
+    private static final ThreadLocal<SimpleDateFormat> sFormatter =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat formatter = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+                    formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    return formatter;
+                }
+            };
 
     // See Exchangeable image file format for digital still cameras: Exif version 2.2.
     // The following values are for parsing EXIF data area. There are tag groups in EXIF data area.
@@ -1162,6 +1176,13 @@ public class ExifInterface {
     private static final int IFD_TYPE_ORF_IMAGE_PROCESSING = 8;
     private static final int IFD_TYPE_PEF = 9;
 
+    // Reads every tag, following the pointers to the other IFDs.
+    private static final int IFD_READ_ALL = 0;
+    // Reads the requested tags, following the pointers to the IFDs which contain any of them.
+    private static final int IFD_READ_REQUESTED = 1;
+    // Reads every tag of a single IFD whose reading was deferred.
+    private static final int IFD_READ_PENDING = 2;
+
     // List of Exif tag groups
     private static final ExifTag[][] EXIF_TAGS = new ExifTag[][] {
             IFD_TIFF_TAGS, IFD_EXIF_TAGS, IFD_GPS_TAGS, IFD_INTEROPERABILITY_TAGS,
@@ -1240,9 +1261,6 @@ public class ExifInterface {
     private static final int IMAGE_TYPE_SRW = 11;
 
     static {
-        sFormatter = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
-        sFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-
         // Build up the hash tables to look up Exif tags for reading Exif tags.
         for (int ifdType = 0; ifdType < EXIF_TAGS.length; ++ifdType) {
             sExifTagMapsForReading[ifdType] = new HashMap();
@@ -1274,11 +1292,22 @@ public class ExifInterface {
     private byte[] mThumbnailBytes;
     private int mThumbnailCompression;
     private int mExifOffset;
+    // The length of the EXIF data area of a JPEG file, or -1 if there are several of them.
+    private int mExifLength;
     private int mOrfMakerNoteOffset;
     private int mOrfThumbnailOffset;
     private int mOrfThumbnailLength;
     private int mRw2JpgFromRawOffset;
     private boolean mIsSupportedFile;
+    // The tags to read while loading the attributes, or null to read all of them.
+    private final Set<String> mRequestedTags;
+    // The EXIF data area of a JPEG file, kept to read the skipped tags on demand.
+    private byte[] mExifBytes;
+    // The offsets of the IFDs in the EXIF data area, and whether any of their tags was skipped.
+    private final int[] mIfdOffsets = new int[EXIF_TAGS.length];
+    private final boolean[] mPendingIfds = new boolean[EXIF_TAGS.length];
+    // Guards the deferred reads of the skipped tags, which happen in the getters.
+    private final Object mPendingIfdsLock = new Object();
 
     // Pattern to check non zero timestamp
     private static final Pattern sNonZeroTimePattern = Pattern.compile(".*[1-9].*");
@@ -1290,20 +1319,69 @@ public class ExifInterface {
      * Reads Exif tags from the specified image file.
      */
     public ExifInterface(String filename) throws IOException {
+        this(filename, null);
+    }
+
+    /**
+     * Reads Exif tags from the specified image file, decoding only the given tags up front.
+     * <p>
+     * For JPEG files, the image file directories which do not contain any of the given tags are
+     * not parsed, and the entries of the other tags are skipped. They are decoded from the EXIF
+     * data kept in memory the first time one of their tags is accessed, so all the tags remain
+     * available. Other image formats are always read entirely. The deferred decoding is
+     * synchronized, so the attributes can be read from several threads as with a fully decoded
+     * instance, but they must not be modified while they are being read.
+     * </p>
+     *
+     * @param filename the name of the image file.
+     * @param tags the names of the tags to decode up front, or {@code null} to decode all of them.
+     */
+    public ExifInterface(@NonNull String filename, @Nullable Set<String> tags)
+            throws IOException {
         if (filename == null) {
             throw new IllegalArgumentException("filename cannot be null");
         }
         FileInputStream in = null;
         mAssetInputStream = null;
         mFilename = filename;
+        mRequestedTags = getRequestedTags(tags);
         try {
             in = new FileInputStream(filename);
-            loadAttributes(in);
+            loadAttributes(mapInputStream(in));
         } finally {
             closeQuietly(in);
         }
     }
 
+    /**
+     * Reads Exif tags from the specified image file descriptor, starting at its current offset.
+     * Attribute mutation is not supported for file descriptors. The file descriptor is not
+     * closed.
+     */
+    public ExifInterface(@NonNull FileDescriptor fileDescriptor) throws IOException {
+        this(fileDescriptor, null);
+    }
+
+    /**
+     * Reads Exif tags from the specified image file descriptor, decoding only the given tags up
+     * front. See {@link #ExifInterface(String, Set)} for how the other tags are read, and
+     * {@link #ExifInterface(FileDescriptor)} for the restrictions on file descriptors.
+     *
+     * @param fileDescriptor the image file descriptor.
+     * @param tags the names of the tags to decode up front, or {@code null} to decode all of them.
+     */
+    public ExifInterface(@NonNull FileDescriptor fileDescriptor, @Nullable Set<String> tags)
+            throws IOException {
+        if (fileDescriptor == null) {
+            throw new IllegalArgumentException("fileDescriptor cannot be null");
+        }
+        mFilename = null;
+        mAssetInputStream = null;
+        mRequestedTags = getRequestedTags(tags);
+        // The stream is not closed since that would close the file descriptor.
+        loadAttributes(mapInputStream(new FileInputStream(fileDescriptor)));
+    }
+
     /**
      * Reads Exif tags from the specified image input stream. Attribute mutation is not supported
      * for input streams. The given input stream will proceed its current position. Developers
@@ -1311,10 +1389,24 @@ public class ExifInterface {
      * an input stream that performs any networking operations.
      */
     public ExifInterface(InputStream inputStream) throws IOException {
+        this(inputStream, null);
+    }
+
+    /**
+     * Reads Exif tags from the specified image input stream, decoding only the given tags up
+     * front. See {@link #ExifInterface(String, Set)} for how the other tags are read, and
+     * {@link #ExifInterface(InputStream)} for the restrictions on input streams.
+     *
+     * @param inputStream the image input stream.
+     * @param tags the names of the tags to decode up front, or {@code null} to decode all of them.
+     */
+    public ExifInterface(@NonNull InputStream inputStream, @Nullable Set<String> tags)
+            throws IOException {
         if (inputStream == null) {
             throw new IllegalArgumentException("inputStream cannot be null");
         }
         mFilename = null;
+        mRequestedTags = getRequestedTags(tags);
         if (inputStream instanceof AssetManager.AssetInputStream) {
             mAssetInputStream = (AssetManager.AssetInputStream) inputStream;
         } else {
@@ -1323,6 +1415,26 @@ public class ExifInterface {
         loadAttributes(inputStream);
     }
 
+    /**
+     * Reads Exif tags from the image data in the given buffer, decoding only the given tags up
+     * front. The buffer does not need to hold more than the beginning of a JPEG file, see
+     * {@link #isSupportedJpeg()}.
+     */
+    ExifInterface(@NonNull ByteBuffer buffer, @Nullable Set<String> tags) throws IOException {
+        mFilename = null;
+        mAssetInputStream = null;
+        mRequestedTags = getRequestedTags(tags);
+        loadAttributes(new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * Returns whether the image data were read as a JPEG file without errors. If not, the image
+     * may need more data than the beginning of the file to be read.
+     */
+    boolean isSupportedJpeg() {
+        return mIsSupportedFile && mMimeType == IMAGE_TYPE_JPEG;
+    }
+
     /**
      * Returns the EXIF attribute of the specified tag or {@code null} if there is no such tag in
      * the image file.
@@ -1330,6 +1442,23 @@ public class ExifInterface {
      * @param tag the name of the tag.
      */
     private ExifAttribute getExifAttribute(String tag) {
+        if (mExifBytes == null) {
+            // Nothing was skipped, the attributes are only modified by the setters
+            return getLoadedExifAttribute(tag);
+        }
+        synchronized (mPendingIfdsLock) {
+            loadPendingIfds(tag);
+            return getLoadedExifAttribute(tag);
+        }
+    }
+
+    /**
+     * Returns the EXIF attribute of the specified tag among the tags already read, without
+     * reading any skipped tag.
+     *
+     * @param tag the name of the tag.
+     */
+    private ExifAttribute getLoadedExifAttribute(String tag) {
         // Retrieves all tag groups. The value from primary image tag group has a higher priority
         // than the value from the thumbnail tag group if there are more than one candidates.
         for (int i = 0; i < EXIF_TAGS.length; ++i) {
@@ -1449,6 +1578,8 @@ public class ExifInterface {
             }
         }
 
+        // Read the skipped values first so that they do not overwrite the new one later.
+        loadPendingIfds(tag);
         for (int i = 0 ; i < EXIF_TAGS.length; ++i) {
             if (i == IFD_TYPE_THUMBNAIL && !mHasThumbnail) {
                 continue;
@@ -1603,9 +1734,11 @@ public class ExifInterface {
                 mAttributes[i] = new HashMap();
             }
 
-            // Check file type
-            in = new BufferedInputStream(in, SIGNATURE_CHECK_SIZE);
-            mMimeType = getMimeType((BufferedInputStream) in);
+            // Check file type. A mapped file can already seek to any offset without buffering.
+            if (!(in instanceof ByteBufferInputStream)) {
+                in = new BufferedInputStream(in, SIGNATURE_CHECK_SIZE);
+            }
+            mMimeType = getMimeType(in);
 
             // Create byte-ordered input stream
             ByteOrderedDataInputStream inputStream = new ByteOrderedDataInputStream(in);
@@ -1681,7 +1814,8 @@ public class ExifInterface {
      * other. It's best to use {@link #setAttribute(String,String)} to set all attributes to write
      * and make a single call rather than multiple calls for each attribute.
      * <p>
-     * This method is only supported for JPEG files.
+     * This method is only supported for JPEG files. When the new EXIF data fit in the space of the
+     * original data, they are written over it instead, and the rest of the file is left untouched.
      * </p>
      */
     public void saveAttributes() throws IOException {
@@ -1693,9 +1827,17 @@ public class ExifInterface {
                     "ExifInterface does not support saving attributes for the current input.");
         }
 
+        // Every tag is written back, including the ones which were skipped.
+        loadAllPendingIfds();
+
         // Keep the thumbnail in memory
         mThumbnailBytes = getThumbnail();
 
+        if (saveJpegAttributesInPlace()) {
+            mThumbnailBytes = null;
+            return;
+        }
+
         File tempFile = new File(mFilename + ".tmp");
         File originalFile = new File(mFilename);
         if (!originalFile.renameTo(tempFile)) {
@@ -1719,6 +1861,50 @@ public class ExifInterface {
         mThumbnailBytes = null;
     }
 
+    /**
+     * Overwrites the original EXIF APP1 segment with the new one if it fits, padding the rest of
+     * the segment with zeros.
+     *
+     * @return Returns {@code true} if the file was updated.
+     */
+    private boolean saveJpegAttributesInPlace() throws IOException {
+        if (mExifLength <= 0) {
+            return false;
+        }
+        // Encode the segment with the offset of the original EXIF data area.
+        int thumbnailOffset = mThumbnailOffset;
+        ByteArrayOutputStream segment = new ByteArrayOutputStream(mExifLength + 8);
+        int totalSize = writeExifSegment(
+                new ByteOrderedDataOutputStream(segment, ByteOrder.BIG_ENDIAN), mExifOffset);
+        // The segment length covers itself, the identifier and the EXIF data area.
+        int originalSize = mExifLength + 8;
+        if (totalSize > originalSize) {
+            mThumbnailOffset = thumbnailOffset;
+            return false;
+        }
+        byte[] bytes = Arrays.copyOf(segment.toByteArray(), originalSize);
+        bytes[0] = (byte) (originalSize >> 8);
+        bytes[1] = (byte) originalSize;
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFilename, "rw");
+            // Make sure that the segment is still at the same place.
+            byte[] header = new byte[8];
+            file.seek(mExifOffset - 8);
+            file.readFully(header);
+            if (!Arrays.equals(Arrays.copyOf(bytes, 8), header)) {
+                mThumbnailOffset = thumbnailOffset;
+                return false;
+            }
+            file.seek(mExifOffset - 8);
+            file.write(bytes);
+        } finally {
+            closeQuietly(file);
+        }
+        return true;
+    }
+
     /**
      * Returns true if the image file has a thumbnail.
      */
@@ -1948,7 +2134,7 @@ public class ExifInterface {
         try {
             // The exif field is in local time. Parsing it as if it is UTC will yield time
             // since 1/1/1970 local time
-            Date datetime = sFormatter.parse(dateTimeString, pos);
+            Date datetime = sFormatter.get().parse(dateTimeString, pos);
             if (datetime == null) return -1;
             long msecs = datetime.getTime();
 
@@ -1988,7 +2174,7 @@ public class ExifInterface {
 
         ParsePosition pos = new ParsePosition(0);
         try {
-            Date datetime = sFormatter.parse(dateTimeString, pos);
+            Date datetime = sFormatter.get().parse(dateTimeString, pos);
             if (datetime == null) return -1;
             return datetime.getTime();
         } catch (IllegalArgumentException e) {
@@ -2036,7 +2222,7 @@ public class ExifInterface {
     }
 
     // Checks the type of image file
-    private int getMimeType(BufferedInputStream in) throws IOException {
+    private int getMimeType(InputStream in) throws IOException {
         in.mark(SIGNATURE_CHECK_SIZE);
         byte[] signatureCheckBytes = new byte[SIGNATURE_CHECK_SIZE];
         if (in.read(signatureCheckBytes) != SIGNATURE_CHECK_SIZE) {
@@ -2209,6 +2395,8 @@ public class ExifInterface {
                     }
                     // Save offset values for createJpegThumbnailBitmap() function
                     mExifOffset = bytesRead;
+                    // Save the length to overwrite the EXIF data area in saveAttributes()
+                    mExifLength = mExifLength == 0 ? length : -1;
 
                     byte[] bytes = new byte[length];
                     if (in.read(bytes) != length) {
@@ -2508,10 +2696,12 @@ public class ExifInterface {
         }
         dataOutputStream.writeByte(MARKER_SOI);
 
-        // Write EXIF APP1 segment
+        // Write EXIF APP1 segment. Its EXIF data area follows the SOI and APP1 markers, the segment
+        // length and the identifier.
         dataOutputStream.writeByte(MARKER);
         dataOutputStream.writeByte(MARKER_APP1);
-        writeExifSegment(dataOutputStream, 6);
+        mExifOffset = 6 + IDENTIFIER_EXIF_APP1.length;
+        mExifLength = writeExifSegment(dataOutputStream, mExifOffset) - 8;
 
         byte[] bytes = new byte[4096];
 
@@ -2560,8 +2750,15 @@ public class ExifInterface {
                 case MARKER_SOS: {
                     dataOutputStream.writeByte(MARKER);
                     dataOutputStream.writeByte(marker);
-                    // Copy all the remaining data
-                    copy(dataInputStream, dataOutputStream);
+                    // Copy all the remaining data. Neither stream is buffered, so the positions of
+                    // the file channels match what was read and written so far.
+                    if (inputStream instanceof FileInputStream
+                            && outputStream instanceof FileOutputStream) {
+                        transfer(((FileInputStream) inputStream).getChannel(),
+                                ((FileOutputStream) outputStream).getChannel());
+                    } else {
+                        copy(dataInputStream, dataOutputStream);
+                    }
                     return;
                 }
                 default: {
@@ -2595,31 +2792,127 @@ public class ExifInterface {
         parseTiffHeaders(dataInputStream, exifBytes.length);
 
         // Read TIFF image file directories. See JEITA CP-3451C Section 4.5.2. Figure 6.
-        readImageFileDirectory(dataInputStream, imageType);
+        if (mRequestedTags != null && mMimeType == IMAGE_TYPE_JPEG
+                && imageType == IFD_TYPE_PRIMARY && mExifBytes == null) {
+            // Keep the EXIF data area to read the other tags on demand.
+            mExifBytes = exifBytes;
+            readImageFileDirectory(dataInputStream, imageType, IFD_READ_REQUESTED);
+        } else {
+            readImageFileDirectory(dataInputStream, imageType, IFD_READ_ALL);
+        }
+    }
+
+    private static Set<String> getRequestedTags(Set<String> tags) {
+        if (tags == null) {
+            return null;
+        }
+        HashSet<String> requestedTags = new HashSet<>(tags);
+        if (requestedTags.contains(TAG_DATETIME)) {
+            // The value of DATETIME tag is replaced by the value of DATETIME_ORIGINAL tag.
+            requestedTags.add(TAG_DATETIME_ORIGINAL);
+        }
+        // These tags change the detected image format.
+        requestedTags.add(TAG_DNG_VERSION);
+        requestedTags.add(TAG_MAKE);
+        requestedTags.add(TAG_MODEL);
+        requestedTags.add(TAG_COMPRESSION);
+        return requestedTags;
+    }
+
+    // Returns whether the given IFD, or an IFD it points to, contains any requested tag.
+    private boolean isIfdRequested(@IfdType int ifdType) {
+        if (ifdType == IFD_TYPE_EXIF && isIfdRequested(IFD_TYPE_INTEROPERABILITY)) {
+            return true;
+        }
+        for (String tag : mRequestedTags) {
+            if (sExifTagMapsForWriting[ifdType].containsKey(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the deferred IFDs which may contain the specified tag.
+     *
+     * @param tag the name of the tag.
+     */
+    private void loadPendingIfds(String tag) {
+        if (mExifBytes == null) {
+            return;
+        }
+        // The Interoperability IFD is only found by reading the EXIF IFD which points to it.
+        if (mPendingIfds[IFD_TYPE_EXIF]
+                && sExifTagMapsForWriting[IFD_TYPE_INTEROPERABILITY].containsKey(tag)) {
+            loadPendingIfd(IFD_TYPE_EXIF);
+        }
+        for (int i = 0; i < EXIF_TAGS.length; ++i) {
+            // The value of DATETIME tag comes from DATETIME_ORIGINAL tag if there is one.
+            if (mPendingIfds[i] && (sExifTagMapsForWriting[i].containsKey(tag)
+                    || (TAG_DATETIME.equals(tag)
+                            && sExifTagMapsForWriting[i].containsKey(TAG_DATETIME_ORIGINAL)))) {
+                loadPendingIfd(i);
+            }
+        }
+    }
+
+    // Reads all the deferred IFDs.
+    private void loadAllPendingIfds() {
+        synchronized (mPendingIfdsLock) {
+            for (int i = 0; i < EXIF_TAGS.length; ++i) {
+                if (mPendingIfds[i]) {
+                    loadPendingIfd(i);
+                }
+            }
+        }
+    }
+
+    private void loadPendingIfd(@IfdType int ifdType) {
+        mPendingIfds[ifdType] = false;
+        try {
+            ByteOrderedDataInputStream dataInputStream = new ByteOrderedDataInputStream(mExifBytes);
+            dataInputStream.setByteOrder(mExifByteOrder);
+            dataInputStream.seek(mIfdOffsets[ifdType]);
+            readImageFileDirectory(dataInputStream, ifdType, IFD_READ_PENDING);
+        } catch (IOException e) {
+            // The data area was already parsed once, so this only happens for a corrupted IFD.
+            Log.w(TAG, "Failed to read the skipped tags of IFD " + ifdType, e);
+        }
+
+        if (ifdType == IFD_TYPE_PRIMARY || ifdType == IFD_TYPE_EXIF) {
+            // Restore the value of DATETIME tag, see addDefaultValuesForCompatibility().
+            ExifAttribute dateTimeOriginal =
+                    (ExifAttribute) mAttributes[IFD_TYPE_EXIF].get(TAG_DATETIME_ORIGINAL);
+            if (dateTimeOriginal != null) {
+                mAttributes[IFD_TYPE_PRIMARY].put(TAG_DATETIME, ExifAttribute.createString(
+                        dateTimeOriginal.getStringValue(mExifByteOrder)));
+            }
+        }
     }
 
     private void addDefaultValuesForCompatibility() {
-        // The value of DATETIME tag has the same value of DATETIME_ORIGINAL tag.
-        String valueOfDateTimeOriginal = getAttribute(TAG_DATETIME_ORIGINAL);
-        if (valueOfDateTimeOriginal != null) {
+        // The value of DATETIME tag has the same value of DATETIME_ORIGINAL tag. Skipped tags are
+        // not read here: they replace the default values when they are read.
+        ExifAttribute dateTimeOriginal = getLoadedExifAttribute(TAG_DATETIME_ORIGINAL);
+        if (dateTimeOriginal != null) {
             mAttributes[IFD_TYPE_PRIMARY].put(TAG_DATETIME,
-                    ExifAttribute.createString(valueOfDateTimeOriginal));
+                    ExifAttribute.createString(dateTimeOriginal.getStringValue(mExifByteOrder)));
         }
 
         // Add the default value.
-        if (getAttribute(TAG_IMAGE_WIDTH) == null) {
+        if (getLoadedExifAttribute(TAG_IMAGE_WIDTH) == null) {
             mAttributes[IFD_TYPE_PRIMARY].put(TAG_IMAGE_WIDTH,
                     ExifAttribute.createULong(0, mExifByteOrder));
         }
-        if (getAttribute(TAG_IMAGE_LENGTH) == null) {
+        if (getLoadedExifAttribute(TAG_IMAGE_LENGTH) == null) {
             mAttributes[IFD_TYPE_PRIMARY].put(TAG_IMAGE_LENGTH,
                     ExifAttribute.createULong(0, mExifByteOrder));
         }
-        if (getAttribute(TAG_ORIENTATION) == null) {
+        if (getLoadedExifAttribute(TAG_ORIENTATION) == null) {
             mAttributes[IFD_TYPE_PRIMARY].put(TAG_ORIENTATION,
                     ExifAttribute.createULong(0, mExifByteOrder));
         }
-        if (getAttribute(TAG_LIGHT_SOURCE) == null) {
+        if (getLoadedExifAttribute(TAG_LIGHT_SOURCE) == null) {
             mAttributes[IFD_TYPE_EXIF].put(TAG_LIGHT_SOURCE,
                     ExifAttribute.createULong(0, mExifByteOrder));
         }
@@ -2674,10 +2967,16 @@ public class ExifInterface {
     // Reads image file directory, which is a tag group in EXIF.
     private void readImageFileDirectory(ByteOrderedDataInputStream dataInputStream,
             @IfdType int ifdType) throws IOException {
+        readImageFileDirectory(dataInputStream, ifdType, IFD_READ_ALL);
+    }
+
+    private void readImageFileDirectory(ByteOrderedDataInputStream dataInputStream,
+            @IfdType int ifdType, int readMode) throws IOException {
         if (dataInputStream.mPosition + 2 > dataInputStream.mLength) {
             // Return if there is no data from the offset.
             return;
         }
+        mIfdOffsets[ifdType] = dataInputStream.mPosition;
         // See TIFF 6.0 Section 2: TIFF Structure, Figure 1.
         short numberOfDirectoryEntry = dataInputStream.readShort();
         if (dataInputStream.mPosition + 12 * numberOfDirectoryEntry > dataInputStream.mLength) {
@@ -2725,6 +3024,14 @@ public class ExifInterface {
                 dataInputStream.seek(nextEntryOffset);
                 continue;
             }
+            // The thumbnail IFD is always read entirely since it locates the thumbnail.
+            if (readMode == IFD_READ_REQUESTED && ifdType != IFD_TYPE_THUMBNAIL
+                    && !mRequestedTags.contains(tag.name)
+                    && sExifPointerTagMap.get(tagNumber) == null) {
+                mPendingIfds[ifdType] = true;
+                dataInputStream.seek(nextEntryOffset);
+                continue;
+            }
 
             // Read a value from data field or seek to the value offset which is stored in data
             // field if the size of the entry value is bigger than 4.
@@ -2807,8 +3114,15 @@ public class ExifInterface {
                     Log.d(TAG, String.format("Offset: %d, tagName: %s", offset, tag.name));
                 }
                 if (offset > 0L && offset < dataInputStream.mLength) {
-                    dataInputStream.seek(offset);
-                    readImageFileDirectory(dataInputStream, (int) nextIfdType);
+                    if (readMode == IFD_READ_ALL || (readMode == IFD_READ_REQUESTED
+                            && isIfdRequested((int) nextIfdType))) {
+                        dataInputStream.seek(offset);
+                        readImageFileDirectory(dataInputStream, (int) nextIfdType, readMode);
+                    } else if (mIfdOffsets[(int) nextIfdType] == 0) {
+                        // Defer reading the IFD until one of its tags is accessed.
+                        mIfdOffsets[(int) nextIfdType] = (int) offset;
+                        mPendingIfds[(int) nextIfdType] = true;
+                    }
                 } else {
                     Log.w(TAG, "Skip jump into the IFD since its offset is invalid: " + offset);
                 }
@@ -2845,7 +3159,7 @@ public class ExifInterface {
             }
         }
 
-        if (dataInputStream.peek() + 4 <= dataInputStream.mLength) {
+        if (readMode != IFD_READ_PENDING && dataInputStream.peek() + 4 <= dataInputStream.mLength) {
             int nextIfdOffset = dataInputStream.readInt();
             if (DEBUG) {
                 Log.d(TAG, String.format("nextIfdOffset: %d", nextIfdOffset));
@@ -3676,6 +3990,64 @@ public class ExifInterface {
         }
     }
 
+    // An input stream reading a byte buffer, typically a mapped file. Skipping and resetting to the
+    // mark only move the position of the buffer, so seeking does not read any byte.
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, mBuffer.remaining());
+            mBuffer.get(buffer, offset, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long byteCount) {
+            if (byteCount <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(byteCount, mBuffer.remaining());
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            mBuffer.mark();
+        }
+
+        @Override
+        public void reset() {
+            mBuffer.reset();
+        }
+    }
+
     // An output stream to write EXIF data area, which can be written in either little or big endian
     // order.
     private static class ByteOrderedDataOutputStream extends FilterOutputStream {
@@ -3793,6 +4165,40 @@ public class ExifInterface {
         }
     }
 
+    /**
+     * Maps the rest of the given file to memory, so that the parsers can jump to any offset
+     * without reading the bytes in between. Returns the given stream if the file can not be
+     * mapped.
+     */
+    private static InputStream mapInputStream(FileInputStream in) {
+        try {
+            FileChannel channel = in.getChannel();
+            long position = channel.position();
+            long size = channel.size() - position;
+            if (size > 0 && size <= Integer.MAX_VALUE) {
+                return new ByteBufferInputStream(
+                        channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            }
+        } catch (IOException e) {
+            if (DEBUG) {
+                Log.d(TAG, "Failed to map the file, reading it as a stream", e);
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Copies the rest of {@code in} to {@code out}, letting the platform avoid copying the bytes
+     * through user space where it can.
+     */
+    private static void transfer(FileChannel in, FileChannel out) throws IOException {
+        long position = in.position();
+        long size = in.size();
+        while (position < size) {
+            position += in.transferTo(position, size - position, out);
+        }
+    }
+
     /**
      * Copies all of the bytes from {@code in} to {@code out}. Neither stream is closed.
      * Returns the total number of bytes transferred.
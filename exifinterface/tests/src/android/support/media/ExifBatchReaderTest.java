@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.media;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import android.os.Environment;
+import android.support.exifinterface.test.R;
+import android.support.test.filters.LargeTest;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Test {@link ExifBatchReader}. The benchmark results are logged under the {@value #TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifBatchReaderTest {
+    private static final String TAG = "ExifBatchReaderTest";
+
+    private static final int[] IMAGE_RESOURCES = new int[] {
+            R.raw.image_exif_byte_order_ii, R.raw.image_exif_byte_order_mm, R.raw.lg_g4_iso_800};
+    private static final String[] IMAGE_FILENAMES = new String[] {
+            "batch_exif_byte_order_ii.jpg", "batch_exif_byte_order_mm.jpg",
+            "batch_lg_g4_iso_800.dng"};
+    private static final int ALL_COLUMNS = ExifBatchReader.COLUMN_ORIENTATION
+            | ExifBatchReader.COLUMN_DATE_TIME | ExifBatchReader.COLUMN_LAT_LONG;
+    private static final int BENCHMARK_FILE_COUNT = 300;
+    private static final double DELTA = 1e-8;
+
+    private final List<String> mPaths = new ArrayList<>();
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < IMAGE_RESOURCES.length; ++i) {
+            File file = new File(Environment.getExternalStorageDirectory(), IMAGE_FILENAMES[i]);
+            InputStream in = getContext().getResources().openRawResource(IMAGE_RESOURCES[i]);
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            mPaths.add(file.getAbsolutePath());
+        }
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdown();
+        for (String path : mPaths) {
+            new File(path).delete();
+        }
+    }
+
+    @Test
+    @MediumTest
+    public void testReadMatchesExifInterface() throws Exception {
+        List<String> paths = new ArrayList<>(mPaths);
+        paths.add(new File(Environment.getExternalStorageDirectory(), "missing.jpg")
+                .getAbsolutePath());
+        ExifBatchReader.Result result =
+                new ExifBatchReader(mExecutor, 2, ALL_COLUMNS).read(paths);
+
+        assertEquals(paths.size(), result.size());
+        for (int i = 0; i < mPaths.size(); i++) {
+            assertTrue(result.isRead(i));
+            assertResult(new ExifInterface(mPaths.get(i)), result, i);
+        }
+        assertFalse(result.isRead(mPaths.size()));
+    }
+
+    @Test
+    @MediumTest
+    public void testReadFileDescriptors() throws Exception {
+        List<FileInputStream> streams = new ArrayList<>();
+        try {
+            List<FileDescriptor> fileDescriptors = new ArrayList<>();
+            for (String path : mPaths) {
+                FileInputStream in = new FileInputStream(path);
+                streams.add(in);
+                fileDescriptors.add(in.getFD());
+            }
+            ExifBatchReader.Result result = new ExifBatchReader(mExecutor, 2, ALL_COLUMNS)
+                    .readFileDescriptors(fileDescriptors);
+
+            for (int i = 0; i < mPaths.size(); i++) {
+                assertResult(new ExifInterface(mPaths.get(i)), result, i);
+                // The offsets of the descriptors are left unchanged.
+                assertEquals(0, streams.get(i).getChannel().position());
+            }
+        } finally {
+            for (FileInputStream in : streams) {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    @LargeTest
+    public void testBenchmark() throws Exception {
+        List<String> corpus = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_FILE_COUNT; i++) {
+            corpus.add(mPaths.get(i % mPaths.size()));
+        }
+
+        // Warm up both paths once.
+        readOneByOne(corpus);
+        ExifBatchReader reader = new ExifBatchReader(mExecutor, 4, ALL_COLUMNS);
+        reader.read(corpus);
+
+        long start = System.nanoTime();
+        readOneByOne(corpus);
+        long oneByOneNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ExifBatchReader.Result result = reader.read(corpus);
+        long batchNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("%d files: ExifInterface %.1f ms, ExifBatchReader %.1f ms",
+                corpus.size(), oneByOneNanos / 1e6, batchNanos / 1e6));
+        for (int i = 0; i < corpus.size(); i++) {
+            assertTrue(result.isRead(i));
+        }
+    }
+
+    private static void readOneByOne(List<String> paths) throws IOException {
+        for (String path : paths) {
+            ExifInterface exifInterface = new ExifInterface(path);
+            exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
+            exifInterface.getDateTime();
+            exifInterface.getLatLong();
+        }
+    }
+
+    private static void assertResult(ExifInterface expected, ExifBatchReader.Result result,
+            int index) {
+        assertEquals(expected.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.ORIENTATION_UNDEFINED), result.getOrientation(index));
+        assertEquals(expected.getDateTime(), result.getDateTime(index));
+        double[] latLong = expected.getLatLong();
+        if (latLong != null) {
+            assertEquals(latLong[0], result.getLatitude(index), DELTA);
+            assertEquals(latLong[1], result.getLongitude(index), DELTA);
+        } else {
+            assertTrue(Double.isNaN(result.getLatitude(index)));
+            assertTrue(Double.isNaN(result.getLongitude(index)));
+        }
+    }
+}
@@ -19,8 +19,10 @@ package android.support.media;
 import static android.support.test.InstrumentationRegistry.getContext;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 import android.content.res.TypedArray;
@@ -46,6 +48,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 /**
  * Test {@link ExifInterface}.
@@ -235,6 +240,149 @@ public class ExifInterfaceTest {
         testExifInterfaceForRaw(LG_G4_ISO_800_DNG, R.array.lg_g4_iso_800_dng);
     }
 
+    @Test
+    @LargeTest
+    public void testReadRequestedTags() throws Throwable {
+        final String[] tags = {
+                ExifInterface.TAG_ORIENTATION, ExifInterface.TAG_DATETIME,
+                ExifInterface.TAG_GPS_LATITUDE, ExifInterface.TAG_GPS_LONGITUDE,
+                ExifInterface.TAG_MAKE, ExifInterface.TAG_ISO_SPEED_RATINGS,
+                ExifInterface.TAG_FLASH, ExifInterface.TAG_WHITE_BALANCE,
+                ExifInterface.TAG_IMAGE_WIDTH, ExifInterface.TAG_LIGHT_SOURCE};
+        for (String fileName : new String[] {EXIF_BYTE_ORDER_II_JPEG, EXIF_BYTE_ORDER_MM_JPEG}) {
+            String path = new File(Environment.getExternalStorageDirectory(), fileName)
+                    .getAbsolutePath();
+            ExifInterface expected = new ExifInterface(path);
+
+            // The tags which were not requested are read on demand.
+            ExifInterface exifInterface = new ExifInterface(path, new HashSet<>(Arrays.asList(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.TAG_DATETIME,
+                    ExifInterface.TAG_GPS_LATITUDE, ExifInterface.TAG_GPS_LONGITUDE)));
+            for (String tag : tags) {
+                assertEquals(expected.getAttribute(tag), exifInterface.getAttribute(tag));
+            }
+            assertEquals(expected.hasThumbnail(), exifInterface.hasThumbnail());
+
+            exifInterface = new ExifInterface(path, Collections.<String>emptySet());
+            for (String tag : tags) {
+                assertEquals(expected.getAttribute(tag), exifInterface.getAttribute(tag));
+            }
+        }
+    }
+
+    @Test
+    @LargeTest
+    public void testReadInteroperabilityTagWithSkippedExifIfd() throws Throwable {
+        for (String fileName : new String[] {EXIF_BYTE_ORDER_II_JPEG, EXIF_BYTE_ORDER_MM_JPEG}) {
+            String path = new File(Environment.getExternalStorageDirectory(), fileName)
+                    .getAbsolutePath();
+            String expected = new ExifInterface(path)
+                    .getAttribute(ExifInterface.TAG_INTEROPERABILITY_INDEX);
+            assertNotNull(expected);
+
+            // The Interoperability IFD is only found through the skipped EXIF IFD.
+            ExifInterface exifInterface = new ExifInterface(path,
+                    Collections.singleton(ExifInterface.TAG_ORIENTATION));
+            assertEquals(expected,
+                    exifInterface.getAttribute(ExifInterface.TAG_INTEROPERABILITY_INDEX));
+        }
+    }
+
+    @Test
+    @LargeTest
+    public void testReadSkippedTagsConcurrently() throws Throwable {
+        final String[] tags = {
+                ExifInterface.TAG_DATETIME, ExifInterface.TAG_MAKE, ExifInterface.TAG_MODEL,
+                ExifInterface.TAG_ISO_SPEED_RATINGS, ExifInterface.TAG_FLASH,
+                ExifInterface.TAG_WHITE_BALANCE, ExifInterface.TAG_GPS_LATITUDE,
+                ExifInterface.TAG_GPS_LONGITUDE, ExifInterface.TAG_IMAGE_WIDTH};
+        String path = new File(Environment.getExternalStorageDirectory(), EXIF_BYTE_ORDER_II_JPEG)
+                .getAbsolutePath();
+        final ExifInterface expected = new ExifInterface(path);
+
+        for (int run = 0; run < 20; run++) {
+            // Each thread triggers the deferred reads of a different IFD first
+            final ExifInterface exifInterface =
+                    new ExifInterface(path, Collections.<String>emptySet());
+            final Throwable[] failure = new Throwable[1];
+            final Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t * 2;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < tags.length; i++) {
+                                String tag = tags[(offset + i) % tags.length];
+                                assertEquals(tag, expected.getAttribute(tag),
+                                        exifInterface.getAttribute(tag));
+                            }
+                        } catch (Throwable e) {
+                            synchronized (failure) {
+                                failure[0] = e;
+                            }
+                        }
+                    }
+                };
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            synchronized (failure) {
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+        }
+    }
+
+    @Test
+    @LargeTest
+    public void testSaveAttributesWithRequestedTags() throws Throwable {
+        String path = new File(Environment.getExternalStorageDirectory(), EXIF_BYTE_ORDER_II_JPEG)
+                .getAbsolutePath();
+        ExifInterface expected = new ExifInterface(path);
+        assertFalse("abc".equals(expected.getAttribute(ExifInterface.TAG_MAKE)));
+
+        // The skipped tags are written back along with the modified one.
+        ExifInterface exifInterface = new ExifInterface(path,
+                Collections.singleton(ExifInterface.TAG_ORIENTATION));
+        exifInterface.setAttribute(ExifInterface.TAG_MAKE, "abc");
+        exifInterface.saveAttributes();
+        exifInterface = new ExifInterface(path);
+        assertEquals("abc", exifInterface.getAttribute(ExifInterface.TAG_MAKE));
+        assertEquals(expected.getAttribute(ExifInterface.TAG_DATETIME),
+                exifInterface.getAttribute(ExifInterface.TAG_DATETIME));
+        assertEquals(expected.getAttribute(ExifInterface.TAG_GPS_LATITUDE),
+                exifInterface.getAttribute(ExifInterface.TAG_GPS_LATITUDE));
+    }
+
+    @Test
+    @LargeTest
+    public void testSaveAttributesInPlace() throws Throwable {
+        File imageFile = new File(Environment.getExternalStorageDirectory(),
+                EXIF_BYTE_ORDER_MM_JPEG);
+        ExifInterface exifInterface = new ExifInterface(imageFile.getAbsolutePath());
+        byte[] thumbnail = exifInterface.getThumbnail();
+        // The first save may need more space for the default values added by ExifInterface.
+        exifInterface.saveAttributes();
+        long length = imageFile.length();
+
+        // A new value which fits in the current segment does not move the image data.
+        exifInterface.setAttribute(ExifInterface.TAG_ORIENTATION,
+                Integer.toString(ExifInterface.ORIENTATION_ROTATE_90));
+        exifInterface.saveAttributes();
+        assertEquals(length, imageFile.length());
+
+        exifInterface = new ExifInterface(imageFile.getAbsolutePath());
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90,
+                exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0));
+        assertTrue(Arrays.equals(thumbnail, exifInterface.getThumbnail()));
+    }
+
     @Test
     @SmallTest
     public void testDoNotFailOnCorruptedImage() throws Throwable {
@@ -433,6 +581,16 @@ public class ExifInterfaceTest {
         } finally {
             closeQuietly(in);
         }
+
+        FileInputStream fileInputStream = null;
+        // Creates via FileDescriptor.
+        try {
+            fileInputStream = new FileInputStream(imageFile.getAbsolutePath());
+            exifInterface = new ExifInterface(fileInputStream.getFD());
+            compareWithExpectedValue(exifInterface, expectedValue, verboseTag);
+        } finally {
+            closeQuietly(fileInputStream);
+        }
     }
 
     private void testSaveAttributes_withFileName(String fileName, ExpectedValue expectedValue)
@@ -15,7 +15,6 @@
 package android.support.graphics.drawable;
 
 import android.animation.Animator;
-import android.animation.AnimatorInflater;
 import android.animation.AnimatorSet;
 import android.animation.ArgbEvaluator;
 import android.animation.ObjectAnimator;
@@ -47,6 +46,7 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -93,7 +93,10 @@ import java.util.List;
  *         <td>translateY</td>
  *     </tr>
  *     <tr>
- *         <td rowspan="8">&lt;path&gt;</td>
+ *         <td rowspan="9">&lt;path&gt;</td>
+ *         <td>pathData</td>
+ *     </tr>
+ *     <tr>
  *         <td>fillColor</td>
  *     </tr>
  *     <tr>
@@ -114,6 +117,10 @@ import java.util.List;
  *     <tr>
  *         <td>trimPathOffset</td>
  *     </tr>
+ *     <tr>
+ *         <td>&lt;clip-path&gt;</td>
+ *         <td>pathData</td>
+ *     </tr>
  * </table>
  * <p/>
  * You can always create a AnimatedVectorDrawableCompat object and use it as a Drawable by the Java
@@ -124,12 +131,20 @@ import java.util.List;
  * the SDK version the app will be running on. Before SDK version 21, the animation system didn't
  * support the following features:
  * <ul>
- * <li>Path Morphing (PathType evaluator). This is used for morphing one path into another.</li>
  * <li>Path Interpolation. This is used to defined a flexible interpolator (represented as a path)
  * instead of the system defined ones like LinearInterpolator.</li>
  * <li>Animating 2 values in one ObjectAnimator according to one path's X value and Y value. One
  * usage is moving one object in both X and Y dimensions along an path.</li>
  * </ul>
+ * <p/>
+ * Path Morphing (PathType evaluator) is supported on every SDK version, as the animators which
+ * morph one path into another are inflated by this library. The paths must be compatible, that
+ * is they must have the same commands with the same number of parameters. The animator resources
+ * which morph paths can use sets and property values holders, but not keyframes or motion paths.
+ * <p/>
+ * When many identical animated drawables are shown at the same time, for example the loading
+ * indicators of a grid, they can be created from {@link #getSharedTimelineConstantState()} so that
+ * one set of animators drives all of them.
  */
 @SuppressLint("NewApi")
 public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implements Animatable {
@@ -148,6 +163,8 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
 
     AnimatedVectorDrawableDelegateState mCachedConstantStateDelegate;
 
+    private boolean mMutated;
+
     AnimatedVectorDrawableCompat() {
         this(null, null, null);
     }
@@ -176,9 +193,16 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
     public Drawable mutate() {
         if (mDelegateDrawable != null) {
             mDelegateDrawable.mutate();
+            return this;
+        }
+        // For older platforms that there is no delegated drawable, only the drawables sharing
+        // their animators have a constant state. Leave the shared timeline with a copy of them.
+        if (!mMutated && mAnimatedVectorState.mSharedTimeline) {
+            removeSharedDrawable(this);
+            mAnimatedVectorState = new AnimatedVectorDrawableCompatState(mContext,
+                    mAnimatedVectorState, mCallback, null);
+            mMutated = true;
         }
-        // For older platforms that there is no delegated drawable, we just return this without
-        // any modification here, and the getConstantState() will return null in this case.
         return this;
     }
 
@@ -240,7 +264,8 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
 
     /**
      * {@inheritDoc}
-     * <strong>Note</strong> that we don't support constant state when SDK < 24.
+     * <strong>Note</strong> that we don't support constant state when SDK < 24, unless
+     * {@link #getSharedTimelineConstantState()} was called.
      * Make sure you check the return value before using it.
      */
     @Override
@@ -248,12 +273,91 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
         if (mDelegateDrawable != null) {
             return new AnimatedVectorDrawableDelegateState(mDelegateDrawable.getConstantState());
         }
+        if (mAnimatedVectorState.mSharedTimeline) {
+            return mAnimatedVectorState;
+        }
         // We can't support constant state in older platform.
         // We need Context to create the animator, and we can't save the context in the constant
         // state.
         return null;
     }
 
+    /**
+     * Returns a constant state whose drawables are all driven by the animators of this drawable,
+     * instead of inflating their own ones. Starting or stopping any of them starts or stops all
+     * of them, and the animated values are computed once per frame for all of them.
+     * <p/>
+     * The drawables also share the vector drawable they animate, like the drawables of other
+     * constant states share their state until they are mutated: each one keeps its own bounds,
+     * color filter and rendered bitmap, so they can be drawn at different sizes, but their alpha
+     * and tint are shared. {@link #mutate()} gives a drawable
+     * its own copy of the animators and of the vector drawable.
+     * <p/>
+     * For SDK 24 and above, this is the same as {@link #getConstantState()}, as the animators
+     * are then created by the framework for each drawable.
+     */
+    @NonNull
+    public ConstantState getSharedTimelineConstantState() {
+        if (mDelegateDrawable != null) {
+            return getConstantState();
+        }
+        if (!mAnimatedVectorState.mSharedTimeline) {
+            mAnimatedVectorState.mSharedTimeline = true;
+            mAnimatedVectorState.mSharedDrawables =
+                    new ArrayList<WeakReference<AnimatedVectorDrawableCompat>>();
+            addSharedDrawable(this);
+        }
+        return mAnimatedVectorState;
+    }
+
+    private void addSharedDrawable(AnimatedVectorDrawableCompat drawable) {
+        final ArrayList<WeakReference<AnimatedVectorDrawableCompat>> drawables =
+                mAnimatedVectorState.mSharedDrawables;
+        synchronized (drawables) {
+            removeSharedDrawable(null);
+            drawables.add(new WeakReference<AnimatedVectorDrawableCompat>(drawable));
+        }
+    }
+
+    /**
+     * Removes the given drawable, and the collected ones, from the drawables sharing the
+     * animators of this one.
+     */
+    private void removeSharedDrawable(AnimatedVectorDrawableCompat drawable) {
+        final ArrayList<WeakReference<AnimatedVectorDrawableCompat>> drawables =
+                mAnimatedVectorState.mSharedDrawables;
+        synchronized (drawables) {
+            for (int i = drawables.size() - 1; i >= 0; i--) {
+                final AnimatedVectorDrawableCompat d = drawables.get(i).get();
+                if (d == null || d == drawable) {
+                    drawables.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates the other drawables sharing the animators of this one, which would not be
+     * redrawn otherwise when the animators start or end.
+     */
+    private void invalidateSharedDrawables() {
+        final ArrayList<WeakReference<AnimatedVectorDrawableCompat>> drawables =
+                mAnimatedVectorState.mSharedDrawables;
+        if (drawables == null) {
+            return;
+        }
+        synchronized (drawables) {
+            for (int i = drawables.size() - 1; i >= 0; i--) {
+                final AnimatedVectorDrawableCompat drawable = drawables.get(i).get();
+                if (drawable == null) {
+                    drawables.remove(i);
+                } else if (drawable != this) {
+                    drawable.invalidateSelf();
+                }
+            }
+        }
+    }
+
     @Override
     public int getChangingConfigurations() {
         if (mDelegateDrawable != null) {
@@ -463,7 +567,8 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
                             AndroidResources.styleable_AnimatedVectorDrawableTarget_animation, 0);
                     if (id != 0) {
                         if (mContext != null) {
-                            Animator objectAnimator = AnimatorInflater.loadAnimator(mContext, id);
+                            Animator objectAnimator =
+                                    AnimatorInflaterCompat.loadAnimator(mContext, id);
                             setupAnimatorsForTarget(target, objectAnimator);
                         } else {
                             a.recycle();
@@ -559,6 +664,9 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
         VectorDrawableCompat mVectorDrawable;
         ArrayList<Animator> mAnimators;
         ArrayMap<Animator, String> mTargetNameMap;
+        // Whether the drawables of this state share its animators, and these drawables.
+        boolean mSharedTimeline;
+        ArrayList<WeakReference<AnimatedVectorDrawableCompat>> mSharedDrawables;
 
         public AnimatedVectorDrawableCompatState(Context context,
                 AnimatedVectorDrawableCompatState copy, Callback owner, Resources res) {
@@ -593,14 +701,46 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
             }
         }
 
+        /**
+         * Creates the state of a new drawable driven by the animators of {@code shared}. Its
+         * vector drawable shares the animated state of the shared one, but not its bounds and
+         * callback.
+         */
+        AnimatedVectorDrawableCompatState(AnimatedVectorDrawableCompatState shared,
+                Resources res) {
+            mChangingConfigurations = shared.mChangingConfigurations;
+            if (shared.mVectorDrawable != null) {
+                final ConstantState cs = shared.mVectorDrawable.getConstantState();
+                if (res != null) {
+                    mVectorDrawable = (VectorDrawableCompat) cs.newDrawable(res);
+                } else {
+                    mVectorDrawable = (VectorDrawableCompat) cs.newDrawable();
+                }
+                mVectorDrawable.setAllowCaching(false);
+            }
+            mAnimators = shared.mAnimators;
+            mTargetNameMap = shared.mTargetNameMap;
+            mSharedTimeline = true;
+            mSharedDrawables = shared.mSharedDrawables;
+        }
+
         @Override
         public Drawable newDrawable() {
-            throw new IllegalStateException("No constant state support for SDK < 24.");
+            return newDrawable(null);
         }
 
         @Override
         public Drawable newDrawable(Resources res) {
-            throw new IllegalStateException("No constant state support for SDK < 24.");
+            if (!mSharedTimeline) {
+                throw new IllegalStateException("No constant state support for SDK < 24.");
+            }
+            final AnimatedVectorDrawableCompat drawable = new AnimatedVectorDrawableCompat(null,
+                    new AnimatedVectorDrawableCompatState(this, res), res);
+            if (drawable.mAnimatedVectorState.mVectorDrawable != null) {
+                drawable.mAnimatedVectorState.mVectorDrawable.setCallback(drawable.mCallback);
+            }
+            drawable.addSharedDrawable(drawable);
+            return drawable;
         }
 
         @Override
@@ -701,6 +841,7 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
             animator.start();
         }
         invalidateSelf();
+        invalidateSharedDrawables();
     }
 
     @Override
@@ -715,6 +856,7 @@ public class AnimatedVectorDrawableCompat extends VectorDrawableCommon implement
             final Animator animator = animators.get(i);
             animator.end();
         }
+        invalidateSharedDrawables();
     }
 
     final Callback mCallback = new Callback() {
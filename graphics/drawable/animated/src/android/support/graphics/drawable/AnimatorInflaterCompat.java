@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import android.animation.Animator;
+import android.animation.AnimatorInflater;
+import android.animation.AnimatorSet;
+import android.animation.ArgbEvaluator;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.Resources.Theme;
+import android.content.res.Resources.NotFoundException;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.util.Xml;
+import android.view.InflateException;
+import android.view.animation.AnimationUtils;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Inflates the animators of {@link AnimatedVectorDrawableCompat}.
+ * <p>
+ * The framework's {@link AnimatorInflater} cannot inflate the path morphing animators, the ones
+ * with {@code android:valueType="pathType"}, into animators of {@link VectorDrawableCompat}: it
+ * does not know this value type before SDK 21, and creates the nodes of the framework's path
+ * parser after. These animators are inflated here instead, with a {@link PathDataEvaluator}.
+ * <p>
+ * This inflater supports {@code <set>}, {@code <objectAnimator>}, {@code <animator>} and
+ * {@code <propertyValuesHolder>}, with the values resolved against the context's theme. The
+ * resources using anything else, such as keyframes or motion paths, are inflated by the
+ * framework, as are the ones without path morphing.
+ */
+final class AnimatorInflaterCompat {
+
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+    // Values of android:valueType.
+    private static final int VALUE_TYPE_FLOAT = 0;
+    private static final int VALUE_TYPE_INT = 1;
+    private static final int VALUE_TYPE_PATH = 2;
+    private static final int VALUE_TYPE_COLOR = 3;
+
+    // Values of android:ordering.
+    private static final int TOGETHER = 0;
+
+    private static final int DEFAULT_DURATION = 300;
+
+    private AnimatorInflaterCompat() {
+    }
+
+    /**
+     * Loads an {@link Animator} object from a resource.
+     *
+     * @param context the context to inflate the animator with.
+     * @param id the resource id of the animation to load.
+     * @throws NotFoundException if the animation cannot be loaded.
+     */
+    static Animator loadAnimator(Context context, int id) throws NotFoundException {
+        if (!canInflate(context.getResources(), id)) {
+            return AnimatorInflater.loadAnimator(context, id);
+        }
+        XmlResourceParser parser = null;
+        try {
+            parser = context.getResources().getAnimation(id);
+            return createAnimatorFromXml(context, parser, Xml.asAttributeSet(parser), null,
+                    TOGETHER);
+        } catch (XmlPullParserException | IOException e) {
+            final NotFoundException rnf = new NotFoundException(
+                    "Can't load animation resource ID #0x" + Integer.toHexString(id));
+            rnf.initCause(e);
+            throw rnf;
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the resource morphs paths, and only uses the tags and attributes supported
+     * by this inflater.
+     */
+    private static boolean canInflate(Resources res, int id) throws NotFoundException {
+        XmlResourceParser parser = null;
+        try {
+            parser = res.getAnimation(id);
+            boolean hasPathMorph = false;
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final String name = parser.getName();
+                if (!"set".equals(name) && !"objectAnimator".equals(name)
+                        && !"animator".equals(name) && !"propertyValuesHolder".equals(name)) {
+                    return false;
+                }
+                // Motion along a path
+                if (parser.getAttributeValue(ANDROID_NAMESPACE, "pathData") != null
+                        || parser.getAttributeValue(ANDROID_NAMESPACE, "propertyXName") != null
+                        || parser.getAttributeValue(ANDROID_NAMESPACE, "propertyYName") != null) {
+                    return false;
+                }
+                if (parser.getAttributeIntValue(ANDROID_NAMESPACE, "valueType",
+                        VALUE_TYPE_FLOAT) == VALUE_TYPE_PATH) {
+                    hasPathMorph = true;
+                }
+            }
+            return hasPathMorph;
+        } catch (XmlPullParserException | IOException e) {
+            // Let the framework report the error.
+            return false;
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
+    private static Animator createAnimatorFromXml(Context context, XmlPullParser parser,
+            AttributeSet attrs, AnimatorSet parent, int sequenceOrdering)
+            throws XmlPullParserException, IOException {
+        final Resources res = context.getResources();
+        final Theme theme = context.getTheme();
+        Animator anim = null;
+        ArrayList<Animator> childAnims = null;
+        // The <propertyValuesHolder> children of anim, which replace its own values.
+        ArrayList<PropertyValuesHolder> holders = null;
+
+        // Make sure we are on a start tag.
+        int type;
+        final int depth = parser.getDepth();
+        while (((type = parser.next()) != XmlPullParser.END_TAG || parser.getDepth() > depth)
+                && type != XmlPullParser.END_DOCUMENT) {
+            if (type != XmlPullParser.START_TAG) {
+                continue;
+            }
+
+            final String name = parser.getName();
+            if ("propertyValuesHolder".equals(name)) {
+                if (!(anim instanceof ValueAnimator)) {
+                    throw new RuntimeException("propertyValuesHolder must be in an animator");
+                }
+                final PropertyValuesHolder holder = loadPropertyValuesHolder(res, theme, attrs);
+                if (holder != null) {
+                    if (holders == null) {
+                        holders = new ArrayList<PropertyValuesHolder>();
+                    }
+                    holders.add(holder);
+                }
+                continue;
+            }
+            setPropertyValuesHolders(anim, holders);
+            holders = null;
+
+            if ("objectAnimator".equals(name)) {
+                final ObjectAnimator objectAnimator = new ObjectAnimator();
+                final TypedArray a = VectorDrawableCommon.obtainAttributes(res, theme, attrs,
+                        AndroidResources.styleable_PropertyAnimator);
+                final String propertyName =
+                        a.getString(AndroidResources.styleable_PropertyAnimator_propertyName);
+                a.recycle();
+                if (propertyName != null) {
+                    objectAnimator.setPropertyName(propertyName);
+                }
+                anim = loadValueAnimator(context, attrs, objectAnimator,
+                        propertyName != null ? propertyName : "");
+            } else if ("animator".equals(name)) {
+                anim = loadValueAnimator(context, attrs, new ValueAnimator(), "");
+            } else if ("set".equals(name)) {
+                anim = new AnimatorSet();
+                final TypedArray a = VectorDrawableCommon.obtainAttributes(res, theme, attrs,
+                        AndroidResources.styleable_AnimatorSet);
+                final int ordering = a.getInt(AndroidResources.styleable_AnimatorSet_ordering,
+                        TOGETHER);
+                a.recycle();
+                createAnimatorFromXml(context, parser, attrs, (AnimatorSet) anim, ordering);
+            } else {
+                throw new RuntimeException("Unknown animator name: " + name);
+            }
+
+            if (parent != null) {
+                if (childAnims == null) {
+                    childAnims = new ArrayList<Animator>();
+                }
+                childAnims.add(anim);
+            }
+        }
+        setPropertyValuesHolders(anim, holders);
+        if (parent != null && childAnims != null) {
+            if (sequenceOrdering == TOGETHER) {
+                parent.playTogether(childAnims);
+            } else {
+                parent.playSequentially(childAnims);
+            }
+        }
+        return anim;
+    }
+
+    private static void setPropertyValuesHolders(Animator anim,
+            ArrayList<PropertyValuesHolder> holders) {
+        if (holders != null) {
+            ((ValueAnimator) anim).setValues(
+                    holders.toArray(new PropertyValuesHolder[holders.size()]));
+        }
+    }
+
+    private static ValueAnimator loadValueAnimator(Context context, AttributeSet attrs,
+            ValueAnimator anim, String propertyName) {
+        final TypedArray a = VectorDrawableCommon.obtainAttributes(context.getResources(),
+                context.getTheme(), attrs, AndroidResources.styleable_Animator);
+
+        anim.setDuration(a.getInt(AndroidResources.styleable_Animator_duration,
+                DEFAULT_DURATION));
+        anim.setStartDelay(a.getInt(AndroidResources.styleable_Animator_startOffset, 0));
+        anim.setRepeatCount(a.getInt(AndroidResources.styleable_Animator_repeatCount, 0));
+        anim.setRepeatMode(a.getInt(AndroidResources.styleable_Animator_repeatMode,
+                ValueAnimator.RESTART));
+        final int interpolatorId = a.getResourceId(
+                AndroidResources.styleable_Animator_interpolator, 0);
+        if (interpolatorId > 0) {
+            anim.setInterpolator(AnimationUtils.loadInterpolator(context, interpolatorId));
+        }
+
+        final PropertyValuesHolder holder = getPropertyValuesHolder(a, propertyName,
+                a.getInt(AndroidResources.styleable_Animator_valueType, VALUE_TYPE_FLOAT),
+                AndroidResources.styleable_Animator_valueFrom,
+                AndroidResources.styleable_Animator_valueTo);
+        if (holder != null) {
+            anim.setValues(holder);
+        }
+        a.recycle();
+        return anim;
+    }
+
+    private static PropertyValuesHolder loadPropertyValuesHolder(Resources res, Theme theme,
+            AttributeSet attrs) {
+        final TypedArray a = VectorDrawableCommon.obtainAttributes(res, theme, attrs,
+                AndroidResources.styleable_PropertyValuesHolder);
+        final String propertyName =
+                a.getString(AndroidResources.styleable_PropertyValuesHolder_propertyName);
+        if (propertyName == null) {
+            a.recycle();
+            throw new InflateException("propertyValuesHolder needs a propertyName");
+        }
+        final PropertyValuesHolder holder = getPropertyValuesHolder(a, propertyName,
+                a.getInt(AndroidResources.styleable_PropertyValuesHolder_valueType,
+                        VALUE_TYPE_FLOAT),
+                AndroidResources.styleable_PropertyValuesHolder_valueFrom,
+                AndroidResources.styleable_PropertyValuesHolder_valueTo);
+        a.recycle();
+        return holder;
+    }
+
+    /**
+     * Returns the values of {@code propertyName} read from the attributes at {@code fromIndex}
+     * and {@code toIndex}, or null if there are none.
+     */
+    private static PropertyValuesHolder getPropertyValuesHolder(TypedArray a,
+            String propertyName, int valueType, int fromIndex, int toIndex) {
+        if (valueType == VALUE_TYPE_PATH) {
+            return getPathValues(a, propertyName, fromIndex, toIndex);
+        }
+
+        final TypedValue tvFrom = a.peekValue(fromIndex);
+        final TypedValue tvTo = a.peekValue(toIndex);
+        final boolean hasFrom = tvFrom != null;
+        final boolean hasTo = tvTo != null;
+        if (!hasFrom && !hasTo) {
+            return null;
+        }
+        if ((hasFrom && isColorType(tvFrom.type)) || (hasTo && isColorType(tvTo.type))) {
+            valueType = VALUE_TYPE_COLOR;
+        }
+
+        if (valueType == VALUE_TYPE_FLOAT) {
+            if (hasFrom && hasTo) {
+                return PropertyValuesHolder.ofFloat(propertyName,
+                        getFloat(a, fromIndex, tvFrom), getFloat(a, toIndex, tvTo));
+            } else if (hasFrom) {
+                return PropertyValuesHolder.ofFloat(propertyName, getFloat(a, fromIndex, tvFrom));
+            }
+            return PropertyValuesHolder.ofFloat(propertyName, getFloat(a, toIndex, tvTo));
+        }
+
+        final PropertyValuesHolder holder;
+        if (hasFrom && hasTo) {
+            holder = PropertyValuesHolder.ofInt(propertyName,
+                    getInt(a, fromIndex, tvFrom), getInt(a, toIndex, tvTo));
+        } else if (hasFrom) {
+            holder = PropertyValuesHolder.ofInt(propertyName, getInt(a, fromIndex, tvFrom));
+        } else {
+            holder = PropertyValuesHolder.ofInt(propertyName, getInt(a, toIndex, tvTo));
+        }
+        if (valueType == VALUE_TYPE_COLOR) {
+            holder.setEvaluator(new ArgbEvaluator());
+        }
+        return holder;
+    }
+
+    private static PropertyValuesHolder getPathValues(TypedArray a, String propertyName,
+            int fromIndex, int toIndex) {
+        final String fromString = a.getString(fromIndex);
+        final String toString = a.getString(toIndex);
+        final PathParser.PathDataNode[] nodesFrom = fromString != null
+                ? VectorDrawableCompat.createNodesFromPathData(fromString) : null;
+        final PathParser.PathDataNode[] nodesTo = toString != null
+                ? VectorDrawableCompat.createNodesFromPathData(toString) : null;
+
+        if (nodesFrom != null && nodesTo != null) {
+            if (!PathParser.canMorph(nodesFrom, nodesTo)) {
+                throw new InflateException(" Can't morph from " + fromString + " to "
+                        + toString);
+            }
+            return PropertyValuesHolder.ofObject(propertyName, new PathDataEvaluator(),
+                    nodesFrom, nodesTo);
+        } else if (nodesFrom != null) {
+            return PropertyValuesHolder.ofObject(propertyName, new PathDataEvaluator(),
+                    (Object) nodesFrom);
+        } else if (nodesTo != null) {
+            return PropertyValuesHolder.ofObject(propertyName, new PathDataEvaluator(),
+                    (Object) nodesTo);
+        }
+        return null;
+    }
+
+    private static float getFloat(TypedArray a, int index, TypedValue value) {
+        return value.type == TypedValue.TYPE_DIMENSION
+                ? a.getDimension(index, 0f) : a.getFloat(index, 0f);
+    }
+
+    private static int getInt(TypedArray a, int index, TypedValue value) {
+        if (value.type == TypedValue.TYPE_DIMENSION) {
+            return (int) a.getDimension(index, 0f);
+        } else if (isColorType(value.type)) {
+            return a.getColor(index, 0);
+        }
+        return a.getInt(index, 0);
+    }
+
+    private static boolean isColorType(int type) {
+        return type >= TypedValue.TYPE_FIRST_COLOR_INT && type <= TypedValue.TYPE_LAST_COLOR_INT;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import android.animation.TypeEvaluator;
+
+/**
+ * Interpolates the path data of a path morphing animation without allocating on each frame.
+ * <p>
+ * The params of the start and end nodes are flattened once into two contiguous arrays, and each
+ * frame interpolates them into the same result nodes, which the animated path copies into its own
+ * nodes right away. The start and end nodes are therefore expected not to change while they are
+ * animated, and the result nodes are only valid until the next call.
+ */
+final class PathDataEvaluator implements TypeEvaluator<PathParser.PathDataNode[]> {
+
+    private PathParser.PathDataNode[] mStartNodes;
+    private PathParser.PathDataNode[] mEndNodes;
+    private float[] mStartParams;
+    private float[] mEndParams;
+    private PathParser.PathDataNode[] mResult;
+
+    @Override
+    public PathParser.PathDataNode[] evaluate(float fraction,
+            PathParser.PathDataNode[] startValue, PathParser.PathDataNode[] endValue) {
+        if (startValue != mStartNodes || endValue != mEndNodes) {
+            flatten(startValue, endValue);
+        }
+
+        final float[] startParams = mStartParams;
+        final float[] endParams = mEndParams;
+        final PathParser.PathDataNode[] result = mResult;
+        int offset = 0;
+        for (int i = 0; i < result.length; i++) {
+            final float[] params = result[i].params;
+            for (int j = 0; j < params.length; j++, offset++) {
+                params[j] = startParams[offset] * (1 - fraction) + endParams[offset] * fraction;
+            }
+        }
+        return result;
+    }
+
+    private void flatten(PathParser.PathDataNode[] startValue,
+            PathParser.PathDataNode[] endValue) {
+        if (!PathParser.canMorph(startValue, endValue)) {
+            throw new IllegalArgumentException("Can't interpolate between two incompatible"
+                    + " pathData");
+        }
+
+        int paramCount = 0;
+        for (int i = 0; i < startValue.length; i++) {
+            paramCount += startValue[i].params.length;
+        }
+        if (mStartParams == null || mStartParams.length != paramCount) {
+            mStartParams = new float[paramCount];
+            mEndParams = new float[paramCount];
+        }
+        int offset = 0;
+        for (int i = 0; i < startValue.length; i++) {
+            final int length = startValue[i].params.length;
+            System.arraycopy(startValue[i].params, 0, mStartParams, offset, length);
+            System.arraycopy(endValue[i].params, 0, mEndParams, offset, length);
+            offset += length;
+        }
+
+        if (!PathParser.canMorph(mResult, startValue)) {
+            mResult = PathParser.deepCopyNodes(startValue);
+        }
+        mStartNodes = startValue;
+        mEndNodes = endValue;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.animation.Animator;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.content.Context;
+import android.support.graphics.drawable.animated.test.R;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SdkSuppress;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.ContextThemeWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class AnimatorInflaterCompatTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getContext();
+    }
+
+    @Test
+    public void testPropertyValuesHolders() {
+        final ObjectAnimator animator = (ObjectAnimator) AnimatorInflaterCompat.loadAnimator(
+                mContext, R.anim.path_morph_holders);
+        final PropertyValuesHolder[] values = animator.getValues();
+        assertEquals(2, values.length);
+        assertEquals("pathData", values[0].getPropertyName());
+        assertEquals("fillAlpha", values[1].getPropertyName());
+
+        final MorphTarget target = new MorphTarget();
+        animator.setTarget(target);
+        setCurrentPlayTime(animator, 500);
+        assertNotNull(target.mPathData);
+        // Halfway through the linear morph, the second point goes from (8, 0) to (64, 0)
+        assertEquals(36f, target.mPathData[1].params[0], 0.01f);
+        assertEquals(0f, target.mPathData[1].params[1], 0.01f);
+        assertEquals(0.5f, target.mFillAlpha, 0.01f);
+    }
+
+    @Test
+    public void testValuesAreResolvedWithTheme() {
+        final Context context = new ContextThemeWrapper(mContext, R.style.MorphTheme);
+        final AnimatorSet set = (AnimatorSet) AnimatorInflaterCompat.loadAnimator(context,
+                R.anim.path_morph_themed);
+        final ObjectAnimator animator = (ObjectAnimator) set.getChildAnimations().get(0);
+        assertEquals(123, animator.getDuration());
+
+        final MorphTarget target = new MorphTarget();
+        animator.setTarget(target);
+        setCurrentPlayTime(animator, animator.getDuration());
+        assertNotNull(target.mPathData);
+        assertEquals(32f, target.mPathData[1].params[0], 0.01f);
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = 21)
+    public void testMotionPathIsInflatedByFramework() {
+        // Not supported by the compat inflater, so the whole resource goes to the framework
+        final AnimatorSet set = (AnimatorSet) AnimatorInflaterCompat.loadAnimator(mContext,
+                R.anim.path_morph_motion);
+        assertEquals(2, set.getChildAnimations().size());
+        final Animator motion = set.getChildAnimations().get(1);
+        assertTrue(motion instanceof ObjectAnimator);
+        final PropertyValuesHolder[] values = ((ObjectAnimator) motion).getValues();
+        assertEquals(2, values.length);
+        assertEquals("translateX", values[0].getPropertyName());
+        assertEquals("translateY", values[1].getPropertyName());
+    }
+
+    private static void setCurrentPlayTime(final ObjectAnimator animator, final long time) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                animator.setCurrentPlayTime(time);
+            }
+        });
+    }
+
+    /**
+     * Receives the animated values, as a path of a {@link VectorDrawableCompat} would.
+     */
+    public static class MorphTarget {
+        PathParser.PathDataNode[] mPathData;
+        float mFillAlpha;
+
+        public void setPathData(PathParser.PathDataNode[] nodes) {
+            mPathData = PathParser.deepCopyNodes(nodes);
+        }
+
+        public void setFillAlpha(float fillAlpha) {
+            mFillAlpha = fillAlpha;
+        }
+    }
+}
@@ -17,14 +17,19 @@
 package android.support.graphics.drawable.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable.ConstantState;
+import android.os.Build;
 import android.support.annotation.DrawableRes;
 import android.support.graphics.drawable.AnimatedVectorDrawableCompat;
 import android.support.graphics.drawable.animated.test.R;
@@ -48,6 +53,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -239,6 +245,126 @@ public class AnimatedVectorDrawableTest {
         });
     }
 
+    @Test
+    public void testPathMorphing() throws Throwable {
+        mActivityTestRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AnimatedVectorDrawableCompat avd = AnimatedVectorDrawableCompat.create(mContext,
+                        R.drawable.animated_path_morph);
+                avd.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+
+                // The square starts in the top left corner.
+                mBitmap.eraseColor(Color.TRANSPARENT);
+                avd.draw(mCanvas);
+                assertEquals(Color.RED, mBitmap.getPixel(1, 1));
+                assertEquals(Color.TRANSPARENT,
+                        mBitmap.getPixel(IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2));
+
+                // And ends up covering the whole drawable.
+                avd.start();
+                avd.stop();
+                mBitmap.eraseColor(Color.TRANSPARENT);
+                avd.draw(mCanvas);
+                assertEquals(Color.RED, mBitmap.getPixel(1, 1));
+                assertEquals(Color.RED, mBitmap.getPixel(IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2));
+            }
+        });
+    }
+
+    @Test
+    public void testSharedTimeline() throws Throwable {
+        mActivityTestRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AnimatedVectorDrawableCompat d1 =
+                        AnimatedVectorDrawableCompat.create(mContext, DRAWABLE_RES_ID);
+                ConstantState state = d1.getSharedTimelineConstantState();
+                assertNotNull(state);
+                if (Build.VERSION.SDK_INT >= 24) {
+                    // The framework creates the animators of each drawable.
+                    return;
+                }
+                assertNotNull(d1.getConstantState());
+                AnimatedVectorDrawableCompat d2 =
+                        (AnimatedVectorDrawableCompat) state.newDrawable();
+                AnimatedVectorDrawableCompat d3 =
+                        (AnimatedVectorDrawableCompat) state.newDrawable();
+                assertNotSame(d1, d2);
+                assertNotSame(d2, d3);
+
+                // The drawables are driven by the same animators.
+                d2.start();
+                assertTrue(d1.isRunning());
+                assertTrue(d3.isRunning());
+                d1.stop();
+                assertFalse(d2.isRunning());
+                assertFalse(d3.isRunning());
+
+                // Until they are mutated.
+                d3.mutate();
+                d1.start();
+                assertTrue(d2.isRunning());
+                assertFalse(d3.isRunning());
+                d1.stop();
+            }
+        });
+    }
+
+    @Test
+    public void testSharedTimelineDrawsAtDifferentSizes() throws Throwable {
+        if (Build.VERSION.SDK_INT >= 24) {
+            // The framework draws the drawables.
+            return;
+        }
+        mActivityTestRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                AnimatedVectorDrawableCompat d1 =
+                        AnimatedVectorDrawableCompat.create(mContext, DRAWABLE_RES_ID);
+                AnimatedVectorDrawableCompat d2 = (AnimatedVectorDrawableCompat)
+                        d1.getSharedTimelineConstantState().newDrawable();
+                d1.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+                d2.setBounds(0, 0, IMAGE_WIDTH / 2, IMAGE_HEIGHT / 2);
+
+                d1.draw(mCanvas);
+                final Bitmap expected = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+                final Bitmap bitmap1 = getRenderBitmap(d1);
+                d2.draw(new Canvas(Bitmap.createBitmap(IMAGE_WIDTH, IMAGE_HEIGHT,
+                        Bitmap.Config.ARGB_8888)));
+                final Bitmap bitmap2 = getRenderBitmap(d2);
+                mBitmap.eraseColor(Color.TRANSPARENT);
+                d1.draw(mCanvas);
+
+                // Each drawable keeps rendering into its own bitmap, of its own size.
+                assertNotSame(bitmap1, bitmap2);
+                assertSame(bitmap1, getRenderBitmap(d1));
+                assertEquals(IMAGE_WIDTH / 2, bitmap2.getWidth());
+                assertTrue(expected.sameAs(mBitmap));
+            }
+        });
+    }
+
+    private static Bitmap getRenderBitmap(AnimatedVectorDrawableCompat drawable) {
+        final Object state = getField(drawable, "mAnimatedVectorState");
+        return (Bitmap) getField(getField(state, "mVectorDrawable"), "mRenderBitmap");
+    }
+
+    private static Object getField(Object object, String name) {
+        for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(object);
+            } catch (NoSuchFieldException e) {
+                // Declared by a superclass.
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
     @Test
     public void testMutate() {
         AnimatedVectorDrawableCompat d1 =
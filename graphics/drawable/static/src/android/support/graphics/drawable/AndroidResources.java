@@ -79,4 +79,34 @@ class AndroidResources {
     };
     static final int styleable_AnimatedVectorDrawableTarget_animation = 1;
     static final int styleable_AnimatedVectorDrawableTarget_name = 0;
+
+    static final int[] styleable_Animator = {
+            android.R.attr.interpolator, android.R.attr.duration, android.R.attr.startOffset,
+            android.R.attr.repeatCount, android.R.attr.repeatMode, android.R.attr.valueFrom,
+            android.R.attr.valueTo, android.R.attr.valueType
+    };
+    static final int styleable_Animator_duration = 1;
+    static final int styleable_Animator_interpolator = 0;
+    static final int styleable_Animator_repeatCount = 3;
+    static final int styleable_Animator_repeatMode = 4;
+    static final int styleable_Animator_startOffset = 2;
+    static final int styleable_Animator_valueFrom = 5;
+    static final int styleable_Animator_valueTo = 6;
+    static final int styleable_Animator_valueType = 7;
+    static final int[] styleable_PropertyAnimator = {
+            android.R.attr.propertyName
+    };
+    static final int styleable_PropertyAnimator_propertyName = 0;
+    static final int[] styleable_AnimatorSet = {
+            android.R.attr.ordering
+    };
+    static final int styleable_AnimatorSet_ordering = 0;
+    static final int[] styleable_PropertyValuesHolder = {
+            android.R.attr.valueFrom, android.R.attr.valueTo, android.R.attr.valueType,
+            android.R.attr.propertyName
+    };
+    static final int styleable_PropertyValuesHolder_propertyName = 3;
+    static final int styleable_PropertyValuesHolder_valueFrom = 0;
+    static final int styleable_PropertyValuesHolder_valueTo = 1;
+    static final int styleable_PropertyValuesHolder_valueType = 2;
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Path;
+import android.support.v4.util.LruCache;
+
+/**
+ * Process wide cache of parsed path data, keyed by the {@code android:pathData} string, so that
+ * the paths of an icon shown by several activities or drawables are parsed once and shared.
+ * <p>
+ * The cached nodes are never modified: a {@link VectorDrawableCompat} path keeps using them until
+ * it is animated, and then switches to its own copy. The cache is bounded by an estimate of the
+ * memory used by the nodes and the {@link Path} templates.
+ */
+final class PathDataCache {
+
+    private static final int MAX_SIZE_BYTES = 256 * 1024;
+
+    // Rough sizes of the objects held by an entry, in bytes.
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int NODE_OVERHEAD = 32;
+    private static final int TEMPLATE_BYTES_PER_NODE = 24;
+
+    private static final LruCache<String, Entry> sCache =
+            new LruCache<String, Entry>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(String key, Entry value) {
+                    return key.length() * 2 + value.mSizeBytes;
+                }
+            };
+
+    private PathDataCache() {
+    }
+
+    /**
+     * Returns the parsed path data for {@code pathData}, parsing it on a cache miss.
+     */
+    static Entry obtain(String pathData) {
+        Entry entry = sCache.get(pathData);
+        if (entry == null) {
+            // Several threads may parse the same path data at the same time, the last one wins.
+            entry = new Entry(VectorDrawableCompat.createNodesFromPathData(pathData));
+            sCache.put(pathData, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}. The entries
+     * still used by drawables stay alive until these drawables are collected.
+     */
+    static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            sCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            sCache.trimToSize(sCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * The parsed nodes of a path data string, and a {@link Path} built from them.
+     */
+    static final class Entry {
+        final PathParser.PathDataNode[] mNodes;
+        final int mSizeBytes;
+        private Path mTemplate;
+
+        Entry(PathParser.PathDataNode[] nodes) {
+            mNodes = nodes;
+            int size = ENTRY_OVERHEAD;
+            for (PathParser.PathDataNode node : nodes) {
+                size += NODE_OVERHEAD + TEMPLATE_BYTES_PER_NODE + node.params.length * 4;
+            }
+            mSizeBytes = size;
+        }
+
+        /**
+         * Replaces the contents of {@code path} with the path of this entry. The template is
+         * built on first use, which is cheaper to copy than converting the nodes every time.
+         */
+        void toPath(Path path) {
+            synchronized (this) {
+                if (mTemplate == null) {
+                    mTemplate = new Path();
+                    PathParser.PathDataNode.nodesToPath(mNodes, mTemplate);
+                }
+            }
+            path.set(mTemplate);
+        }
+    }
+}
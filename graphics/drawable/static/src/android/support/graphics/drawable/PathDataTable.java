@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A table of precompiled path data, which lets {@link VectorDrawableCompat} skip the parsing of
+ * the {@code android:pathData} strings it knows.
+ * <p>
+ * The table is compiled at build time from the path data of the vector drawables of an app with
+ * {@link #compile(Collection, OutputStream)}, and stored for example as a raw resource or an
+ * asset. It is then loaded once at startup and given to
+ * {@link VectorDrawableCompat#setPathDataTable(PathDataTable)}:
+ * </p>
+ * <pre>
+ * InputStream in = getResources().openRawResource(R.raw.path_data);
+ * try {
+ *     VectorDrawableCompat.setPathDataTable(PathDataTable.load(in));
+ * } finally {
+ *     in.close();
+ * }
+ * </pre>
+ * The path data which are not in the table are still parsed, so a stale table only costs the
+ * parsing time it would have saved.
+ */
+public final class PathDataTable {
+
+    // The compiled format, in big endian order:
+    //   int magic, int version
+    //   int entry count, int node count, int float count
+    //   for each entry: int key length, UTF-8 key bytes, int first node, int node count
+    //   byte command of each node
+    //   int param count of each node
+    //   float params of all the nodes
+    private static final int MAGIC = 0x56445054; // "VDPT"
+    private static final int VERSION = 1;
+
+    private final Map<String, Integer> mEntries;
+    private final int[] mFirstNodes;
+    private final int[] mNodeCounts;
+    private final char[] mCommands;
+    private final int[] mParamOffsets;
+    private final float[] mParams;
+
+    private PathDataTable(Map<String, Integer> entries, int[] firstNodes, int[] nodeCounts,
+            char[] commands, int[] paramOffsets, float[] params) {
+        mEntries = entries;
+        mFirstNodes = firstNodes;
+        mNodeCounts = nodeCounts;
+        mCommands = commands;
+        mParamOffsets = paramOffsets;
+        mParams = params;
+    }
+
+    /**
+     * Compiles the given path data strings into a table, which can be read back with
+     * {@link #load(InputStream)}. This is meant to be run at build time.
+     *
+     * @param pathData the path data strings, in the format of {@code android:pathData}.
+     * @param out the stream the compiled table is written to. It is not closed.
+     * @throws IllegalArgumentException if one of the path data strings cannot be parsed.
+     */
+    public static void compile(@NonNull Collection<String> pathData, @NonNull OutputStream out)
+            throws IOException {
+        // Drop the duplicates, but keep the order so that the output is reproducible.
+        final Map<String, PathParser.PathDataNode[]> entries = new LinkedHashMap<>();
+        int nodeCount = 0;
+        int floatCount = 0;
+        for (String data : pathData) {
+            if (data == null || entries.containsKey(data)) {
+                continue;
+            }
+            final PathParser.PathDataNode[] nodes;
+            try {
+                nodes = PathParser.createNodesFromPathData(data);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Error in parsing " + data, e);
+            }
+            entries.put(data, nodes);
+            nodeCount += nodes.length;
+            for (PathParser.PathDataNode node : nodes) {
+                floatCount += node.params.length;
+            }
+        }
+
+        final DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+        dataOut.writeInt(entries.size());
+        dataOut.writeInt(nodeCount);
+        dataOut.writeInt(floatCount);
+        int firstNode = 0;
+        for (Map.Entry<String, PathParser.PathDataNode[]> entry : entries.entrySet()) {
+            final byte[] key = entry.getKey().getBytes("UTF-8");
+            dataOut.writeInt(key.length);
+            dataOut.write(key);
+            dataOut.writeInt(firstNode);
+            dataOut.writeInt(entry.getValue().length);
+            firstNode += entry.getValue().length;
+        }
+        for (PathParser.PathDataNode[] nodes : entries.values()) {
+            for (PathParser.PathDataNode node : nodes) {
+                dataOut.writeByte(node.type);
+            }
+        }
+        for (PathParser.PathDataNode[] nodes : entries.values()) {
+            for (PathParser.PathDataNode node : nodes) {
+                dataOut.writeInt(node.params.length);
+            }
+        }
+        for (PathParser.PathDataNode[] nodes : entries.values()) {
+            for (PathParser.PathDataNode node : nodes) {
+                for (float param : node.params) {
+                    dataOut.writeFloat(param);
+                }
+            }
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * Loads a table compiled by {@link #compile(Collection, OutputStream)}.
+     *
+     * @param in the stream the table is read from. It is not closed.
+     * @throws IOException if the stream cannot be read or does not contain a compiled table.
+     */
+    @NonNull
+    public static PathDataTable load(@NonNull InputStream in) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.available(), 32));
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        try {
+            final ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new IOException("Not a compiled path data table");
+            }
+            final int entryCount = data.getInt();
+            final int nodeCount = data.getInt();
+            final int floatCount = data.getInt();
+            if (entryCount < 0 || nodeCount < 0 || floatCount < 0) {
+                throw new IOException("Corrupted path data table");
+            }
+
+            final Map<String, Integer> entries = new HashMap<>(entryCount * 4 / 3 + 1);
+            final int[] firstNodes = new int[entryCount];
+            final int[] nodeCounts = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                final int keyLength = data.getInt();
+                if (keyLength < 0 || keyLength > data.remaining()) {
+                    throw new IOException("Truncated path data table");
+                }
+                final String key = new String(data.array(), data.position(), keyLength, "UTF-8");
+                data.position(data.position() + keyLength);
+                entries.put(key, i);
+                firstNodes[i] = data.getInt();
+                nodeCounts[i] = data.getInt();
+                if (firstNodes[i] < 0 || nodeCounts[i] < 0
+                        || firstNodes[i] + nodeCounts[i] > nodeCount) {
+                    throw new IOException("Corrupted path data table");
+                }
+            }
+
+            final char[] commands = new char[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                commands[i] = (char) (data.get() & 0xff);
+            }
+            // One more offset than nodes, so that the last node knows where its params end.
+            final int[] paramOffsets = new int[nodeCount + 1];
+            for (int i = 0; i < nodeCount; i++) {
+                paramOffsets[i + 1] = paramOffsets[i] + data.getInt();
+            }
+            if (paramOffsets[nodeCount] != floatCount) {
+                throw new IOException("Corrupted path data table");
+            }
+            final float[] params = new float[floatCount];
+            final FloatBuffer floats = data.asFloatBuffer();
+            floats.get(params);
+
+            return new PathDataTable(entries, firstNodes, nodeCounts, commands, paramOffsets,
+                    params);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated path data table", e);
+        }
+    }
+
+    /**
+     * Returns the number of path data strings in this table.
+     */
+    public int size() {
+        return mFirstNodes.length;
+    }
+
+    /**
+     * Returns whether this table contains the given path data string.
+     */
+    public boolean contains(@Nullable String pathData) {
+        return pathData != null && mEntries.containsKey(pathData);
+    }
+
+    /**
+     * Returns new nodes for the given path data, or null if it is not in this table. The nodes
+     * can be modified by the caller, as the animated paths do.
+     */
+    @Nullable
+    PathParser.PathDataNode[] createNodes(@Nullable String pathData) {
+        final Integer entry = pathData != null ? mEntries.get(pathData) : null;
+        if (entry == null) {
+            return null;
+        }
+        final int firstNode = mFirstNodes[entry];
+        final PathParser.PathDataNode[] nodes = new PathParser.PathDataNode[mNodeCounts[entry]];
+        for (int i = 0; i < nodes.length; i++) {
+            final int node = firstNode + i;
+            nodes[i] = new PathParser.PathDataNode(mCommands[node], PathParser.copyOfRange(
+                    mParams, mParamOffsets[node], mParamOffsets[node + 1]));
+        }
+        return nodes;
+    }
+}
@@ -18,6 +18,7 @@ import android.graphics.Path;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 // This class is a duplicate from the PathParser.java of frameworks/base, with slight
 // update on incompatible API like copyOfRange().
@@ -314,7 +315,19 @@ class PathParser {
          * @param path The target Path object.
          */
         public static void nodesToPath(PathDataNode[] node, Path path) {
-            float[] current = new float[6];
+            nodesToPath(node, path, new float[6]);
+        }
+
+        /**
+         * Convert an array of PathDataNode to Path, using the given array to hold the current
+         * point and the control points, so that animated paths do not allocate it every frame.
+         *
+         * @param node The source array of PathDataNode.
+         * @param path The target Path object.
+         * @param current An array of at least 6 floats, which is overwritten.
+         */
+        static void nodesToPath(PathDataNode[] node, Path path, float[] current) {
+            Arrays.fill(current, 0);
             char previousCommand = 'm';
             for (int i = 0; i < node.length; i++) {
                 addCommand(path, current, previousCommand, node[i].type, node[i].params);
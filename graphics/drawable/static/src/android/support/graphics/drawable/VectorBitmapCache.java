@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Process wide cache of rasterized vector drawables, keyed by their content and size, so that
+ * identical icons drawn at the same size are rendered once and share one bitmap.
+ * <p>
+ * Tint, color filter, alpha and mirroring are applied when the bitmap is drawn, so they are not
+ * part of the key. The cached bitmaps are never drawn into once they are added. The cache is
+ * bounded by the byte size of the bitmaps, and the least recently used ones are dropped first;
+ * the drawables which still show them keep them alive.
+ */
+final class VectorBitmapCache {
+
+    private static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private static final LruCache<Key, Bitmap> sCache =
+            new LruCache<Key, Bitmap>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Key key, Bitmap value) {
+                    return value.getRowBytes() * value.getHeight();
+                }
+            };
+
+    private VectorBitmapCache() {
+    }
+
+    /**
+     * Returns the cached rasterization of {@code content} at the given size, or null.
+     */
+    static Bitmap get(Content content, int width, int height) {
+        return sCache.get(new Key(content, width, height));
+    }
+
+    /**
+     * Adds the rasterization of {@code content} at the given size. The bitmap must not be
+     * modified afterwards.
+     */
+    static void put(Content content, int width, int height, Bitmap bitmap) {
+        sCache.put(new Key(content, width, height), bitmap);
+    }
+
+    /**
+     * Returns the number of lookups made so far.
+     */
+    @VisibleForTesting
+    static int getRequestCount() {
+        return sCache.hitCount() + sCache.missCount();
+    }
+
+    /**
+     * Returns the number of bitmaps added so far.
+     */
+    @VisibleForTesting
+    static int getPutCount() {
+        return sCache.putCount();
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            sCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            sCache.trimToSize(sCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Everything a vector drawable's rasterization depends on, except its size. Two contents are
+     * equal when all their values are equal; the path data are compared by identity, which holds
+     * for the path data shared through {@link PathDataCache}.
+     */
+    static final class Content {
+        private final Object[] mValues;
+        private final int mHashCode;
+
+        Content(List<Object> values) {
+            mValues = values.toArray();
+            mHashCode = Arrays.hashCode(mValues);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Content)) {
+                return false;
+            }
+            final Content other = (Content) o;
+            return mHashCode == other.mHashCode && Arrays.equals(mValues, other.mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    private static final class Key {
+        private final Content mContent;
+        private final int mWidth;
+        private final int mHeight;
+
+        Key(Content content, int width, int height) {
+            mContent = content;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mWidth == other.mWidth && mHeight == other.mHeight
+                    && mContent.equals(other.mContent);
+        }
+
+        @Override
+        public int hashCode() {
+            return (mContent.hashCode() * 31 + mWidth) * 31 + mHeight;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import android.graphics.PorterDuffColorFilter;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.VectorDrawable;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.NonNull;
@@ -43,6 +44,7 @@ import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 import android.support.v4.content.res.ResourcesCompat;
 import android.support.v4.graphics.drawable.DrawableCompat;
+import android.support.v4.os.AsyncTaskCompat;
 import android.support.v4.util.ArrayMap;
 import android.util.AttributeSet;
 import android.util.LayoutDirection;
@@ -214,6 +216,9 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
 
     private static final boolean DBG_VECTOR_DRAWABLE = false;
 
+    // The precompiled path data used by all the inflations, if any.
+    private static volatile PathDataTable sPathDataTable;
+
     private VectorDrawableCompatState mVectorState;
 
     private PorterDuffColorFilter mTintFilter;
@@ -225,6 +230,11 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
     // caching the bitmap by default is allowed.
     private boolean mAllowCaching = true;
 
+    // The bitmap rendered at every draw when the caching is turned off. It belongs to this
+    // drawable rather than to its state, so that the drawables sharing an animated state can be
+    // drawn at different sizes without reallocating it at each frame.
+    private Bitmap mRenderBitmap;
+
     // The Constant state associated with the <code>mDelegateDrawable</code>.
     private ConstantState mCachedConstantStateDelegate;
 
@@ -329,16 +339,24 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         // we offset to (0, 0);
         mTmpBounds.offsetTo(0, 0);
 
-        mVectorState.createCachedBitmapIfNeeded(scaledWidth, scaledHeight);
         if (!mAllowCaching) {
-            mVectorState.updateCachedBitmap(scaledWidth, scaledHeight);
+            if (mRenderBitmap == null || mRenderBitmap.getWidth() != scaledWidth
+                    || mRenderBitmap.getHeight() != scaledHeight) {
+                mRenderBitmap = Bitmap.createBitmap(scaledWidth, scaledHeight,
+                        Bitmap.Config.ARGB_8888);
+            }
+            mVectorState.renderBitmap(mRenderBitmap, scaledWidth, scaledHeight);
+            mVectorState.drawBitmapWithRootAlpha(canvas, mRenderBitmap, colorFilter, mTmpBounds);
         } else {
-            if (!mVectorState.canReuseCache()) {
-                mVectorState.updateCachedBitmap(scaledWidth, scaledHeight);
-                mVectorState.updateCacheStates();
+            if (!mVectorState.updateSharedCachedBitmap(scaledWidth, scaledHeight)) {
+                mVectorState.createCachedBitmapIfNeeded(scaledWidth, scaledHeight);
+                if (!mVectorState.canReuseCache()) {
+                    mVectorState.updateCachedBitmap(scaledWidth, scaledHeight);
+                    mVectorState.updateCacheStates();
+                }
             }
+            mVectorState.drawCachedBitmapWithRootAlpha(canvas, colorFilter, mTmpBounds);
         }
-        mVectorState.drawCachedBitmapWithRootAlpha(canvas, colorFilter, mTmpBounds);
         canvas.restoreToCount(saveCount);
     }
 
@@ -587,6 +605,40 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         return drawable;
     }
 
+    /**
+     * Sets the precompiled path data used when inflating vector drawables, so that the
+     * {@code android:pathData} strings found in the table are not parsed again. This applies to
+     * all the VectorDrawableCompat inflated afterwards, and is usually called once at startup.
+     * It has no effect on API 24 and above, where the platform inflates the vector drawables.
+     *
+     * @param table the table, or null to parse all the path data.
+     * @see PathDataTable
+     */
+    public static void setPathDataTable(@Nullable PathDataTable table) {
+        sPathDataTable = table;
+    }
+
+    /**
+     * Releases the memory of the path data and bitmaps shared by all the VectorDrawableCompat, in
+     * response to {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. The ones still
+     * used by drawables are released when these drawables are.
+     */
+    public static void onTrimMemory(int level) {
+        PathDataCache.onTrimMemory(level);
+        VectorBitmapCache.onTrimMemory(level);
+    }
+
+    static PathParser.PathDataNode[] createNodesFromPathData(String pathData) {
+        final PathDataTable table = sPathDataTable;
+        if (table != null) {
+            final PathParser.PathDataNode[] nodes = table.createNodes(pathData);
+            if (nodes != null) {
+                return nodes;
+            }
+        }
+        return PathParser.createNodesFromPathData(pathData);
+    }
+
     static int applyAlpha(int color, float alpha) {
         int alphaBytes = Color.alpha(color);
         color &= 0x00FFFFFF;
@@ -625,6 +677,8 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         a.recycle();
         state.mChangingConfigurations = getChangingConfigurations();
         state.mCacheDirty = true;
+        state.mContent = null;
+        state.mContentComputed = false;
         inflateInternal(res, parser, attrs, theme);
 
         mTintFilter = updateTintFilter(mTintFilter, state.mTint, state.mTintMode);
@@ -817,6 +871,75 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         mAllowCaching = allowCaching;
     }
 
+    /**
+     * Listener to be used with {@link #rasterizeAsync(int, int, RasterizeAsyncListener)}.
+     */
+    public interface RasterizeAsyncListener {
+
+        /**
+         * Called on the main thread when the drawable has been rendered.
+         */
+        void onRasterized(@NonNull VectorDrawableCompat drawable);
+    }
+
+    /**
+     * Renders this drawable at the given size in the background, so that drawing it at this size
+     * doesn't render it on the main thread. This is useful to prepare large illustrations before
+     * they are shown. The rendering is shared with the other drawables of the same vector.
+     * <p>
+     * The size is the size of the drawable in pixels once drawn, i.e. its bounds multiplied by the
+     * scale of the canvas. This has no effect on API 24 and above, where the platform renders
+     * the vector drawables, nor on the drawables which are animated; the listener is still
+     * called. This must be called on the main thread.
+     *
+     * @param width the width in pixels.
+     * @param height the height in pixels.
+     * @param listener called when the drawable has been rendered, can be null.
+     */
+    @NonNull
+    public AsyncTask<Void, Void, Void> rasterizeAsync(int width, int height,
+            @Nullable final RasterizeAsyncListener listener) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width and height must be > 0");
+        }
+        final int scaledWidth = Math.min(MAX_CACHED_BITMAP_SIZE, width);
+        final int scaledHeight = Math.min(MAX_CACHED_BITMAP_SIZE, height);
+
+        // The renderer is copied here, since draw() may use this one on the main thread while
+        // the copy is rendered.
+        VectorBitmapCache.Content content = null;
+        VPathRenderer renderer = null;
+        if (mDelegateDrawable == null && mAllowCaching) {
+            content = mVectorState.getContent();
+            if (content != null) {
+                renderer = new VPathRenderer(mVectorState.mVPathRenderer);
+            }
+        }
+        final VectorBitmapCache.Content rasterizedContent = content;
+        final VPathRenderer rasterizedRenderer = renderer;
+
+        return AsyncTaskCompat.executeParallel(new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                if (rasterizedRenderer != null && VectorBitmapCache.get(
+                        rasterizedContent, scaledWidth, scaledHeight) == null) {
+                    final Bitmap bitmap = Bitmap.createBitmap(scaledWidth, scaledHeight,
+                            Bitmap.Config.ARGB_8888);
+                    rasterizedRenderer.draw(new Canvas(bitmap), scaledWidth, scaledHeight, null);
+                    VectorBitmapCache.put(rasterizedContent, scaledWidth, scaledHeight, bitmap);
+                }
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                if (listener != null) {
+                    listener.onRasterized(VectorDrawableCompat.this);
+                }
+            }
+        });
+    }
+
     // We don't support RTL auto mirroring since the getLayoutDirection() is for API 17+.
     @SuppressLint("NewApi")
     private boolean needMirroring() {
@@ -931,13 +1054,15 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         boolean mAutoMirrored;
 
         Bitmap mCachedBitmap;
-        int[] mCachedThemeAttrs;
-        ColorStateList mCachedTint;
-        Mode mCachedTintMode;
-        int mCachedRootAlpha;
-        boolean mCachedAutoMirrored;
+        // Whether mCachedBitmap comes from VectorBitmapCache, and so must not be drawn into.
+        boolean mCachedBitmapShared;
         boolean mCacheDirty;
 
+        // The key of mVPathRenderer in VectorBitmapCache, computed on first use. Null if the
+        // renderer cannot be shared.
+        VectorBitmapCache.Content mContent;
+        boolean mContentComputed;
+
         /**
          * Temporary paint object used to draw cached bitmaps.
          */
@@ -962,9 +1087,14 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
 
         public void drawCachedBitmapWithRootAlpha(Canvas canvas, ColorFilter filter,
                                                   Rect originalBounds) {
+            drawBitmapWithRootAlpha(canvas, mCachedBitmap, filter, originalBounds);
+        }
+
+        public void drawBitmapWithRootAlpha(Canvas canvas, Bitmap bitmap, ColorFilter filter,
+                                            Rect originalBounds) {
             // The bitmap's size is the same as the bounds.
             final Paint p = getPaint(filter);
-            canvas.drawBitmap(mCachedBitmap, null, originalBounds, p);
+            canvas.drawBitmap(bitmap, null, originalBounds, p);
         }
 
         public boolean hasTranslucentRoot() {
@@ -989,20 +1119,62 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         }
 
         public void updateCachedBitmap(int width, int height) {
-            mCachedBitmap.eraseColor(Color.TRANSPARENT);
-            Canvas tmpCanvas = new Canvas(mCachedBitmap);
+            renderBitmap(mCachedBitmap, width, height);
+        }
+
+        public void renderBitmap(Bitmap bitmap, int width, int height) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            Canvas tmpCanvas = new Canvas(bitmap);
             mVPathRenderer.draw(tmpCanvas, width, height, null);
         }
 
         public void createCachedBitmapIfNeeded(int width, int height) {
-            if (mCachedBitmap == null || !canReuseBitmap(width, height)) {
+            if (mCachedBitmap == null || mCachedBitmapShared || !canReuseBitmap(width, height)) {
                 mCachedBitmap = Bitmap.createBitmap(width, height,
                         Bitmap.Config.ARGB_8888);
+                mCachedBitmapShared = false;
                 mCacheDirty = true;
             }
 
         }
 
+        /**
+         * Uses the bitmap shared by all the drawables with the same content and size, rendering
+         * it first if there is none yet.
+         *
+         * @return false if the content of this state cannot be shared.
+         */
+        public boolean updateSharedCachedBitmap(int width, int height) {
+            if (mCachedBitmapShared && canReuseBitmap(width, height)) {
+                return true;
+            }
+            final VectorBitmapCache.Content content = getContent();
+            if (content == null) {
+                return false;
+            }
+            Bitmap bitmap = VectorBitmapCache.get(content, width, height);
+            if (bitmap == null) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mVPathRenderer.draw(new Canvas(bitmap), width, height, null);
+                VectorBitmapCache.put(content, width, height, bitmap);
+            }
+            mCachedBitmap = bitmap;
+            mCachedBitmapShared = true;
+            return true;
+        }
+
+        /**
+         * Returns the key of the renderer in {@link VectorBitmapCache}, or null if it cannot be
+         * shared.
+         */
+        public VectorBitmapCache.Content getContent() {
+            if (!mContentComputed) {
+                mContent = mVPathRenderer.getContent();
+                mContentComputed = true;
+            }
+            return mContent;
+        }
+
         public boolean canReuseBitmap(int width, int height) {
             if (width == mCachedBitmap.getWidth()
                     && height == mCachedBitmap.getHeight()) {
@@ -1012,23 +1184,12 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         }
 
         public boolean canReuseCache() {
-            if (!mCacheDirty
-                    && mCachedTint == mTint
-                    && mCachedTintMode == mTintMode
-                    && mCachedAutoMirrored == mAutoMirrored
-                    && mCachedRootAlpha == mVPathRenderer.getRootAlpha()) {
-                return true;
-            }
-            return false;
+            // The tint, the root alpha and the mirroring are applied when drawing the cached
+            // bitmap, so they don't require to render it again.
+            return !mCacheDirty;
         }
 
         public void updateCacheStates() {
-            // Use shallow copy here and shallow comparison in canReuseCache(),
-            // likely hit cache miss more, but practically not much difference.
-            mCachedTint = mTint;
-            mCachedTintMode = mTintMode;
-            mCachedRootAlpha = mVPathRenderer.getRootAlpha();
-            mCachedAutoMirrored = mAutoMirrored;
             mCacheDirty = false;
         }
 
@@ -1071,6 +1232,7 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         private final Path mRenderPath;
         private static final Matrix IDENTITY_MATRIX = new Matrix();
         private final Matrix mFinalPathMatrix = new Matrix();
+        private final float[] mUnitVectors = new float[4];
 
         private Paint mStrokePaint;
         private Paint mFillPaint;
@@ -1164,6 +1326,20 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             drawGroupTree(mRootGroup, IDENTITY_MATRIX, canvas, w, h, filter);
         }
 
+        /**
+         * Returns everything the rendering of this tree depends on, or null if one of its paths
+         * doesn't use shared path data.
+         */
+        VectorBitmapCache.Content getContent() {
+            final ArrayList<Object> values = new ArrayList<Object>();
+            values.add(mViewportWidth);
+            values.add(mViewportHeight);
+            if (!mRootGroup.addContent(values)) {
+                return null;
+            }
+            return new VectorBitmapCache.Content(values);
+        }
+
         private void drawPath(VGroup vGroup, VPath vPath, Canvas canvas, int w, int h,
                               ColorFilter filter) {
             final float scaleX = w / mViewportWidth;
@@ -1183,7 +1359,7 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             vPath.toPath(mPath);
             final Path path = mPath;
 
-            mRenderPath.reset();
+            mRenderPath.rewind();
 
             if (vPath.isClipPath()) {
                 mRenderPath.addPath(path, mFinalPathMatrix);
@@ -1267,7 +1443,11 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             // scale on x and y axis, and take the minimal of these two.
             // For skew case, an unit square will mapped to a parallelogram. And this function will
             // return the minimal height of the 2 bases.
-            float[] unitVectors = new float[]{0, 1, 1, 0};
+            final float[] unitVectors = mUnitVectors;
+            unitVectors[0] = 0;
+            unitVectors[1] = 1;
+            unitVectors[2] = 1;
+            unitVectors[3] = 0;
             groupStackedMatrix.mapVectors(unitVectors);
             float scaleX = (float) Math.hypot(unitVectors[0], unitVectors[1]);
             float scaleY = (float) Math.hypot(unitVectors[2], unitVectors[3]);
@@ -1357,6 +1537,29 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             return mGroupName;
         }
 
+        boolean addContent(ArrayList<Object> values) {
+            values.add(SHAPE_GROUP);
+            values.add(mRotate);
+            values.add(mPivotX);
+            values.add(mPivotY);
+            values.add(mScaleX);
+            values.add(mScaleY);
+            values.add(mTranslateX);
+            values.add(mTranslateY);
+            for (int i = 0; i < mChildren.size(); i++) {
+                final Object child = mChildren.get(i);
+                final boolean shared = child instanceof VGroup
+                        ? ((VGroup) child).addContent(values)
+                        : ((VPath) child).addContent(values);
+                if (!shared) {
+                    return false;
+                }
+            }
+            // Closes the group, so that the following children aren't taken as its own.
+            values.add(null);
+            return true;
+        }
+
         public Matrix getLocalMatrix() {
             return mLocalMatrix;
         }
@@ -1512,6 +1715,10 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
      */
     private static class VPath {
         protected PathParser.PathDataNode[] mNodes = null;
+        // The shared parsed path data mNodes comes from, until the path is animated.
+        PathDataCache.Entry mSharedPathData;
+        // The current point and control points used when converting the animated nodes.
+        private float[] mCurrentPoints;
         String mPathName;
         int mChangingConfigurations;
 
@@ -1544,13 +1751,28 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
         public VPath(VPath copy) {
             mPathName = copy.mPathName;
             mChangingConfigurations = copy.mChangingConfigurations;
-            mNodes = PathParser.deepCopyNodes(copy.mNodes);
+            mSharedPathData = copy.mSharedPathData;
+            mNodes = mSharedPathData != null
+                    ? mSharedPathData.mNodes : PathParser.deepCopyNodes(copy.mNodes);
+        }
+
+        void inflatePathData(String pathData) {
+            mSharedPathData = PathDataCache.obtain(pathData);
+            mNodes = mSharedPathData.mNodes;
         }
 
         public void toPath(Path path) {
-            path.reset();
+            if (mSharedPathData != null) {
+                mSharedPathData.toPath(path);
+                return;
+            }
+            // Animated paths are converted every frame, reuse the storage of the previous one.
+            path.rewind();
             if (mNodes != null) {
-                PathParser.PathDataNode.nodesToPath(mNodes, path);
+                if (mCurrentPoints == null) {
+                    mCurrentPoints = new float[6];
+                }
+                PathParser.PathDataNode.nodesToPath(mNodes, path, mCurrentPoints);
             }
         }
 
@@ -1569,6 +1791,15 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             return false;
         }
 
+        boolean addContent(ArrayList<Object> values) {
+            if (mNodes != null && mSharedPathData == null) {
+                return false;
+            }
+            values.add(isClipPath() ? SHAPE_CLIP_PATH : SHAPE_PATH);
+            values.add(mSharedPathData);
+            return true;
+        }
+
         /* Setters and Getters, used by animator from AnimatedVectorDrawable. */
         @SuppressWarnings("unused")
         public PathParser.PathDataNode[] getPathData() {
@@ -1580,7 +1811,13 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             if (!PathParser.canMorph(mNodes, nodes)) {
                 // This should not happen in the middle of animation.
                 mNodes = PathParser.deepCopyNodes(nodes);
+                mSharedPathData = null;
             } else {
+                if (mSharedPathData != null) {
+                    // The shared nodes must not be modified, animate a copy instead.
+                    mNodes = PathParser.deepCopyNodes(mNodes);
+                    mSharedPathData = null;
+                }
                 PathParser.updateNodes(mNodes, nodes);
             }
         }
@@ -1623,7 +1860,7 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             final String pathData =
                     a.getString(AndroidResources.styleable_VectorDrawableClipPath_pathData);
             if (pathData != null) {
-                mNodes = PathParser.createNodesFromPathData(pathData);
+                inflatePathData(pathData);
             }
         }
 
@@ -1660,6 +1897,26 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             // Empty constructor.
         }
 
+        @Override
+        boolean addContent(ArrayList<Object> values) {
+            if (!super.addContent(values)) {
+                return false;
+            }
+            values.add(mStrokeColor);
+            values.add(mStrokeWidth);
+            values.add(mStrokeAlpha);
+            values.add(mFillColor);
+            values.add(mFillRule);
+            values.add(mFillAlpha);
+            values.add(mTrimPathStart);
+            values.add(mTrimPathEnd);
+            values.add(mTrimPathOffset);
+            values.add(mStrokeLineCap);
+            values.add(mStrokeLineJoin);
+            values.add(mStrokeMiterlimit);
+            return true;
+        }
+
         public VFullPath(VFullPath copy) {
             super(copy);
             mThemeAttrs = copy.mThemeAttrs;
@@ -1743,7 +2000,7 @@ public class VectorDrawableCompat extends VectorDrawableCommon {
             final String pathData =
                     a.getString(AndroidResources.styleable_VectorDrawablePath_pathData);
             if (pathData != null) {
-                mNodes = PathParser.createNodesFromPathData(pathData);
+                inflatePathData(pathData);
             }
 
             mFillColor = TypedArrayUtils.getNamedColor(a, parser, "fillColor",
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.graphics.drawable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.graphics.drawable.test.R;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Xml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xmlpull.v1.XmlPullParser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Checks the sharing of the parsed path data and of the rendered bitmaps between the
+ * {@link VectorDrawableCompat}s. The
+ * drawables are always inflated by VectorDrawableCompat, even on the API levels where
+ * {@link VectorDrawableCompat#create} delegates to the platform.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class VectorDrawableSharingTest {
+
+    private static final int ICON = R.drawable.vector_icon_five_bars;
+    private static final String PATH_NAME = "class1";
+    private static final int SIZE = 64;
+
+    private Resources mResources;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mResources = InstrumentationRegistry.getContext().getResources();
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        // Start from empty caches, so that entries left by other tests don't matter
+        VectorDrawableCompat.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Test
+    public void testInflationsShareNodesAndPath() throws Exception {
+        final VectorDrawableCompat first = inflate(ICON);
+        final VectorDrawableCompat second = inflate(ICON);
+        final Object firstPath = first.getTargetByName(PATH_NAME);
+        final Object secondPath = second.getTargetByName(PATH_NAME);
+        assertNotSame(firstPath, secondPath);
+
+        final PathDataCache.Entry entry = getSharedPathData(firstPath);
+        assertNotNull(entry);
+        assertSame(entry, getSharedPathData(secondPath));
+        assertSame(entry.mNodes, getPathData(firstPath));
+        assertSame(entry.mNodes, getPathData(secondPath));
+
+        // The path template is built by the first draw and reused by the next ones
+        draw(first);
+        final Object template = getField(entry, "mTemplate");
+        assertNotNull(template);
+        draw(second);
+        assertSame(template, getField(entry, "mTemplate"));
+    }
+
+    @Test
+    public void testSetPathDataCopiesSharedNodes() throws Exception {
+        final VectorDrawableCompat animated = inflate(ICON);
+        final VectorDrawableCompat other = inflate(ICON);
+        final Object animatedPath = animated.getTargetByName(PATH_NAME);
+        final PathDataCache.Entry entry = getSharedPathData(animatedPath);
+        final float[] sharedParams = entry.mNodes[0].params.clone();
+
+        final PathParser.PathDataNode[] nodes = PathParser.deepCopyNodes(entry.mNodes);
+        nodes[0].params[0] += 1;
+        setPathData(animatedPath, nodes);
+
+        // The animated path has its own nodes, and the shared ones are unchanged
+        assertNull(getSharedPathData(animatedPath));
+        final PathParser.PathDataNode[] animatedNodes = getPathData(animatedPath);
+        assertNotSame(entry.mNodes, animatedNodes);
+        assertNotSame(nodes, animatedNodes);
+        assertEquals(sharedParams[0] + 1, animatedNodes[0].params[0], 0f);
+        assertArrayEquals(sharedParams, entry.mNodes[0].params, 0f);
+        assertSame(entry, getSharedPathData(other.getTargetByName(PATH_NAME)));
+
+        // Further updates only change the copy
+        nodes[0].params[0] += 1;
+        setPathData(animatedPath, nodes);
+        assertSame(animatedNodes, getPathData(animatedPath));
+        assertEquals(sharedParams[0] + 2, animatedNodes[0].params[0], 0f);
+        assertArrayEquals(sharedParams, entry.mNodes[0].params, 0f);
+    }
+
+    @Test
+    public void testTrimMemoryDropsPathData() throws Exception {
+        final VectorDrawableCompat first = inflate(ICON);
+        final PathDataCache.Entry entry = getSharedPathData(first.getTargetByName(PATH_NAME));
+
+        VectorDrawableCompat.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        final VectorDrawableCompat second = inflate(ICON);
+        final PathDataCache.Entry newEntry =
+                getSharedPathData(second.getTargetByName(PATH_NAME));
+        assertNotSame(entry, newEntry);
+        assertArrayEquals(entry.mNodes[0].params, newEntry.mNodes[0].params, 0f);
+        // The drawables inflated before keep their entry
+        assertSame(entry, getSharedPathData(first.getTargetByName(PATH_NAME)));
+
+        // A lower level keeps the recently used entries
+        VectorDrawableCompat.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertSame(newEntry, getSharedPathData(inflate(ICON).getTargetByName(PATH_NAME)));
+    }
+
+    @Test
+    public void testSameContentAndSizeShareBitmap() throws Exception {
+        final VectorDrawableCompat first = inflate(ICON);
+        final VectorDrawableCompat second = inflate(ICON);
+        final int puts = VectorBitmapCache.getPutCount();
+
+        draw(first);
+        draw(second);
+        assertEquals(puts + 1, VectorBitmapCache.getPutCount());
+        final Bitmap bitmap = getCachedBitmap(first);
+        assertNotNull(bitmap);
+        assertSame(bitmap, getCachedBitmap(second));
+        assertTrue((Boolean) getField(first.getConstantState(), "mCachedBitmapShared"));
+        assertSame(bitmap, VectorBitmapCache.get(getContent(first), SIZE, SIZE));
+
+        // The tint is applied when drawing, so it doesn't need another bitmap
+        second.setTint(Color.RED);
+        draw(second);
+        assertSame(bitmap, getCachedBitmap(second));
+        assertEquals(puts + 1, VectorBitmapCache.getPutCount());
+
+        // Another size needs another bitmap
+        second.setBounds(0, 0, SIZE / 2, SIZE / 2);
+        second.draw(mCanvas);
+        assertEquals(puts + 2, VectorBitmapCache.getPutCount());
+        assertNotSame(bitmap, getCachedBitmap(second));
+        assertSame(bitmap, getCachedBitmap(first));
+    }
+
+    @Test
+    public void testAnimatedPathDoesNotUseBitmapCache() throws Exception {
+        final VectorDrawableCompat animated = inflate(ICON);
+        final Object path = animated.getTargetByName(PATH_NAME);
+        final PathParser.PathDataNode[] nodes =
+                PathParser.deepCopyNodes(getSharedPathData(path).mNodes);
+        nodes[0].params[0] += 1;
+        setPathData(path, nodes);
+        assertNull(getContent(animated));
+
+        final int requests = VectorBitmapCache.getRequestCount();
+        final int puts = VectorBitmapCache.getPutCount();
+        draw(animated);
+        draw(animated);
+        assertEquals(requests, VectorBitmapCache.getRequestCount());
+        assertEquals(puts, VectorBitmapCache.getPutCount());
+        assertNotNull(getCachedBitmap(animated));
+        assertFalse((Boolean) getField(animated.getConstantState(), "mCachedBitmapShared"));
+    }
+
+    @Test
+    public void testDrawableWithoutCachingDoesNotUseBitmapCache() throws Exception {
+        // As used by AnimatedVectorDrawableCompat, whose paths may be animated at any time
+        final VectorDrawableCompat animated = inflate(ICON);
+        animated.setAllowCaching(false);
+        final int requests = VectorBitmapCache.getRequestCount();
+        final int puts = VectorBitmapCache.getPutCount();
+        draw(animated);
+
+        final Object path = animated.getTargetByName(PATH_NAME);
+        final PathParser.PathDataNode[] nodes =
+                PathParser.deepCopyNodes(getSharedPathData(path).mNodes);
+        nodes[0].params[0] += 1;
+        setPathData(path, nodes);
+        draw(animated);
+        assertEquals(requests, VectorBitmapCache.getRequestCount());
+        assertEquals(puts, VectorBitmapCache.getPutCount());
+        assertFalse((Boolean) getField(animated.getConstantState(), "mCachedBitmapShared"));
+    }
+
+    private VectorDrawableCompat inflate(int resId) throws Exception {
+        final XmlPullParser parser = mResources.getXml(resId);
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG
+                && type != XmlPullParser.END_DOCUMENT) {
+            // Empty loop
+        }
+        return VectorDrawableCompat.createFromXmlInner(mResources, parser,
+                Xml.asAttributeSet(parser), null);
+    }
+
+    private void draw(VectorDrawableCompat drawable) {
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        drawable.draw(mCanvas);
+    }
+
+    private static Bitmap getCachedBitmap(VectorDrawableCompat drawable) throws Exception {
+        return (Bitmap) getField(drawable.getConstantState(), "mCachedBitmap");
+    }
+
+    private static VectorBitmapCache.Content getContent(VectorDrawableCompat drawable)
+            throws Exception {
+        final Method method = drawable.getConstantState().getClass().getMethod("getContent");
+        method.setAccessible(true);
+        return (VectorBitmapCache.Content) method.invoke(drawable.getConstantState());
+    }
+
+    // The paths are private classes, accessed the same way as by the animators.
+    private static PathDataCache.Entry getSharedPathData(Object path) throws Exception {
+        return (PathDataCache.Entry) getField(path, "mSharedPathData");
+    }
+
+    private static PathParser.PathDataNode[] getPathData(Object path) throws Exception {
+        final Method method = path.getClass().getMethod("getPathData");
+        method.setAccessible(true);
+        return (PathParser.PathDataNode[]) method.invoke(path);
+    }
+
+    private static void setPathData(Object path, PathParser.PathDataNode[] nodes)
+            throws Exception {
+        final Method method = path.getClass().getMethod("setPathData",
+                PathParser.PathDataNode[].class);
+        method.setAccessible(true);
+        method.invoke(path, (Object) nodes);
+    }
+
+    private static Object getField(Object object, String name) throws Exception {
+        for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+            try {
+                final Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(object);
+            } catch (NoSuchFieldException e) {
+                // Declared by a superclass
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
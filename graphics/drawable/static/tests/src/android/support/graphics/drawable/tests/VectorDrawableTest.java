@@ -18,9 +18,11 @@ package android.support.graphics.drawable.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.Resources.Theme;
@@ -30,6 +32,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.support.graphics.drawable.PathDataTable;
 import android.support.graphics.drawable.VectorDrawableCompat;
 import android.support.graphics.drawable.test.R;
 import android.support.test.InstrumentationRegistry;
@@ -40,16 +43,24 @@ import android.util.Log;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
 @MediumTest
 public class VectorDrawableTest {
     private static final String LOGTAG = "VectorDrawableTest";
+    private static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
 
     private static final int[] ICON_RES_IDS = new int[]{
             R.drawable.vector_icon_create,
@@ -148,6 +159,108 @@ public class VectorDrawableTest {
         verifyVectorDrawables(ICON_RES_IDS, GOLDEN_IMAGES, null);
     }
 
+    @Test
+    public void testSimpleVectorDrawablesWithPathDataTable() throws Exception {
+        final List<String> pathData = new ArrayList<>();
+        for (int resId : ICON_RES_IDS) {
+            final XmlPullParser parser = mResources.getXml(resId);
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final String data = parser.getAttributeValue(ANDROID_NAMESPACE, "pathData");
+                if (data != null && !data.startsWith("@")) {
+                    pathData.add(data);
+                }
+            }
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PathDataTable.compile(pathData, out);
+        final PathDataTable table =
+                PathDataTable.load(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(table.size() > 0);
+        assertTrue(table.contains(pathData.get(0)));
+
+        VectorDrawableCompat.setPathDataTable(table);
+        try {
+            verifyVectorDrawables(ICON_RES_IDS, GOLDEN_IMAGES, null);
+        } finally {
+            VectorDrawableCompat.setPathDataTable(null);
+        }
+    }
+
+    @Test
+    public void testSharedPathData() throws Exception {
+        // The icons are rendered the same way when their path data and bitmaps are shared, when
+        // they are parsed again after the caches are cleared, and when they are shared again.
+        // The sharing itself is checked by VectorDrawableSharingTest.
+        verifyVectorDrawables(ICON_RES_IDS, GOLDEN_IMAGES, null);
+        VectorDrawableCompat.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        verifyVectorDrawables(ICON_RES_IDS, GOLDEN_IMAGES, null);
+        verifyVectorDrawables(ICON_RES_IDS, GOLDEN_IMAGES, null);
+    }
+
+    @Test
+    public void testSharedBitmapIsNotTinted() {
+        final VectorDrawableCompat plain = VectorDrawableCompat.create(mResources, TEST_ICON,
+                mTheme);
+        final VectorDrawableCompat tinted = VectorDrawableCompat.create(mResources, TEST_ICON,
+                mTheme);
+        tinted.setTint(Color.RED);
+        plain.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+        tinted.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+
+        mBitmap.eraseColor(0);
+        plain.draw(mCanvas);
+        final Bitmap expected = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+
+        // Both drawables use the same rendering, and the tint is only applied when drawing it.
+        mBitmap.eraseColor(0);
+        tinted.draw(mCanvas);
+        boolean hasTintedPixel = false;
+        for (int y = 0; y < IMAGE_HEIGHT && !hasTintedPixel; y++) {
+            for (int x = 0; x < IMAGE_WIDTH && !hasTintedPixel; x++) {
+                final int pixel = mBitmap.getPixel(x, y);
+                hasTintedPixel = Color.alpha(pixel) == 0xff && (pixel & 0xffffff) == 0xff0000;
+            }
+        }
+        assertTrue(hasTintedPixel);
+
+        mBitmap.eraseColor(0);
+        plain.draw(mCanvas);
+        compareImages(expected, mBitmap, "shared bitmap");
+    }
+
+    @Test
+    public void testRasterizeAsync() throws Exception {
+        final VectorDrawableCompat vectorDrawable =
+                VectorDrawableCompat.create(mResources, TEST_ICON, mTheme);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final VectorDrawableCompat[] rasterized = new VectorDrawableCompat[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                vectorDrawable.rasterizeAsync(IMAGE_WIDTH, IMAGE_HEIGHT,
+                        new VectorDrawableCompat.RasterizeAsyncListener() {
+                            @Override
+                            public void onRasterized(VectorDrawableCompat drawable) {
+                                rasterized[0] = drawable;
+                                latch.countDown();
+                            }
+                        });
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame(vectorDrawable, rasterized[0]);
+
+        vectorDrawable.setBounds(0, 0, IMAGE_WIDTH, IMAGE_HEIGHT);
+        mBitmap.eraseColor(0);
+        vectorDrawable.draw(mCanvas);
+        final Bitmap golden = BitmapFactory.decodeResource(mResources, GOLDEN_IMAGES[0]);
+        compareImages(mBitmap, golden, mResources.getString(TEST_ICON));
+    }
+
     private void verifyVectorDrawables(int[] resIds, int[] goldenImages, int[] stateSet)
             throws XmlPullParserException, IOException {
         for (int i = 0; i < resIds.length; i++) {
@@ -32,6 +32,7 @@ import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.os.BuildCompat;
+import android.support.v4.view.AsyncLayoutInflater;
 import android.support.v4.view.WindowCompat;
 import android.support.v7.appcompat.R;
 import android.support.v7.view.ActionMode;
@@ -401,6 +402,20 @@ public abstract class AppCompatDelegate {
     public abstract View createView(@Nullable View parent, String name, @NonNull Context context,
             @NonNull AttributeSet attrs);
 
+    /**
+     * Creates an {@link AsyncLayoutInflater} which inflates the tint-aware widgets returned by
+     * {@link #createView(android.view.View, String, android.content.Context,
+     * android.util.AttributeSet)}, so that layouts can be inflated on a background thread
+     * without losing AppCompat's theming. The Activity's own
+     * {@link android.app.Activity#onCreateView(String, Context, AttributeSet) onCreateView()}
+     * is not called, so the layouts must not contain fragments.
+     *
+     * @param context the context to inflate the layouts with, usually the Activity or a
+     *                {@link android.view.ContextThemeWrapper} of it.
+     */
+    @NonNull
+    public abstract AsyncLayoutInflater createAsyncLayoutInflater(@NonNull Context context);
+
     /**
      * Whether AppCompat handles any native action modes itself.
      * <p>This methods only takes effect on
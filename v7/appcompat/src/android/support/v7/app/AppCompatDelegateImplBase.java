@@ -24,7 +24,10 @@ import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v4.view.LayoutInflaterFactory;
 import android.support.v7.appcompat.R;
 import android.support.v7.view.ActionMode;
 import android.support.v7.view.SupportMenuInflater;
@@ -32,6 +35,7 @@ import android.support.v7.view.WindowCallbackWrapper;
 import android.support.v7.view.menu.MenuBuilder;
 import android.support.v7.widget.AppCompatDrawableManager;
 import android.support.v7.widget.TintTypedArray;
+import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -183,6 +187,18 @@ abstract class AppCompatDelegateImplBase extends AppCompatDelegate {
         return new ActionBarDrawableToggleImpl();
     }
 
+    @NonNull
+    @Override
+    public AsyncLayoutInflater createAsyncLayoutInflater(@NonNull Context context) {
+        return new AsyncLayoutInflater(context, new LayoutInflaterFactory() {
+            @Override
+            public View onCreateView(View parent, String name, Context context,
+                    AttributeSet attrs) {
+                return createView(parent, name, context, attrs);
+            }
+        });
+    }
+
     final Context getActionBarThemedContext() {
         Context context = null;
 
@@ -72,11 +72,10 @@ class AppCompatViewInflater {
 
     private static final String LOG_TAG = "AppCompatViewInflater";
 
+    // Guarded by itself, as views can be inflated on background threads.
     private static final Map<String, Constructor<? extends View>> sConstructorMap
             = new ArrayMap<>();
 
-    private final Object[] mConstructorArgs = new Object[2];
-
     public final View createView(View parent, final String name, @NonNull Context context,
             @NonNull AttributeSet attrs, boolean inheritContext,
             boolean readAndroidTheme, boolean readAppTheme, boolean wrapContext) {
@@ -140,6 +139,11 @@ class AppCompatViewInflater {
                 break;
         }
 
+        if (view == null) {
+            // Then try the factories registered for the custom views, which avoid reflection
+            view = createViewFromRegistry(context, name, attrs);
+        }
+
         if (view == null && originalContext != context) {
             // If the original context does not equal our themed context, then we need to manually
             // inflate it using the name so that android:theme takes effect.
@@ -154,34 +158,37 @@ class AppCompatViewInflater {
         return view;
     }
 
+    private static View createViewFromRegistry(Context context, String name,
+            AttributeSet attrs) {
+        final ViewFactoryRegistry.ViewFactory factory = ViewFactoryRegistry.getViewFactory(
+                name.equals("view") ? attrs.getAttributeValue(null, "class") : name);
+        return factory != null ? factory.createView(context, attrs) : null;
+    }
+
     private View createViewFromTag(Context context, String name, AttributeSet attrs) {
         if (name.equals("view")) {
             name = attrs.getAttributeValue(null, "class");
         }
 
+        // The arguments are not kept in a field, so that several threads can inflate at once.
+        final Object[] constructorArgs = new Object[] {context, attrs};
         try {
-            mConstructorArgs[0] = context;
-            mConstructorArgs[1] = attrs;
-
             if (-1 == name.indexOf('.')) {
                 for (int i = 0; i < sClassPrefixList.length; i++) {
-                    final View view = createView(context, name, sClassPrefixList[i]);
+                    final View view = createView(context, name, sClassPrefixList[i],
+                            constructorArgs);
                     if (view != null) {
                         return view;
                     }
                 }
                 return null;
             } else {
-                return createView(context, name, null);
+                return createView(context, name, null, constructorArgs);
             }
         } catch (Exception e) {
             // We do not want to catch these, lets return null and let the actual LayoutInflater
             // try
             return null;
-        } finally {
-            // Don't retain references on context.
-            mConstructorArgs[0] = null;
-            mConstructorArgs[1] = null;
         }
     }
 
@@ -209,9 +216,12 @@ class AppCompatViewInflater {
         a.recycle();
     }
 
-    private View createView(Context context, String name, String prefix)
-            throws ClassNotFoundException, InflateException {
-        Constructor<? extends View> constructor = sConstructorMap.get(name);
+    private View createView(Context context, String name, String prefix,
+            Object[] constructorArgs) throws ClassNotFoundException, InflateException {
+        Constructor<? extends View> constructor;
+        synchronized (sConstructorMap) {
+            constructor = sConstructorMap.get(name);
+        }
 
         try {
             if (constructor == null) {
@@ -220,10 +230,12 @@ class AppCompatViewInflater {
                         prefix != null ? (prefix + name) : name).asSubclass(View.class);
 
                 constructor = clazz.getConstructor(sConstructorSignature);
-                sConstructorMap.put(name, constructor);
+                synchronized (sConstructorMap) {
+                    sConstructorMap.put(name, constructor);
+                }
             }
             constructor.setAccessible(true);
-            return constructor.newInstance(mConstructorArgs);
+            return constructor.newInstance(constructorArgs);
         } catch (Exception e) {
             // We do not want to catch these, lets return null and let the actual LayoutInflater
             // try
@@ -271,6 +283,7 @@ class AppCompatViewInflater {
         private final String mMethodName;
 
         private Method mResolvedMethod;
+        private ViewFactoryRegistry.OnClickHandler mResolvedHandler;
         private Context mResolvedContext;
 
         public DeclaredOnClickListener(@NonNull View hostView, @NonNull String methodName) {
@@ -280,10 +293,14 @@ class AppCompatViewInflater {
 
         @Override
         public void onClick(@NonNull View v) {
-            if (mResolvedMethod == null) {
+            if (mResolvedMethod == null && mResolvedHandler == null) {
                 resolveMethod(mHostView.getContext(), mMethodName);
             }
 
+            if (mResolvedHandler != null) {
+                mResolvedHandler.onClick(mResolvedContext, v);
+                return;
+            }
             try {
                 mResolvedMethod.invoke(mResolvedContext, v);
             } catch (IllegalAccessException e) {
@@ -300,6 +317,15 @@ class AppCompatViewInflater {
             while (context != null) {
                 try {
                     if (!context.isRestricted()) {
+                        // A registered handler saves the reflective lookup and invocation
+                        final ViewFactoryRegistry.OnClickHandler handler =
+                                ViewFactoryRegistry.getOnClickHandler(context.getClass(),
+                                        mMethodName);
+                        if (handler != null) {
+                            mResolvedHandler = handler;
+                            mResolvedContext = context;
+                            return;
+                        }
                         final Method method = context.getClass().getMethod(mMethodName, View.class);
                         if (method != null) {
                             mResolvedMethod = method;
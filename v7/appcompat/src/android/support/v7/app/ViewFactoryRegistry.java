@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.app;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayMap;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * A registry of precompiled view constructors and {@code android:onClick} handlers, which lets
+ * AppCompat's layout inflation skip the reflection it would otherwise use to create custom views
+ * and to find the methods named by {@code android:onClick}.
+ * <p>
+ * The entries are typically generated at build time from the custom views and click handlers of
+ * an app, and registered once at startup, for example in
+ * {@link android.app.Application#onCreate()}:
+ * </p>
+ * <pre>
+ * ViewFactoryRegistry.registerViewFactory("com.example.ChartView",
+ *         new ViewFactoryRegistry.ViewFactory() {
+ *             public View createView(Context context, AttributeSet attrs) {
+ *                 return new ChartView(context, attrs);
+ *             }
+ *         });
+ * ViewFactoryRegistry.registerOnClickHandler(MainActivity.class, "onChartClicked",
+ *         new ViewFactoryRegistry.OnClickHandler() {
+ *             public void onClick(Context target, View view) {
+ *                 ((MainActivity) target).onChartClicked(view);
+ *             }
+ *         });
+ * </pre>
+ * The registry is only used by the layout inflation of {@link AppCompatDelegate}, i.e. when
+ * the layouts are inflated with the factory installed by
+ * {@link AppCompatDelegate#installViewFactory()} or with
+ * {@link AppCompatDelegate#createAsyncLayoutInflater(Context)}. The views and methods which are
+ * not registered are still found with reflection. The registry can be used from any thread.
+ */
+public final class ViewFactoryRegistry {
+
+    /**
+     * Creates the views of one tag, in place of its reflective constructor lookup.
+     */
+    public interface ViewFactory {
+        /**
+         * Creates a view, in the same way as its {@code (Context, AttributeSet)} constructor.
+         *
+         * @param context the context the view should be created with.
+         * @param attrs the attributes of the tag in the layout.
+         */
+        @NonNull
+        View createView(@NonNull Context context, @NonNull AttributeSet attrs);
+    }
+
+    /**
+     * Calls one {@code android:onClick} method, in place of its reflective lookup and invocation.
+     */
+    public interface OnClickHandler {
+        /**
+         * Calls the click method on {@code target}.
+         *
+         * @param target the context declaring the method, an instance of the class the handler
+         *               was registered for.
+         * @param view the view which was clicked.
+         */
+        void onClick(@NonNull Context target, @NonNull View view);
+    }
+
+    private static final Object sLock = new Object();
+    private static final ArrayMap<String, ViewFactory> sViewFactories = new ArrayMap<>();
+    private static final ArrayMap<String, ArrayMap<Class<?>, OnClickHandler>> sOnClickHandlers =
+            new ArrayMap<>();
+
+    private ViewFactoryRegistry() {
+    }
+
+    /**
+     * Registers the factory of the views of a tag.
+     *
+     * @param name the name of the tag, as written in the layouts, e.g.
+     *             {@code "com.example.ChartView"}. The views declared with
+     *             {@code <view class="...">} are looked up by the value of {@code class}.
+     * @param factory the factory creating the views, or null to remove the registered one.
+     */
+    public static void registerViewFactory(@NonNull String name, @Nullable ViewFactory factory) {
+        synchronized (sLock) {
+            if (factory != null) {
+                sViewFactories.put(name, factory);
+            } else {
+                sViewFactories.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Registers the handler of an {@code android:onClick} method.
+     *
+     * @param targetClass the context class declaring the method. The handler is also used for
+     *                    the subclasses of this class.
+     * @param methodName the name of the method, as written in the layouts.
+     * @param handler the handler calling the method, or null to remove the registered one.
+     */
+    public static void registerOnClickHandler(@NonNull Class<? extends Context> targetClass,
+            @NonNull String methodName, @Nullable OnClickHandler handler) {
+        synchronized (sLock) {
+            ArrayMap<Class<?>, OnClickHandler> handlers = sOnClickHandlers.get(methodName);
+            if (handler != null) {
+                if (handlers == null) {
+                    handlers = new ArrayMap<>();
+                    sOnClickHandlers.put(methodName, handlers);
+                }
+                handlers.put(targetClass, handler);
+            } else if (handlers != null) {
+                handlers.remove(targetClass);
+                if (handlers.isEmpty()) {
+                    sOnClickHandlers.remove(methodName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the factory registered for the given tag name, or null.
+     */
+    @Nullable
+    static ViewFactory getViewFactory(@Nullable String name) {
+        if (name == null) {
+            return null;
+        }
+        synchronized (sLock) {
+            return sViewFactories.get(name);
+        }
+    }
+
+    /**
+     * Returns the handler registered for the given method of {@code targetClass} or of one of
+     * its superclasses, or null.
+     */
+    @Nullable
+    static OnClickHandler getOnClickHandler(@NonNull Class<?> targetClass,
+            @NonNull String methodName) {
+        synchronized (sLock) {
+            final ArrayMap<Class<?>, OnClickHandler> handlers = sOnClickHandlers.get(methodName);
+            if (handlers == null) {
+                return null;
+            }
+            for (Class<?> c = targetClass; c != null; c = c.getSuperclass()) {
+                final OnClickHandler handler = handlers.get(c);
+                if (handler != null) {
+                    return handler;
+                }
+            }
+            return null;
+        }
+    }
+}
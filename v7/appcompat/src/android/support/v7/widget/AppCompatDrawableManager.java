@@ -27,6 +27,7 @@ import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
@@ -46,7 +47,6 @@ import android.support.graphics.drawable.VectorDrawableCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v4.util.ArrayMap;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.util.LruCache;
 import android.support.v7.appcompat.R;
 import android.util.AttributeSet;
@@ -58,8 +58,15 @@ import android.util.Xml;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @hide
@@ -79,14 +86,20 @@ public final class AppCompatDrawableManager {
 
     private static final String PLATFORM_VD_CLAZZ = "android.graphics.drawable.VectorDrawable";
 
-    private static AppCompatDrawableManager INSTANCE;
+    // Created by the class initialization of the holder, so that get() takes no lock on the
+    // drawable and tint lookups of the UI thread and of the background inflation threads.
+    private static class InstanceHolder {
+        static final AppCompatDrawableManager INSTANCE = createInstance();
 
-    public static AppCompatDrawableManager get() {
-        if (INSTANCE == null) {
-            INSTANCE = new AppCompatDrawableManager();
-            installDefaultInflateDelegates(INSTANCE);
+        private static AppCompatDrawableManager createInstance() {
+            final AppCompatDrawableManager manager = new AppCompatDrawableManager();
+            installDefaultInflateDelegates(manager);
+            return manager;
         }
-        return INSTANCE;
+    }
+
+    public static AppCompatDrawableManager get() {
+        return InstanceHolder.INSTANCE;
     }
 
     private static void installDefaultInflateDelegates(@NonNull AppCompatDrawableManager manager) {
@@ -102,7 +115,7 @@ public final class AppCompatDrawableManager {
         }
     }
 
-    private static final ColorFilterLruCache COLOR_FILTER_CACHE = new ColorFilterLruCache(6);
+    private static final ColorFilterLruCache COLOR_FILTER_CACHE = new ColorFilterLruCache(64);
 
     /**
      * Drawables which should be tinted with the value of {@code R.attr.colorControlNormal},
@@ -174,17 +187,14 @@ public final class AppCompatDrawableManager {
             R.drawable.abc_btn_radio_material
     };
 
-    private WeakHashMap<Context, SparseArray<ColorStateList>> mTintLists;
+    final ThemedResourceCache<ColorStateList> mTintListCache = new ThemedResourceCache<>();
     private ArrayMap<String, InflateDelegate> mDelegates;
+    private final Object mKnownDrawableIdTagsLock = new Object();
     private SparseArray<String> mKnownDrawableIdTags;
 
-    private final Object mDrawableCacheLock = new Object();
-    private final WeakHashMap<Context, LongSparseArray<WeakReference<Drawable.ConstantState>>>
-            mDrawableCaches = new WeakHashMap<>(0);
-
-    private TypedValue mTypedValue;
+    final ThemedResourceCache<ConstantState> mDrawableCache = new ThemedResourceCache<>();
 
-    private boolean mHasCheckedVectorDrawableSetup;
+    private volatile boolean mHasCheckedVectorDrawableSetup;
 
     public Drawable getDrawable(@NonNull Context context, @DrawableRes int resId) {
         return getDrawable(context, resId, false);
@@ -214,13 +224,10 @@ public final class AppCompatDrawableManager {
     }
 
     public void onConfigurationChanged(@NonNull Context context) {
-        synchronized (mDrawableCacheLock) {
-            LongSparseArray<WeakReference<ConstantState>> cache = mDrawableCaches.get(context);
-            if (cache != null) {
-                // Crude, but we'll just clear the cache when the configuration changes
-                cache.clear();
-            }
-        }
+        // The caches are keyed by configuration, so the entries of the new configuration do not
+        // conflict with the old ones, which go away with the drawables using them.
+        mDrawableCache.purge();
+        mTintListCache.purge();
     }
 
     private static long createCacheKey(TypedValue tv) {
@@ -229,10 +236,7 @@ public final class AppCompatDrawableManager {
 
     private Drawable createDrawableIfNeeded(@NonNull Context context,
             @DrawableRes final int resId) {
-        if (mTypedValue == null) {
-            mTypedValue = new TypedValue();
-        }
-        final TypedValue tv = mTypedValue;
+        final TypedValue tv = new TypedValue();
         context.getResources().getValue(resId, tv, true);
         final long key = createCacheKey(tv);
 
@@ -307,27 +311,19 @@ public final class AppCompatDrawableManager {
 
     private Drawable loadDrawableFromDelegates(@NonNull Context context, @DrawableRes int resId) {
         if (mDelegates != null && !mDelegates.isEmpty()) {
-            if (mKnownDrawableIdTags != null) {
-                final String cachedTagName = mKnownDrawableIdTags.get(resId);
-                if (SKIP_DRAWABLE_TAG.equals(cachedTagName)
-                        || (cachedTagName != null && mDelegates.get(cachedTagName) == null)) {
-                    // If we don't have a delegate for the drawable tag, or we've been set to
-                    // skip it, fail fast and return null
-                    if (DEBUG) {
-                        Log.d(TAG, "[loadDrawableFromDelegates] Skipping drawable: "
-                                + context.getResources().getResourceName(resId));
-                    }
-                    return null;
+            final String cachedTagName = getKnownDrawableIdTag(resId);
+            if (SKIP_DRAWABLE_TAG.equals(cachedTagName)
+                    || (cachedTagName != null && mDelegates.get(cachedTagName) == null)) {
+                // If we don't have a delegate for the drawable tag, or we've been set to
+                // skip it, fail fast and return null
+                if (DEBUG) {
+                    Log.d(TAG, "[loadDrawableFromDelegates] Skipping drawable: "
+                            + context.getResources().getResourceName(resId));
                 }
-            } else {
-                // Create an id cache as we'll need one later
-                mKnownDrawableIdTags = new SparseArray<>();
+                return null;
             }
 
-            if (mTypedValue == null) {
-                mTypedValue = new TypedValue();
-            }
-            final TypedValue tv = mTypedValue;
+            final TypedValue tv = new TypedValue();
             final Resources res = context.getResources();
             res.getValue(resId, tv, true);
 
@@ -359,7 +355,7 @@ public final class AppCompatDrawableManager {
 
                     final String tagName = parser.getName();
                     // Add the tag name to the cache
-                    mKnownDrawableIdTags.append(resId, tagName);
+                    addKnownDrawableIdTag(resId, tagName);
 
                     // Now try and find a delegate for the tag name and inflate if found
                     final InflateDelegate delegate = mDelegates.get(tagName);
@@ -382,7 +378,7 @@ public final class AppCompatDrawableManager {
             if (dr == null) {
                 // If we reach here then the delegate inflation of the resource failed. Mark it as
                 // bad so we skip the id next time
-                mKnownDrawableIdTags.append(resId, SKIP_DRAWABLE_TAG);
+                addKnownDrawableIdTag(resId, SKIP_DRAWABLE_TAG);
             }
             return dr;
         }
@@ -390,41 +386,32 @@ public final class AppCompatDrawableManager {
         return null;
     }
 
-    private Drawable getCachedDrawable(@NonNull final Context context, final long key) {
-        synchronized (mDrawableCacheLock) {
-            final LongSparseArray<WeakReference<ConstantState>> cache
-                    = mDrawableCaches.get(context);
-            if (cache == null) {
-                return null;
-            }
+    private String getKnownDrawableIdTag(@DrawableRes int resId) {
+        synchronized (mKnownDrawableIdTagsLock) {
+            return mKnownDrawableIdTags != null ? mKnownDrawableIdTags.get(resId) : null;
+        }
+    }
 
-            final WeakReference<ConstantState> wr = cache.get(key);
-            if (wr != null) {
-                // We have the key, and the secret
-                ConstantState entry = wr.get();
-                if (entry != null) {
-                    return entry.newDrawable(context.getResources());
-                } else {
-                    // Our entry has been purged
-                    cache.delete(key);
-                }
+    private void addKnownDrawableIdTag(@DrawableRes int resId, @NonNull String tagName) {
+        synchronized (mKnownDrawableIdTagsLock) {
+            if (mKnownDrawableIdTags == null) {
+                // Create an id cache on first use
+                mKnownDrawableIdTags = new SparseArray<>();
             }
+            mKnownDrawableIdTags.append(resId, tagName);
         }
-        return null;
+    }
+
+    private Drawable getCachedDrawable(@NonNull final Context context, final long key) {
+        final ConstantState entry = mDrawableCache.get(context, key);
+        return entry != null ? entry.newDrawable(context.getResources()) : null;
     }
 
     private boolean addDrawableToCache(@NonNull final Context context, final long key,
             @NonNull final Drawable drawable) {
         final ConstantState cs = drawable.getConstantState();
         if (cs != null) {
-            synchronized (mDrawableCacheLock) {
-                LongSparseArray<WeakReference<ConstantState>> cache = mDrawableCaches.get(context);
-                if (cache == null) {
-                    cache = new LongSparseArray<>();
-                    mDrawableCaches.put(context, cache);
-                }
-                cache.put(key, new WeakReference<ConstantState>(cs));
-            }
+            mDrawableCache.put(context, key, cs);
             return true;
         }
         return false;
@@ -561,24 +548,12 @@ public final class AppCompatDrawableManager {
     }
 
     private ColorStateList getTintListFromCache(@NonNull Context context, @DrawableRes int resId) {
-        if (mTintLists != null) {
-            final SparseArray<ColorStateList> tints = mTintLists.get(context);
-            return tints != null ? tints.get(resId) : null;
-        }
-        return null;
+        return mTintListCache.get(context, resId);
     }
 
     private void addTintListToCache(@NonNull Context context, @DrawableRes int resId,
             @NonNull ColorStateList tintList) {
-        if (mTintLists == null) {
-            mTintLists = new WeakHashMap<>();
-        }
-        SparseArray<ColorStateList> themeTints = mTintLists.get(context);
-        if (themeTints == null) {
-            themeTints = new SparseArray<>();
-            mTintLists.put(context, themeTints);
-        }
-        themeTints.append(resId, tintList);
+        mTintListCache.put(context, resId, tintList);
     }
 
     private ColorStateList createDefaultButtonColorStateList(@NonNull Context context) {
@@ -626,7 +601,7 @@ public final class AppCompatDrawableManager {
         return new ColorStateList(states, colors);
     }
 
-    private static class ColorFilterLruCache extends LruCache<Integer, PorterDuffColorFilter> {
+    private static class ColorFilterLruCache extends LruCache<Long, PorterDuffColorFilter> {
 
         public ColorFilterLruCache(int maxSize) {
             super(maxSize);
@@ -640,11 +615,181 @@ public final class AppCompatDrawableManager {
             return put(generateCacheKey(color, mode), filter);
         }
 
-        private static int generateCacheKey(int color, PorterDuff.Mode mode) {
-            int hashCode = 1;
-            hashCode = 31 * hashCode + color;
-            hashCode = 31 * hashCode + mode.hashCode();
-            return hashCode;
+        // Unlike a hash of the color and the mode, this key is unique for each pair of them.
+        private static long generateCacheKey(int color, PorterDuff.Mode mode) {
+            return ((long) mode.ordinal() << 32) | (color & 0xffffffffL);
+        }
+    }
+
+    /**
+     * A cache of resources loaded with a theme, keyed by the resource, the theme and the
+     * configuration rather than by the {@link Context}, so that the contexts using the same theme
+     * in the same configuration share their entries. From API 23 the themes are compared by the
+     * styles applied to them, which lets a recreated activity find the entries of the previous
+     * one; before that they are compared by identity.
+     * <p>
+     * The values are weakly referenced, like the drawables of the framework's caches. The cache
+     * can be used from any thread without locking.
+     */
+    static class ThemedResourceCache<V> {
+        private final ConcurrentHashMap<Key, Entry<V>> mEntries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<V> mQueue = new ReferenceQueue<>();
+        private final AtomicInteger mHitCount = new AtomicInteger();
+        private final AtomicInteger mMissCount = new AtomicInteger();
+
+        // The copies of the themes and configurations of the keys, shared by the keys using the
+        // same one. They are released by purge() once no key uses them.
+        private final ConcurrentHashMap<Resources.Theme, Resources.Theme> mThemes =
+                new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Configuration, Configuration> mConfigurations =
+                new ConcurrentHashMap<>();
+
+        V get(@NonNull Context context, long resourceKey) {
+            final Entry<V> entry = mEntries.get(new Key(resourceKey, context.getTheme(),
+                    context.getResources().getConfiguration()));
+            final V value = entry != null ? entry.get() : null;
+            if (value != null) {
+                mHitCount.incrementAndGet();
+            } else {
+                mMissCount.incrementAndGet();
+            }
+            return value;
+        }
+
+        void put(@NonNull Context context, long resourceKey, @NonNull V value) {
+            purge();
+            // The stored key must not change when the theme and the configuration of the context
+            // are modified afterwards.
+            final Resources res = context.getResources();
+            Resources.Theme theme = context.getTheme();
+            if (theme != null && Build.VERSION.SDK_INT >= 23) {
+                Resources.Theme copy = mThemes.get(theme);
+                if (copy == null) {
+                    copy = res.newTheme();
+                    copy.setTo(theme);
+                    final Resources.Theme previous = mThemes.putIfAbsent(copy, copy);
+                    if (previous != null) {
+                        copy = previous;
+                    }
+                }
+                theme = copy;
+            }
+            Configuration configuration = mConfigurations.get(res.getConfiguration());
+            if (configuration == null) {
+                configuration = new Configuration(res.getConfiguration());
+                final Configuration previous =
+                        mConfigurations.putIfAbsent(configuration, configuration);
+                if (previous != null) {
+                    configuration = previous;
+                }
+            }
+
+            final Key key = new Key(resourceKey, theme, configuration);
+            mEntries.put(key, new Entry<>(key, value, mQueue));
+        }
+
+        /**
+         * Removes the entries whose values have been garbage collected.
+         */
+        void purge() {
+            boolean removed = false;
+            Reference<? extends V> ref;
+            while ((ref = mQueue.poll()) != null) {
+                final Entry<?> entry = (Entry<?>) ref;
+                removed |= mEntries.remove(entry.mKey, entry);
+            }
+            if (removed) {
+                releaseUnusedCopies();
+            }
+        }
+
+        /**
+         * Removes the copies of the themes and configurations which are no longer used by a key.
+         * A copy removed while a concurrent put() is adding a key with it is only copied again
+         * by the next put(), as the keys compare them by equality.
+         */
+        private void releaseUnusedCopies() {
+            final Set<Object> used =
+                    Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            for (Key key : mEntries.keySet()) {
+                used.add(key.mTheme);
+                used.add(key.mConfiguration);
+            }
+            for (Iterator<Resources.Theme> it = mThemes.values().iterator(); it.hasNext(); ) {
+                if (!used.contains(it.next())) {
+                    it.remove();
+                }
+            }
+            for (Iterator<Configuration> it = mConfigurations.values().iterator();
+                    it.hasNext(); ) {
+                if (!used.contains(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+
+        int size() {
+            return mEntries.size();
+        }
+
+        int copyCount() {
+            return mThemes.size() + mConfigurations.size();
+        }
+
+        int hitCount() {
+            return mHitCount.get();
+        }
+
+        int missCount() {
+            return mMissCount.get();
+        }
+
+        private static class Entry<V> extends WeakReference<V> {
+            final Key mKey;
+
+            Entry(Key key, V value, ReferenceQueue<V> queue) {
+                super(value, queue);
+                mKey = key;
+            }
+        }
+
+        private static class Key {
+            private final long mResourceKey;
+            private final Resources.Theme mTheme;
+            private final Configuration mConfiguration;
+            private final int mHashCode;
+
+            Key(long resourceKey, @Nullable Resources.Theme theme,
+                    @NonNull Configuration configuration) {
+                mResourceKey = resourceKey;
+                mTheme = theme;
+                mConfiguration = configuration;
+
+                int hashCode = (int) (resourceKey ^ (resourceKey >>> 32));
+                hashCode = 31 * hashCode + (theme != null ? theme.hashCode() : 0);
+                hashCode = 31 * hashCode + configuration.hashCode();
+                mHashCode = hashCode;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                final Key other = (Key) o;
+                return mHashCode == other.mHashCode
+                        && mResourceKey == other.mResourceKey
+                        && (mTheme != null ? mTheme.equals(other.mTheme) : other.mTheme == null)
+                        && mConfiguration.equals(other.mConfiguration);
+            }
+
+            @Override
+            public int hashCode() {
+                return mHashCode;
+            }
         }
     }
 
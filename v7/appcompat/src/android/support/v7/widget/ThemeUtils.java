@@ -36,7 +36,7 @@ class ThemeUtils {
             -android.R.attr.state_pressed, -android.R.attr.state_focused};
     static final int[] EMPTY_STATE_SET = new int[0];
 
-    private static final int[] TEMP_ARRAY = new int[1];
+    private static final ThreadLocal<int[]> TL_TEMP_ARRAY = new ThreadLocal<>();
 
     public static ColorStateList createDisabledStateList(int textColor, int disabledTextColor) {
         // Now create a new ColorStateList with the default color, and the new disabled
@@ -59,8 +59,9 @@ class ThemeUtils {
     }
 
     public static int getThemeAttrColor(Context context, int attr) {
-        TEMP_ARRAY[0] = attr;
-        TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, null, TEMP_ARRAY);
+        final int[] tempArray = getTempArray();
+        tempArray[0] = attr;
+        TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, null, tempArray);
         try {
             return a.getColor(0, 0);
         } finally {
@@ -69,8 +70,9 @@ class ThemeUtils {
     }
 
     public static ColorStateList getThemeAttrColorStateList(Context context, int attr) {
-        TEMP_ARRAY[0] = attr;
-        TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, null, TEMP_ARRAY);
+        final int[] tempArray = getTempArray();
+        tempArray[0] = attr;
+        TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, null, tempArray);
         try {
             return a.getColorStateList(0);
         } finally {
@@ -104,6 +106,15 @@ class ThemeUtils {
         return typedValue;
     }
 
+    private static int[] getTempArray() {
+        int[] tempArray = TL_TEMP_ARRAY.get();
+        if (tempArray == null) {
+            tempArray = new int[1];
+            TL_TEMP_ARRAY.set(tempArray);
+        }
+        return tempArray;
+    }
+
     static int getThemeAttrColor(Context context, int attr, float alpha) {
         final int color = getThemeAttrColor(context, attr);
         final int originalAlpha = Color.alpha(color);
@@ -25,6 +25,7 @@ import android.content.res.Resources;
 import android.support.test.annotation.UiThreadTest;
 import android.support.test.filters.SdkSuppress;
 import android.support.test.filters.SmallTest;
+import android.support.v4.view.AsyncLayoutInflater;
 import android.support.v7.appcompat.test.R;
 import android.support.v7.custom.ContextWrapperFrameLayout;
 import android.support.v7.widget.AppCompatAutoCompleteTextView;
@@ -36,6 +37,7 @@ import android.support.v7.widget.AppCompatMultiAutoCompleteTextView;
 import android.support.v7.widget.AppCompatRadioButton;
 import android.support.v7.widget.AppCompatRatingBar;
 import android.support.v7.widget.AppCompatSpinner;
+import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
@@ -46,6 +48,9 @@ import android.widget.LinearLayout;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class LayoutInflaterFactoryTestCase
         extends BaseInstrumentationTestCase<LayoutInflaterFactoryTestActivity> {
 
@@ -200,6 +205,80 @@ public class LayoutInflaterFactoryTestCase
         assertTrue(getActivity().wasDeclarativeOnClickCalled());
     }
 
+    @UiThreadTest
+    @Test
+    @SmallTest
+    public void testRegisteredViewFactory() {
+        final String name = ContextWrapperFrameLayout.class.getName();
+        final int[] created = new int[1];
+        ViewFactoryRegistry.registerViewFactory(name, new ViewFactoryRegistry.ViewFactory() {
+            @Override
+            public View createView(Context context, AttributeSet attrs) {
+                created[0]++;
+                return new ContextWrapperFrameLayout(context, attrs);
+            }
+        });
+        try {
+            verifyAppCompatWidgetInflation(R.layout.layout_contextwrapperparent_imageview_vector,
+                    ContextWrapperFrameLayout.class);
+            assertEquals(1, created[0]);
+        } finally {
+            ViewFactoryRegistry.registerViewFactory(name, null);
+        }
+    }
+
+    @UiThreadTest
+    @Test
+    @SmallTest
+    public void testRegisteredOnClickHandler() {
+        final boolean[] handled = new boolean[1];
+        ViewFactoryRegistry.registerOnClickHandler(LayoutInflaterFactoryTestActivity.class,
+                "declarativeOnClick", new ViewFactoryRegistry.OnClickHandler() {
+                    @Override
+                    public void onClick(Context target, View view) {
+                        handled[0] = true;
+                        ((LayoutInflaterFactoryTestActivity) target).declarativeOnClick(view);
+                    }
+                });
+        try {
+            LayoutInflater inflater = LayoutInflater.from(getActivity());
+            View view = inflater.inflate(R.layout.layout_button_themed_onclick, null);
+
+            assertTrue(view.performClick());
+            assertTrue(handled[0]);
+            assertTrue(getActivity().wasDeclarativeOnClickCalled());
+        } finally {
+            ViewFactoryRegistry.registerOnClickHandler(LayoutInflaterFactoryTestActivity.class,
+                    "declarativeOnClick", null);
+        }
+    }
+
+    @Test
+    @SmallTest
+    public void testAsyncInflation() throws Throwable {
+        final LayoutInflaterFactoryTestActivity activity = mActivityTestRule.getActivity();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final View[] inflated = new View[1];
+        mActivityTestRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                activity.getDelegate().createAsyncLayoutInflater(activity).inflate(
+                        R.layout.layout_button, null,
+                        new AsyncLayoutInflater.OnInflateFinishedListener() {
+                            @Override
+                            public void onInflateFinished(View view, int resid,
+                                    ViewGroup parent) {
+                                inflated[0] = view;
+                                latch.countDown();
+                            }
+                        });
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame("View is AppCompatButton", AppCompatButton.class, inflated[0].getClass());
+    }
+
     private void verifyAppCompatWidgetInflation(final int layout, final Class<?> expectedClass) {
         LayoutInflater inflater = LayoutInflater.from(getActivity());
         View view = inflater.inflate(layout, null);
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.support.test.filters.SmallTest;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.app.BaseInstrumentationTestCase;
+import android.support.v7.appcompat.test.R;
+import android.view.ContextThemeWrapper;
+
+import org.junit.Test;
+
+@SmallTest
+public class AppCompatDrawableManagerTest extends BaseInstrumentationTestCase<AppCompatActivity> {
+
+    public AppCompatDrawableManagerTest() {
+        super(AppCompatActivity.class);
+    }
+
+    @Test
+    public void testTintListCacheIsSharedByContextsWithSameTheme() {
+        final AppCompatDrawableManager manager = AppCompatDrawableManager.get();
+        final Context context = getActivity();
+        final ColorStateList tint =
+                manager.getTintList(context, R.drawable.abc_ic_menu_copy_mtrl_am_alpha);
+        assertNotNull(tint);
+
+        final int hits = manager.mTintListCache.hitCount();
+        assertSame(tint, manager.getTintList(context, R.drawable.abc_ic_menu_copy_mtrl_am_alpha));
+        assertEquals(hits + 1, manager.mTintListCache.hitCount());
+
+        // Another context gets its own tint list for another theme.
+        final Context otherContext =
+                new ContextThemeWrapper(context, R.style.MagentaThemeOverlay);
+        assertNotSame(tint,
+                manager.getTintList(otherContext, R.drawable.abc_ic_menu_copy_mtrl_am_alpha));
+    }
+
+    @Test
+    public void testPurgeReleasesThemeAndConfigurationCopies() throws InterruptedException {
+        final AppCompatDrawableManager.ThemedResourceCache<Object> cache =
+                new AppCompatDrawableManager.ThemedResourceCache<>();
+        cache.put(getActivity(), 1, new Object());
+        assertEquals(1, cache.size());
+        assertTrue(cache.copyCount() > 0);
+
+        // The value is only weakly referenced, so it goes away with its entry and copies.
+        for (int i = 0; i < 10 && cache.size() > 0; i++) {
+            Runtime.getRuntime().gc();
+            Thread.sleep(10);
+            cache.purge();
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.copyCount());
+    }
+
+    @Test
+    public void testColorFilterCacheDistinguishesModes() {
+        final int color = Color.RED;
+        assertSame(AppCompatDrawableManager.getPorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN),
+                AppCompatDrawableManager.getPorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN));
+        assertNotSame(
+                AppCompatDrawableManager.getPorterDuffColorFilter(color, PorterDuff.Mode.SRC_IN),
+                AppCompatDrawableManager.getPorterDuffColorFilter(color, PorterDuff.Mode.MULTIPLY));
+    }
+}
@@ -22,6 +22,7 @@ import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -34,6 +35,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 @RunWith(AndroidJUnit4.class)
 public class BucketTests {
@@ -178,4 +180,42 @@ public class BucketTests {
         assertCloseColors(Color.BLUE, swatch.getRgb());
     }
 
+    @Test
+    @SmallTest
+    public void testPixelsMatchBitmap() {
+        final Bitmap sample = loadSampleBitmap();
+        final int width = sample.getWidth();
+        final int height = sample.getHeight();
+        final int[] pixels = new int[width * height];
+        sample.getPixels(pixels, 0, width, 0, 0, width, height);
+        final int[] copy = pixels.clone();
+
+        final Palette palette = new Palette.Builder(pixels, 0, width, width, height)
+                .resizeBitmapArea(-1)
+                .generate();
+        final Palette expected = Palette.from(sample).resizeBitmapArea(-1).generate();
+
+        assertEquals(expected.getSwatches(), palette.getSwatches());
+        assertTrue("Pixels should not be modified", Arrays.equals(copy, pixels));
+    }
+
+    @Test
+    @SmallTest
+    public void testHistogramRoundTrip() {
+        final Bitmap sample = loadSampleBitmap();
+        final int width = sample.getWidth();
+        final int height = sample.getHeight();
+        final int[] pixels = new int[width * height];
+        sample.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        final ColorHistogram histogram =
+                ColorHistogram.fromPixels(pixels, 0, width, width, height);
+        assertEquals(width * height, histogram.getPopulation());
+
+        final ColorHistogram restored = ColorHistogram.fromByteArray(histogram.toByteArray());
+        assertEquals(histogram.getColorCount(), restored.getColorCount());
+        assertEquals(new Palette.Builder(histogram).generate().getSwatches(),
+                new Palette.Builder(restored).generate().getSwatches());
+    }
+
 }
@@ -47,6 +47,24 @@ public class ConsistencyTest {
         }
     }
 
+    @Test
+    @MediumTest
+    public void testParallelConsistency() {
+        Palette lastPalette = null;
+        final Bitmap bitmap = loadSampleBitmap();
+
+        for (int i = 0; i < NUMBER_TRIALS; i++) {
+            Palette newPalette = Palette.from(bitmap)
+                    .resizeBitmapArea(-1)
+                    .setParallelism(4)
+                    .generate();
+            if (lastPalette != null) {
+                assetPalettesEqual(lastPalette, newPalette);
+            }
+            lastPalette = newPalette;
+        }
+    }
+
     private static void assetPalettesEqual(Palette p1, Palette p2) {
         assertEquals(p1.getVibrantSwatch(), p2.getVibrantSwatch());
         assertEquals(p1.getLightVibrantSwatch(), p2.getLightVibrantSwatch());
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PaletteCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(InstrumentationRegistry.getContext().getCacheDir(), "palettes");
+    }
+
+    @After
+    public void tearDown() {
+        new PaletteCache(1, mDirectory, 1024).clear();
+    }
+
+    @Test
+    public void testMemoryHit() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteCache cache = new PaletteCache(4);
+
+        assertNull(cache.get("photo", Palette.from(sample)));
+        final Palette palette = cache.generate("photo", Palette.from(sample));
+        assertSame(palette, cache.get("photo", Palette.from(sample)));
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void testParametersArePartOfKey() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteCache cache = new PaletteCache(4);
+
+        cache.generate("photo", Palette.from(sample));
+        assertNull(cache.get("photo", Palette.from(sample).maximumColorCount(4)));
+        assertNull(cache.get("photo", Palette.from(sample).clearFilters()));
+        assertNull(cache.get("photo", Palette.from(sample).setRegion(0, 0, 10, 10)));
+        assertNull(cache.get("photo", Palette.from(sample).setParallelism(2)));
+    }
+
+    @Test
+    public void testQuantizerParametersArePartOfKey() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteCache cache = new PaletteCache(4);
+        final Quantizer wu = new WuQuantizer();
+
+        final Palette palette = cache.generate("photo",
+                Palette.from(sample).setQuantizer(new KMeansQuantizer(wu, 2)));
+        assertSame(palette, cache.get("photo",
+                Palette.from(sample).setQuantizer(new KMeansQuantizer(new WuQuantizer(), 2))));
+        assertNull(cache.get("photo",
+                Palette.from(sample).setQuantizer(new KMeansQuantizer(wu, 3))));
+        assertNull(cache.get("photo", Palette.from(sample).setQuantizer(wu)));
+        assertNull(cache.get("photo", Palette.from(sample)));
+    }
+
+    @Test
+    public void testQuantizerWithoutKeyIsNotCached() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteCache cache = new PaletteCache(4);
+        final Quantizer quantizer = new Quantizer() {
+            @NonNull
+            @Override
+            public List<Palette.Swatch> quantize(@NonNull ColorHistogram histogram,
+                    int maxColors) {
+                return new WuQuantizer().quantize(histogram, maxColors);
+            }
+
+            @Override
+            public String getCacheKey() {
+                return null;
+            }
+        };
+
+        cache.generate("photo", Palette.from(sample).setQuantizer(quantizer));
+        assertNull(cache.get("photo", Palette.from(sample).setQuantizer(quantizer)));
+        // Nor is a k-means quantizer seeded by it
+        cache.generate("photo",
+                Palette.from(sample).setQuantizer(new KMeansQuantizer(quantizer, 2)));
+        assertNull(cache.get("photo",
+                Palette.from(sample).setQuantizer(new KMeansQuantizer(quantizer, 2))));
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    public void testCustomFiltersAreNotCached() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteCache cache = new PaletteCache(4, mDirectory, 1024 * 1024);
+        final Palette.Filter filter = new Palette.Filter() {
+            @Override
+            public boolean isAllowed(int rgb, float[] hsl) {
+                return hsl[1] > 0.1f;
+            }
+        };
+
+        final Palette palette = cache.generate("photo", Palette.from(sample).addFilter(filter));
+        assertNotNull(palette);
+        assertNull(cache.get("photo", Palette.from(sample).addFilter(filter)));
+        cache.put("photo", Palette.from(sample).addFilter(filter), palette);
+        assertNull(cache.get("photo", Palette.from(sample).addFilter(filter)));
+        assertNotSame(palette, cache.generate("photo", Palette.from(sample).addFilter(filter)));
+        assertEquals(0, cache.hitCount());
+        assertEquals(0, cache.diskHitCount());
+        assertEquals(4, cache.missCount());
+
+        // The default filters alone are still cached
+        final Palette defaultPalette = cache.generate("photo", Palette.from(sample));
+        assertSame(defaultPalette, cache.get("photo", Palette.from(sample)));
+    }
+
+    @Test
+    public void testDiskHitAcrossInstances() {
+        final Bitmap sample = loadSampleBitmap();
+        final Palette palette = new PaletteCache(4, mDirectory, 1024 * 1024)
+                .generate("photo", Palette.from(sample));
+
+        final PaletteCache cache = new PaletteCache(4, mDirectory, 1024 * 1024);
+        final Palette restored = cache.get("photo", Palette.from(sample));
+        assertNotNull(restored);
+        assertEquals(1, cache.diskHitCount());
+        assertEquals(palette.getSwatches(), restored.getSwatches());
+        assertEquals(palette.getVibrantSwatch(), restored.getVibrantSwatch());
+        assertEquals(palette.getDarkMutedSwatch(), restored.getDarkMutedSwatch());
+    }
+}
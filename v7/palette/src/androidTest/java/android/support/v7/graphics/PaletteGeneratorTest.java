@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class PaletteGeneratorTest {
+
+    private PaletteGenerator mGenerator;
+
+    @After
+    public void tearDown() {
+        if (mGenerator != null) {
+            mGenerator.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestsWithSameKeyAreCoalesced() throws InterruptedException {
+        final Bitmap sample = loadSampleBitmap();
+        mGenerator = new PaletteGenerator(1, 10);
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Palette[] palettes = new Palette[2];
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            mGenerator.generate("photo", Palette.from(sample),
+                    new Palette.PaletteAsyncListener() {
+                        @Override
+                        public void onGenerated(Palette palette) {
+                            palettes[index] = palette;
+                            latch.countDown();
+                        }
+                    });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(palettes[0]);
+        assertSame(palettes[0], palettes[1]);
+        assertEquals(1, mGenerator.getCoalescedCount());
+        assertEquals(2, mGenerator.getCompletedCount());
+    }
+
+    @Test
+    public void testCancelledRequestIsNotDelivered() throws InterruptedException {
+        final Bitmap sample = loadSampleBitmap();
+        mGenerator = new PaletteGenerator(1, 10);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] cancelledCalled = new boolean[1];
+        final PaletteGenerator.Request cancelled = mGenerator.generate("first",
+                Palette.from(sample), new Palette.PaletteAsyncListener() {
+                    @Override
+                    public void onGenerated(Palette palette) {
+                        cancelledCalled[0] = true;
+                    }
+                });
+        cancelled.cancel();
+        final PaletteGenerator.Request request = mGenerator.generate("second",
+                Palette.from(sample), new Palette.PaletteAsyncListener() {
+                    @Override
+                    public void onGenerated(Palette palette) {
+                        latch.countDown();
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelled.isCancelled());
+        assertFalse(cancelled.isDone());
+        assertFalse(cancelledCalled[0]);
+        assertTrue(request.isDone());
+    }
+
+    @Test
+    public void testFailedGenerationIsDeliveredAsNull() throws InterruptedException {
+        final Bitmap sample = loadSampleBitmap();
+        mGenerator = new PaletteGenerator(1, 10);
+        final Palette.Builder builder = Palette.from(sample).addFilter(new Palette.Filter() {
+            @Override
+            public boolean isAllowed(int rgb, float[] hsl) {
+                throw new IllegalStateException("Failing filter");
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Palette[] palettes = new Palette[2];
+        final PaletteGenerator.Request[] requests = new PaletteGenerator.Request[2];
+        for (int i = 0; i < 2; i++) {
+            final int index = i;
+            requests[i] = mGenerator.generate("failing", builder,
+                    new Palette.PaletteAsyncListener() {
+                        @Override
+                        public void onGenerated(Palette palette) {
+                            palettes[index] = palette;
+                            latch.countDown();
+                        }
+                    });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(palettes[0]);
+        assertNull(palettes[1]);
+        assertTrue(requests[0].isDone());
+        assertTrue(requests[1].isDone());
+        assertFalse(requests[0].isCancelled());
+        assertEquals(1, mGenerator.getFailedCount());
+        assertEquals(2, mGenerator.getCompletedCount());
+
+        // The key can be requested again
+        final CountDownLatch retryLatch = new CountDownLatch(1);
+        mGenerator.generate("failing", Palette.from(sample), new Palette.PaletteAsyncListener() {
+            @Override
+            public void onGenerated(Palette palette) {
+                palettes[0] = palette;
+                retryLatch.countDown();
+            }
+        });
+        assertTrue(retryLatch.await(5, TimeUnit.SECONDS));
+        assertNotNull(palettes[0]);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import static android.support.v7.graphics.TestUtils.assertCloseColors;
+import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PaletteTrackerTest {
+
+    @Test
+    public void testSameFrameIsNotQuantizedAgain() {
+        final Bitmap sample = loadSampleBitmap();
+        final PaletteTracker tracker = new PaletteTracker();
+
+        final Palette palette = tracker.update(sample);
+        assertSame(palette, tracker.update(sample));
+        assertSame(palette, tracker.update(sample));
+        assertEquals(3, tracker.getFrameCount());
+        assertEquals(1, tracker.getQuantizeCount());
+    }
+
+    @Test
+    public void testNewContentIsTracked() {
+        final Bitmap frame = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(frame);
+        final PaletteTracker tracker = new PaletteTracker().setDecay(0f);
+
+        canvas.drawColor(Color.BLUE);
+        final Palette blue = tracker.update(frame);
+        assertCloseColors(Color.BLUE, blue.getDominantColor(Color.BLACK));
+
+        canvas.drawColor(Color.GREEN);
+        final Palette green = tracker.update(frame);
+        assertNotSame(blue, green);
+        assertCloseColors(Color.GREEN, green.getDominantColor(Color.BLACK));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the speed and the quality of the quantizers over a small corpus of images. Quality is
+ * measured as the mean squared RGB distance between each pixel and its closest swatch. The
+ * results are logged under the {@value #LOG_TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class QuantizerBenchmarkTest {
+
+    private static final String LOG_TAG = "QuantizerBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testCompareQuantizers() {
+        final Quantizer wu = new WuQuantizer();
+        final Quantizer[] quantizers = {null, wu, new KMeansQuantizer(wu, 10)};
+        final String[] names = {"MedianCut", "Wu", "Wu+KMeans"};
+
+        for (Bitmap image : loadCorpus()) {
+            final ColorHistogram histogram = getHistogram(image);
+            final double[] errors = new double[quantizers.length];
+            for (int q = 0; q < quantizers.length; q++) {
+                final Palette.Builder builder = new Palette.Builder(histogram)
+                        .clearFilters()
+                        .setQuantizer(quantizers[q]);
+                List<Palette.Swatch> swatches = null;
+                long start = 0;
+                for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+                    if (i == WARMUP_ITERATIONS) {
+                        start = System.nanoTime();
+                    }
+                    swatches = builder.generate().getSwatches();
+                }
+                final long averageNanos = (System.nanoTime() - start) / ITERATIONS;
+
+                assertFalse(swatches.isEmpty());
+                errors[q] = getMeanSquaredError(histogram, swatches);
+                Log.i(LOG_TAG, String.format("%dx%d %s: %d swatches, %.1f us, error %.1f",
+                        image.getWidth(), image.getHeight(), names[q], swatches.size(),
+                        averageNanos / 1000f, errors[q]));
+            }
+            // Refinement never moves pixels further from their swatch, give or take the
+            // rounding of the swatch colors
+            assertTrue(errors[2] <= errors[1] + 1);
+        }
+    }
+
+    private static List<Bitmap> loadCorpus() {
+        final List<Bitmap> corpus = new ArrayList<>();
+        corpus.add(loadSampleBitmap());
+
+        final Bitmap gradient = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+        final Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, 200, 200, Color.MAGENTA, Color.CYAN,
+                Shader.TileMode.CLAMP));
+        new Canvas(gradient).drawPaint(paint);
+        corpus.add(gradient);
+
+        final Bitmap blocks = Bitmap.createBitmap(120, 120, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(blocks);
+        final int[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.DKGRAY};
+        for (int i = 0; i < colors.length; i++) {
+            paint.setShader(null);
+            paint.setColor(colors[i]);
+            canvas.drawRect(i * 24, 0, (i + 1) * 24, 120, paint);
+        }
+        corpus.add(blocks);
+        return corpus;
+    }
+
+    private static ColorHistogram getHistogram(Bitmap image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = new int[width * height];
+        image.getPixels(pixels, 0, width, 0, 0, width, height);
+        return ColorHistogram.fromPixels(pixels, 0, width, width, height);
+    }
+
+    private static double getMeanSquaredError(ColorHistogram histogram,
+            List<Palette.Swatch> swatches) {
+        double error = 0;
+        for (int i = 0; i < histogram.getColorCount(); i++) {
+            final int color = histogram.getColor(i);
+            int minDistance = Integer.MAX_VALUE;
+            for (Palette.Swatch swatch : swatches) {
+                final int rgb = swatch.getRgb();
+                final int dr = Color.red(color) - Color.red(rgb);
+                final int dg = Color.green(color) - Color.green(rgb);
+                final int db = Color.blue(color) - Color.blue(rgb);
+                minDistance = Math.min(minDistance, dr * dr + dg * dg + db * db);
+            }
+            error += minDistance * (double) histogram.getPopulation(i);
+        }
+        return error / histogram.getPopulation();
+    }
+}
@@ -18,6 +18,7 @@ package android.support.v7.graphics;
 
 import android.graphics.Color;
 import android.support.v4.graphics.ColorUtils;
+import android.support.v4.util.ArrayPool;
 import android.support.v7.graphics.Palette.Swatch;
 import android.util.TimingLogger;
 
@@ -27,6 +28,13 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An color quantizer based on the Median-cut algorithm, but optimized for picking out distinct
@@ -40,6 +48,11 @@ import java.util.PriorityQueue;
  * have roughly the same population, where this quantizer divides boxes based on their color volume.
  * This means that the color space is divided into distinct colors, rather than representative
  * colors.
+ *
+ * When created with a parallelism greater than 1, the histogram is built from stripes of the pixels
+ * on several threads and then merged, and the largest boxes are split in rounds, several at a
+ * time. Since boxes are then picked per round rather than one by one, the result can differ
+ * slightly from the serial one.
  */
 final class ColorCutQuantizer {
 
@@ -53,11 +66,17 @@ final class ColorCutQuantizer {
     private static final int QUANTIZE_WORD_WIDTH = 5;
     private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
 
+    /** Below this many pixels per thread, building the histogram in parallel is not worth it. */
+    private static final int MIN_PIXELS_PER_STRIPE = 16 * 1024;
+
+    private static Executor sExecutor;
+
     final int[] mColors;
-    final int[] mHistogram;
+    int[] mHistogram;
     final List<Swatch> mQuantizedColors;
     final TimingLogger mTimingLogger;
     final Palette.Filter[] mFilters;
+    final int mParallelism;
 
     private final float[] mTempHsl = new float[3];
 
@@ -69,16 +88,56 @@ final class ColorCutQuantizer {
      * @param filters Set of filters to use in the quantization stage
      */
     ColorCutQuantizer(final int[] pixels, final int maxColors, final Palette.Filter[] filters) {
+        this(pixels, pixels.length, maxColors, filters, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pixels histogram representing an image's pixel data
+     * @param pixelCount The number of pixels to read from the start of {@code pixels}.
+     * @param maxColors The maximum number of colors that should be in the result palette.
+     * @param filters Set of filters to use in the quantization stage
+     * @param parallelism The maximum number of threads to use, 1 to run serially.
+     */
+    ColorCutQuantizer(final int[] pixels, final int pixelCount, final int maxColors,
+            final Palette.Filter[] filters, final int parallelism) {
+        this(null, pixels, pixelCount, maxColors, filters, parallelism);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param histogram precomputed histogram of an image's pixel data
+     * @param maxColors The maximum number of colors that should be in the result palette.
+     * @param filters Set of filters to use in the quantization stage
+     * @param parallelism The maximum number of threads to use, 1 to run serially.
+     */
+    ColorCutQuantizer(final ColorHistogram histogram, final int maxColors,
+            final Palette.Filter[] filters, final int parallelism) {
+        this(histogram, null, 0, maxColors, filters, parallelism);
+    }
+
+    private ColorCutQuantizer(final ColorHistogram histogram, final int[] pixels,
+            final int pixelCount, final int maxColors, final Palette.Filter[] filters,
+            final int parallelism) {
         mTimingLogger = LOG_TIMINGS ? new TimingLogger(LOG_TAG, "Creation") : null;
         mFilters = filters;
-
-        final int[] hist = mHistogram = new int[1 << (QUANTIZE_WORD_WIDTH * 3)];
-        for (int i = 0; i < pixels.length; i++) {
-            final int quantizedColor = quantizeFromRgb888(pixels[i]);
-            // Now update the pixel value to the quantized value
-            pixels[i] = quantizedColor;
-            // And update the histogram
-            hist[quantizedColor]++;
+        mParallelism = Math.max(1, parallelism);
+
+        // The histogram is only needed while quantizing, so borrow it from the shared pool
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int histogramSize = 1 << (QUANTIZE_WORD_WIDTH * 3);
+        final int[] hist = mHistogram = arrayPool.acquireIntArray(histogramSize);
+        final int stripes = Math.min(mParallelism, pixelCount / MIN_PIXELS_PER_STRIPE);
+        if (histogram != null) {
+            Arrays.fill(hist, 0, histogramSize, 0);
+            histogram.addTo(hist);
+        } else if (stripes > 1) {
+            buildHistogramInParallel(pixels, pixelCount, hist, histogramSize, stripes);
+        } else {
+            Arrays.fill(hist, 0, histogramSize, 0);
+            buildHistogram(pixels, 0, pixelCount, hist);
         }
 
         if (LOG_TIMINGS) {
@@ -87,7 +146,7 @@ final class ColorCutQuantizer {
 
         // Now let's count the number of distinct colors
         int distinctColorCount = 0;
-        for (int color = 0; color < hist.length; color++) {
+        for (int color = 0; color < histogramSize; color++) {
             if (hist[color] > 0 && shouldIgnoreColor(color)) {
                 // If we should ignore the color, set the population to 0
                 hist[color] = 0;
@@ -105,7 +164,7 @@ final class ColorCutQuantizer {
         // Now lets go through create an array consisting of only distinct colors
         final int[] colors = mColors = new int[distinctColorCount];
         int distinctColorIndex = 0;
-        for (int color = 0; color < hist.length; color++) {
+        for (int color = 0; color < histogramSize; color++) {
             if (hist[color] > 0) {
                 colors[distinctColorIndex++] = color;
             }
@@ -135,6 +194,60 @@ final class ColorCutQuantizer {
                 mTimingLogger.dumpToLog();
             }
         }
+
+        mHistogram = null;
+        arrayPool.release(hist);
+    }
+
+    /**
+     * Quantizes the pixels in {@code [from, to)} and counts them in {@code hist}. The pixels
+     * themselves are left untouched, so that callers can pass buffers they still need.
+     */
+    private static void buildHistogram(final int[] pixels, final int from, final int to,
+            final int[] hist) {
+        for (int i = from; i < to; i++) {
+            hist[quantizeFromRgb888(pixels[i])]++;
+        }
+    }
+
+    /**
+     * Builds a partial histogram per stripe of pixels, one of them on the calling thread, and
+     * sums them into {@code hist}.
+     */
+    private static void buildHistogramInParallel(final int[] pixels, final int pixelCount,
+            final int[] hist, final int histogramSize, final int stripes) {
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int[][] partials = new int[stripes][];
+        final CountDownLatch latch = new CountDownLatch(stripes - 1);
+        final int stripeSize = (pixelCount + stripes - 1) / stripes;
+        for (int s = 1; s < stripes; s++) {
+            final int[] partial = partials[s] = arrayPool.acquireIntArray(histogramSize);
+            final int from = s * stripeSize;
+            final int to = Math.min(pixelCount, from + stripeSize);
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Arrays.fill(partial, 0, histogramSize, 0);
+                        buildHistogram(pixels, from, to, partial);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        Arrays.fill(hist, 0, histogramSize, 0);
+        buildHistogram(pixels, 0, Math.min(pixelCount, stripeSize), hist);
+        awaitUninterruptibly(latch);
+
+        for (int s = 1; s < stripes; s++) {
+            final int[] partial = partials[s];
+            for (int color = 0; color < histogramSize; color++) {
+                hist[color] += partial[color];
+            }
+            arrayPool.release(partial);
+        }
     }
 
     /**
@@ -170,6 +283,10 @@ final class ColorCutQuantizer {
      * @param maxSize Maximum amount of boxes to split
      */
     private void splitBoxes(final PriorityQueue<Vbox> queue, final int maxSize) {
+        if (mParallelism > 1) {
+            splitBoxesInParallel(queue, maxSize);
+            return;
+        }
         while (queue.size() < maxSize) {
             final Vbox vbox = queue.poll();
 
@@ -192,6 +309,64 @@ final class ColorCutQuantizer {
         }
     }
 
+    /**
+     * Same as {@link #splitBoxes(PriorityQueue, int)}, but pops up to {@link #mParallelism}
+     * boxes at a time and splits them concurrently. Each box owns a distinct range of
+     * {@link #mColors}, so the splits do not interfere with each other.
+     */
+    private void splitBoxesInParallel(final PriorityQueue<Vbox> queue, final int maxSize) {
+        final Vbox[] boxes = new Vbox[mParallelism];
+        final Vbox[] newBoxes = new Vbox[mParallelism];
+        boolean allSplit = false;
+        while (!allSplit && queue.size() < maxSize) {
+            final int maxCount = Math.min(mParallelism, maxSize - queue.size());
+            int count = 0;
+            while (count < maxCount) {
+                final Vbox vbox = queue.poll();
+                if (vbox == null) {
+                    // Every box is already being split in this round
+                    break;
+                }
+                if (!vbox.canSplit()) {
+                    // Like the serial version, stop once the largest box can not be split
+                    allSplit = true;
+                    break;
+                }
+                boxes[count++] = vbox;
+            }
+            if (count == 0) {
+                break;
+            }
+
+            final CountDownLatch latch = new CountDownLatch(count - 1);
+            for (int i = 1; i < count; i++) {
+                final int index = i;
+                getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            newBoxes[index] = boxes[index].splitBox();
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            newBoxes[0] = boxes[0].splitBox();
+            awaitUninterruptibly(latch);
+
+            for (int i = 0; i < count; i++) {
+                queue.offer(newBoxes[i]);
+                queue.offer(boxes[i]);
+                newBoxes[i] = boxes[i] = null;
+            }
+
+            if (LOG_TIMINGS) {
+                mTimingLogger.addSplit(count + " boxes split");
+            }
+        }
+    }
+
     private List<Swatch> generateAverageColors(Collection<Vbox> vboxes) {
         ArrayList<Swatch> colors = new ArrayList<>(vboxes.size());
         for (Vbox vbox : vboxes) {
@@ -500,6 +675,43 @@ final class ColorCutQuantizer {
         return color & QUANTIZE_WORD_MASK;
     }
 
+    private static synchronized Executor getExecutor() {
+        if (sExecutor == null) {
+            final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger(1);
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            final Thread thread = new Thread(r, "Palette #"
+                                    + mCount.getAndIncrement());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static int modifyWordWidth(int value, int currentWidth, int targetWidth) {
         final int newValue;
         if (targetWidth > currentWidth) {
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * A compact color histogram of an image, as used by {@link Palette} to quantize its colors.
+ * <p>
+ * Colors are counted with 5 bits per RGB component, which is the precision {@link Palette}
+ * works at, and only the colors which are present are stored. A histogram can be computed once,
+ * stored with {@link #toByteArray()} and turned into a {@link Palette} later with
+ * {@link Palette.Builder#Builder(ColorHistogram)}, without needing the image again.
+ * <p>
+ * This class does not depend on any Android API, so histograms can also be computed ahead of
+ * time by tooling running on a regular JVM.
+ */
+public final class ColorHistogram {
+
+    private static final int QUANTIZE_WORD_WIDTH = 5;
+    private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
+
+    /** Number of buckets of a dense histogram. */
+    static final int SIZE = 1 << (QUANTIZE_WORD_WIDTH * 3);
+
+    private static final int FORMAT_MAGIC = 0x50484931;
+
+    // Quantized colors which are present, in ascending order, and their populations
+    private final int[] mColors;
+    private final int[] mPopulations;
+
+    private ColorHistogram(int[] colors, int[] populations) {
+        mColors = colors;
+        mPopulations = populations;
+    }
+
+    /**
+     * Computes the histogram of a region of pixels stored in an array.
+     *
+     * @param pixels ARGB pixels, laid out as by {@link android.graphics.Bitmap#getPixels}.
+     * @param offset index of the first pixel to read.
+     * @param stride number of entries between the start of two rows, may be negative.
+     * @param width number of pixels to read per row.
+     * @param height number of rows to read.
+     */
+    @NonNull
+    public static ColorHistogram fromPixels(@NonNull int[] pixels, int offset, int stride,
+            int width, int height) {
+        final int[] hist = new int[SIZE];
+        accumulate(pixels, offset, stride, width, height, 1, hist);
+        return fromDense(hist);
+    }
+
+    /**
+     * Computes the histogram of a region of pixels stored in a buffer.  The position and limit
+     * of the buffer are ignored and left unchanged.
+     *
+     * @param pixels ARGB pixels, laid out as by {@link android.graphics.Bitmap#getPixels}.
+     * @param offset index of the first pixel to read.
+     * @param stride number of entries between the start of two rows, may be negative.
+     * @param width number of pixels to read per row.
+     * @param height number of rows to read.
+     */
+    @NonNull
+    public static ColorHistogram fromPixels(@NonNull IntBuffer pixels, int offset, int stride,
+            int width, int height) {
+        final int[] hist = new int[SIZE];
+        accumulate(pixels, offset, stride, width, height, 1, hist);
+        return fromDense(hist);
+    }
+
+    /**
+     * Reads a histogram written by {@link #toByteArray()}.
+     *
+     * @throws IllegalArgumentException if {@code data} is not a valid histogram.
+     */
+    @NonNull
+    public static ColorHistogram fromByteArray(@NonNull byte[] data) {
+        try {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != FORMAT_MAGIC) {
+                throw new IllegalArgumentException("Not a color histogram");
+            }
+            final int count = in.readUnsignedShort();
+            final int[] colors = new int[count];
+            final int[] populations = new int[count];
+            for (int i = 0; i < count; i++) {
+                colors[i] = in.readUnsignedShort();
+                populations[i] = in.readInt();
+                if (colors[i] >= SIZE || populations[i] <= 0
+                        || (i > 0 && colors[i] <= colors[i - 1])) {
+                    throw new IllegalArgumentException("Invalid color histogram entry " + i);
+                }
+            }
+            return new ColorHistogram(colors, populations);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated color histogram", e);
+        }
+    }
+
+    /**
+     * Returns a compact binary representation of this histogram, which can be read back with
+     * {@link #fromByteArray(byte[])}. It takes 6 bytes per distinct color, plus a small header.
+     */
+    @NonNull
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(6 + 6 * mColors.length);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeShort(mColors.length);
+            for (int i = 0; i < mColors.length; i++) {
+                out.writeShort(mColors[i]);
+                out.writeInt(mPopulations[i]);
+            }
+        } catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the number of distinct colors in the histogram.
+     */
+    public int getColorCount() {
+        return mColors.length;
+    }
+
+    /**
+     * Returns the color at {@code index}, as an opaque RGB packed int. Colors are sorted by
+     * ascending RGB value.
+     *
+     * @param index the index of the color, between 0 and {@link #getColorCount()} - 1.
+     */
+    public int getColor(int index) {
+        final int color = mColors[index];
+        final int r = (color >> (QUANTIZE_WORD_WIDTH + QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        final int g = (color >> QUANTIZE_WORD_WIDTH) & QUANTIZE_WORD_MASK;
+        final int b = color & QUANTIZE_WORD_MASK;
+        // Same approximation as the one used for the swatches of the default quantizer
+        final int shift = 8 - QUANTIZE_WORD_WIDTH;
+        return 0xff000000 | (r << shift) << 16 | (g << shift) << 8 | (b << shift);
+    }
+
+    /**
+     * Returns the number of pixels of the color at {@code index}.
+     *
+     * @param index the index of the color, between 0 and {@link #getColorCount()} - 1.
+     */
+    public int getPopulation(int index) {
+        return mPopulations[index];
+    }
+
+    /**
+     * Returns the number of pixels counted in the histogram.
+     */
+    public int getPopulation() {
+        int population = 0;
+        for (int i = 0; i < mPopulations.length; i++) {
+            population += mPopulations[i];
+        }
+        return population;
+    }
+
+    /**
+     * Adds this histogram to the dense histogram {@code hist} of {@link #SIZE} buckets.
+     */
+    void addTo(int[] hist) {
+        for (int i = 0; i < mColors.length; i++) {
+            hist[mColors[i]] += mPopulations[i];
+        }
+    }
+
+    static ColorHistogram fromDense(int[] hist) {
+        int count = 0;
+        for (int color = 0; color < SIZE; color++) {
+            if (hist[color] > 0) {
+                count++;
+            }
+        }
+        final int[] colors = new int[count];
+        final int[] populations = new int[count];
+        for (int color = 0, i = 0; color < SIZE; color++) {
+            if (hist[color] > 0) {
+                colors[i] = color;
+                populations[i++] = hist[color];
+            }
+        }
+        return new ColorHistogram(colors, populations);
+    }
+
+    /**
+     * Counts every {@code step}th pixel of every {@code step}th row of a region into the dense
+     * histogram {@code hist}.
+     */
+    static void accumulate(int[] pixels, int offset, int stride, int width, int height,
+            int step, int[] hist) {
+        for (int y = 0; y < height; y += step) {
+            final int rowStart = offset + y * stride;
+            for (int x = 0; x < width; x += step) {
+                hist[quantize(pixels[rowStart + x])]++;
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #accumulate(int[], int, int, int, int, int, int[])} for a buffer.
+     */
+    static void accumulate(IntBuffer pixels, int offset, int stride, int width, int height,
+            int step, int[] hist) {
+        if (pixels.hasArray()) {
+            accumulate(pixels.array(), pixels.arrayOffset() + offset, stride, width, height,
+                    step, hist);
+            return;
+        }
+        for (int y = 0; y < height; y += step) {
+            final int rowStart = offset + y * stride;
+            for (int x = 0; x < width; x += step) {
+                hist[quantize(pixels.get(rowStart + x))]++;
+            }
+        }
+    }
+
+    /**
+     * Quantizes an ARGB color to the {@value #QUANTIZE_WORD_WIDTH} bits per component used by
+     * the histogram.
+     */
+    static int quantize(int color) {
+        final int r = (color >> (16 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        final int g = (color >> (8 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        final int b = (color >> (8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        return r << (QUANTIZE_WORD_WIDTH + QUANTIZE_WORD_WIDTH) | g << QUANTIZE_WORD_WIDTH | b;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Quantizer} which refines the swatches of another quantizer with k-means iterations.
+ * <p>
+ * Each iteration assigns every color of the histogram to its closest swatch, then moves each
+ * swatch to the mean of the colors assigned to it. This never increases the total squared
+ * distance between the pixels and their swatch, and stops early once no color changes swatch.
+ * <p>
+ * Instances can be shared between threads if the seed quantizer can.
+ */
+public final class KMeansQuantizer implements Quantizer {
+
+    private final Quantizer mSeed;
+    private final int mMaxIterations;
+
+    /**
+     * @param seed the quantizer giving the initial swatches, for example a {@link WuQuantizer}.
+     * @param maxIterations the maximum number of refinement iterations.
+     */
+    public KMeansQuantizer(@NonNull Quantizer seed, int maxIterations) {
+        if (seed == null) {
+            throw new IllegalArgumentException("seed can not be null");
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("maxIterations must be >= 1");
+        }
+        mSeed = seed;
+        mMaxIterations = maxIterations;
+    }
+
+    @NonNull
+    @Override
+    public List<Palette.Swatch> quantize(@NonNull ColorHistogram histogram, int maxColors) {
+        final List<Palette.Swatch> seeds = mSeed.quantize(histogram, maxColors);
+        final int clusterCount = seeds.size();
+        if (clusterCount <= 1) {
+            return seeds;
+        }
+
+        final int colorCount = histogram.getColorCount();
+        final int[] colors = new int[colorCount];
+        final int[] populations = new int[colorCount];
+        for (int i = 0; i < colorCount; i++) {
+            colors[i] = histogram.getColor(i);
+            populations[i] = histogram.getPopulation(i);
+        }
+
+        final float[] centroids = new float[clusterCount * 3];
+        for (int k = 0; k < clusterCount; k++) {
+            final int rgb = seeds.get(k).getRgb();
+            centroids[k * 3] = Color.red(rgb);
+            centroids[k * 3 + 1] = Color.green(rgb);
+            centroids[k * 3 + 2] = Color.blue(rgb);
+        }
+
+        final int[] assignments = new int[colorCount];
+        final double[] sums = new double[clusterCount * 3];
+        final long[] weights = new long[clusterCount];
+        for (int i = 0; i < colorCount; i++) {
+            assignments[i] = -1;
+        }
+
+        for (int iteration = 0; iteration < mMaxIterations; iteration++) {
+            // Assign each color to its closest centroid
+            int changed = 0;
+            for (int i = 0; i < colorCount; i++) {
+                final int r = Color.red(colors[i]);
+                final int g = Color.green(colors[i]);
+                final int b = Color.blue(colors[i]);
+                int closest = 0;
+                float minDistance = Float.MAX_VALUE;
+                for (int k = 0; k < clusterCount; k++) {
+                    if (weights[k] < 0) {
+                        // Cluster emptied by a previous iteration
+                        continue;
+                    }
+                    final float dr = centroids[k * 3] - r;
+                    final float dg = centroids[k * 3 + 1] - g;
+                    final float db = centroids[k * 3 + 2] - b;
+                    final float distance = dr * dr + dg * dg + db * db;
+                    if (distance < minDistance) {
+                        minDistance = distance;
+                        closest = k;
+                    }
+                }
+                if (assignments[i] != closest) {
+                    assignments[i] = closest;
+                    changed++;
+                }
+            }
+            if (changed == 0) {
+                break;
+            }
+
+            // Then move each centroid to the mean of its colors
+            for (int k = 0; k < clusterCount; k++) {
+                if (weights[k] >= 0) {
+                    weights[k] = 0;
+                    sums[k * 3] = sums[k * 3 + 1] = sums[k * 3 + 2] = 0;
+                }
+            }
+            for (int i = 0; i < colorCount; i++) {
+                final int k = assignments[i];
+                final int population = populations[i];
+                weights[k] += population;
+                sums[k * 3] += population * Color.red(colors[i]);
+                sums[k * 3 + 1] += population * Color.green(colors[i]);
+                sums[k * 3 + 2] += population * Color.blue(colors[i]);
+            }
+            for (int k = 0; k < clusterCount; k++) {
+                if (weights[k] > 0) {
+                    centroids[k * 3] = (float) (sums[k * 3] / weights[k]);
+                    centroids[k * 3 + 1] = (float) (sums[k * 3 + 1] / weights[k]);
+                    centroids[k * 3 + 2] = (float) (sums[k * 3 + 2] / weights[k]);
+                } else {
+                    weights[k] = -1;
+                }
+            }
+        }
+
+        // Populations are recounted from the final assignments
+        final long[] counts = new long[clusterCount];
+        for (int i = 0; i < colorCount; i++) {
+            counts[assignments[i]] += populations[i];
+        }
+        final List<Palette.Swatch> swatches = new ArrayList<>(clusterCount);
+        for (int k = 0; k < clusterCount; k++) {
+            if (counts[k] > 0) {
+                swatches.add(new Palette.Swatch(Color.rgb(
+                        Math.round(centroids[k * 3]),
+                        Math.round(centroids[k * 3 + 1]),
+                        Math.round(centroids[k * 3 + 2])), (int) counts[k]));
+            }
+        }
+        return swatches;
+    }
+
+    @Nullable
+    @Override
+    public String getCacheKey() {
+        final String seedKey = mSeed.getCacheKey();
+        return seedKey != null ? "kmeans(" + seedKey + "," + mMaxIterations + ")" : null;
+    }
+}
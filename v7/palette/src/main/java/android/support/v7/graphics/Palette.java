@@ -26,10 +26,12 @@ import android.support.annotation.Nullable;
 import android.support.v4.graphics.ColorUtils;
 import android.support.v4.os.AsyncTaskCompat;
 import android.support.v4.util.ArrayMap;
+import android.support.v4.util.ArrayPool;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 import android.util.TimingLogger;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -87,6 +89,9 @@ public final class Palette {
     static final int DEFAULT_RESIZE_BITMAP_AREA = 112 * 112;
     static final int DEFAULT_CALCULATE_NUMBER_COLORS = 16;
 
+    /** Squared RGB distance under which two swatches are considered the same color. */
+    static final int MAX_SAME_COLOR_DISTANCE_SQUARED = 3 * 24 * 24;
+
     static final float MIN_CONTRAST_TITLE_TEXT = 3.0f;
     static final float MIN_CONTRAST_BODY_TEXT = 4.5f;
 
@@ -346,19 +351,38 @@ public final class Palette {
     }
 
     void generate() {
+        generate(null, 0f);
+    }
+
+    /**
+     * Selects the swatches for the targets. If {@code previous} is not null, a swatch close to
+     * the one it selected for a target is kept as long as its score is within
+     * {@code hysteresis} of the best score, so that selections don't flip back and forth
+     * between similar candidates.
+     */
+    void generate(@Nullable Palette previous, float hysteresis) {
         // We need to make sure that the scored targets are generated first. This is so that
         // inherited targets have something to inherit from
         for (int i = 0, count = mTargets.size(); i < count; i++) {
             final Target target = mTargets.get(i);
             target.normalizeWeights();
-            mSelectedSwatches.put(target, generateScoredTarget(target));
+            final Swatch preferred = previous != null
+                    ? findClosestSwatch(previous.getSwatchForTarget(target)) : null;
+            mSelectedSwatches.put(target, generateScoredTarget(target, preferred, hysteresis));
         }
         // We now clear out the used colors
         mUsedColors.clear();
     }
 
-    private Swatch generateScoredTarget(final Target target) {
-        final Swatch maxScoreSwatch = getMaxScoredSwatchForTarget(target);
+    private Swatch generateScoredTarget(final Target target, final Swatch preferred,
+            final float hysteresis) {
+        Swatch maxScoreSwatch = getMaxScoredSwatchForTarget(target);
+        if (preferred != null && maxScoreSwatch != null && preferred != maxScoreSwatch
+                && shouldBeScoredForTarget(preferred, target)
+                && generateScore(preferred, target)
+                        >= generateScore(maxScoreSwatch, target) - hysteresis) {
+            maxScoreSwatch = preferred;
+        }
         if (maxScoreSwatch != null && target.isExclusive()) {
             // If we have a swatch, and the target is exclusive, add the color to the used list
             mUsedColors.append(maxScoreSwatch.getRgb(), true);
@@ -416,6 +440,30 @@ public final class Palette {
         return saturationScore + luminanceScore + populationScore;
     }
 
+    /**
+     * Returns the swatch closest in color to {@code swatch}, or null if none is close enough to
+     * be considered the same color.
+     */
+    private Swatch findClosestSwatch(Swatch swatch) {
+        if (swatch == null) {
+            return null;
+        }
+        int minDistance = MAX_SAME_COLOR_DISTANCE_SQUARED + 1;
+        Swatch closest = null;
+        for (int i = 0, count = mSwatches.size(); i < count; i++) {
+            final int candidate = mSwatches.get(i).getRgb();
+            final int dr = Color.red(candidate) - Color.red(swatch.getRgb());
+            final int dg = Color.green(candidate) - Color.green(swatch.getRgb());
+            final int db = Color.blue(candidate) - Color.blue(swatch.getRgb());
+            final int distance = dr * dr + dg * dg + db * db;
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = mSwatches.get(i);
+            }
+        }
+        return closest;
+    }
+
     private Swatch findDominantSwatch() {
         int maxPop = Integer.MIN_VALUE;
         Swatch maxSwatch = null;
@@ -598,12 +646,23 @@ public final class Palette {
     public static final class Builder {
         private final List<Swatch> mSwatches;
         private final Bitmap mBitmap;
+        private final ColorHistogram mHistogram;
+
+        // Raw pixel source, held either in mPixels or mPixelBuffer
+        private final int[] mPixels;
+        private final IntBuffer mPixelBuffer;
+        private final int mPixelOffset;
+        private final int mPixelStride;
+        private final int mPixelWidth;
+        private final int mPixelHeight;
 
         private final List<Target> mTargets = new ArrayList<>();
 
         private int mMaxColors = DEFAULT_CALCULATE_NUMBER_COLORS;
         private int mResizeArea = DEFAULT_RESIZE_BITMAP_AREA;
         private int mResizeMaxDimension = -1;
+        private int mParallelism = 1;
+        private Quantizer mQuantizer;
 
         private final List<Filter> mFilters = new ArrayList<>();
         private Rect mRegion;
@@ -618,14 +677,86 @@ public final class Palette {
             mFilters.add(DEFAULT_FILTER);
             mBitmap = bitmap;
             mSwatches = null;
+            mHistogram = null;
+            mPixels = null;
+            mPixelBuffer = null;
+            mPixelOffset = mPixelStride = mPixelWidth = mPixelHeight = 0;
 
-            // Add the default targets
-            mTargets.add(Target.LIGHT_VIBRANT);
-            mTargets.add(Target.VIBRANT);
-            mTargets.add(Target.DARK_VIBRANT);
-            mTargets.add(Target.LIGHT_MUTED);
-            mTargets.add(Target.MUTED);
-            mTargets.add(Target.DARK_MUTED);
+            addDefaultTargets();
+        }
+
+        /**
+         * Construct a new {@link Builder} using ARGB pixels held in an array, laid out as by
+         * {@link Bitmap#getPixels(int[], int, int, int, int, int, int)}. The pixels are read in
+         * place and are not modified, so the array can be one already owned by the caller, such
+         * as the output of a decoder.
+         * <p>
+         * The resize values set with {@link #resizeBitmapArea(int)} are applied by sampling
+         * the pixels rather than scaling them.
+         *
+         * @param pixels the array holding the pixels.
+         * @param offset index of the first pixel to read.
+         * @param stride number of entries between the start of two rows, may be negative.
+         * @param width number of pixels per row.
+         * @param height number of rows.
+         */
+        public Builder(@NonNull int[] pixels, int offset, int stride, int width, int height) {
+            this(pixels, null, offset, stride, width, height);
+        }
+
+        /**
+         * Construct a new {@link Builder} using ARGB pixels held in a buffer, which can be a
+         * direct buffer. The position and limit of the buffer are ignored.
+         *
+         * @see #Builder(int[], int, int, int, int)
+         */
+        public Builder(@NonNull IntBuffer pixels, int offset, int stride, int width, int height) {
+            this(null, pixels, offset, stride, width, height);
+        }
+
+        private Builder(int[] pixels, IntBuffer pixelBuffer, int offset, int stride, int width,
+                int height) {
+            final int capacity = pixels != null ? pixels.length
+                    : pixelBuffer != null ? pixelBuffer.capacity() : -1;
+            final long first = offset + Math.min(0, (long) stride * (height - 1));
+            final long last = offset + Math.max(0, (long) stride * (height - 1)) + width - 1;
+            if (capacity < 0 || width <= 0 || height <= 0 || Math.abs(stride) < width
+                    || first < 0 || last >= capacity) {
+                throw new IllegalArgumentException("Pixels are not valid");
+            }
+            mFilters.add(DEFAULT_FILTER);
+            mPixels = pixels;
+            mPixelBuffer = pixelBuffer;
+            mPixelOffset = offset;
+            mPixelStride = stride;
+            mPixelWidth = width;
+            mPixelHeight = height;
+            mBitmap = null;
+            mSwatches = null;
+            mHistogram = null;
+
+            addDefaultTargets();
+        }
+
+        /**
+         * Construct a new {@link Builder} using a precomputed {@link ColorHistogram}.
+         * <p>
+         * The resize values and region have no effect since the pixels have already been
+         * counted.
+         */
+        public Builder(@NonNull ColorHistogram histogram) {
+            if (histogram == null || histogram.getColorCount() == 0) {
+                throw new IllegalArgumentException("Histogram is not valid");
+            }
+            mFilters.add(DEFAULT_FILTER);
+            mHistogram = histogram;
+            mBitmap = null;
+            mSwatches = null;
+            mPixels = null;
+            mPixelBuffer = null;
+            mPixelOffset = mPixelStride = mPixelWidth = mPixelHeight = 0;
+
+            addDefaultTargets();
         }
 
         /**
@@ -639,6 +770,19 @@ public final class Palette {
             mFilters.add(DEFAULT_FILTER);
             mSwatches = swatches;
             mBitmap = null;
+            mHistogram = null;
+            mPixels = null;
+            mPixelBuffer = null;
+            mPixelOffset = mPixelStride = mPixelWidth = mPixelHeight = 0;
+        }
+
+        private void addDefaultTargets() {
+            mTargets.add(Target.LIGHT_VIBRANT);
+            mTargets.add(Target.VIBRANT);
+            mTargets.add(Target.DARK_VIBRANT);
+            mTargets.add(Target.LIGHT_MUTED);
+            mTargets.add(Target.MUTED);
+            mTargets.add(Target.DARK_MUTED);
         }
 
         /**
@@ -695,6 +839,41 @@ public final class Palette {
             return this;
         }
 
+        /**
+         * Set the maximum number of threads used to generate the palette when using a
+         * {@link android.graphics.Bitmap} as the source. Defaults to 1, which generates the
+         * palette entirely on the calling thread.
+         * <p>
+         * With a larger value, the color histogram of large images is built on several threads
+         * and the color boxes are split several at a time. This mostly pays off when resizing
+         * is disabled or the resize area is large, and the generated swatches can differ
+         * slightly from the ones generated serially.
+         *
+         * @param parallelism the maximum number of threads, for example
+         *                    {@link Runtime#availableProcessors()}.
+         */
+        @NonNull
+        public Builder setParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be >= 1");
+            }
+            mParallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Set the {@link Quantizer} used to reduce the colors of the image. Defaults to null,
+         * which uses the built-in median cut quantizer. Has no effect when using
+         * {@link Swatch}es as the source.
+         * <p>
+         * {@link #setParallelism(int)} only applies to the built-in quantizer.
+         */
+        @NonNull
+        public Builder setQuantizer(@Nullable Quantizer quantizer) {
+            mQuantizer = quantizer;
+            return this;
+        }
+
         /**
          * Clear all added filters. This includes any default filters added automatically by
          * {@link Palette}.
@@ -708,6 +887,9 @@ public final class Palette {
         /**
          * Add a filter to be able to have fine grained control over which colors are
          * allowed in the resulting palette.
+         * <p>
+         * Palettes generated with filters other than the default ones are not cached by
+         * {@link PaletteCache}.
          *
          * @param filter filter to add.
          */
@@ -721,7 +903,7 @@ public final class Palette {
 
         /**
          * Set a region of the bitmap to be used exclusively when calculating the palette.
-         * <p>This only works when the original input is a {@link Bitmap}.</p>
+         * <p>This only works when the original input is a {@link Bitmap} or pixels.</p>
          *
          * @param left The left side of the rectangle used for the region.
          * @param top The top of the rectangle used for the region.
@@ -739,6 +921,13 @@ public final class Palette {
                     throw new IllegalArgumentException("The given region must intersect with "
                             + "the Bitmap's dimensions.");
                 }
+            } else if (mPixels != null || mPixelBuffer != null) {
+                if (mRegion == null) mRegion = new Rect();
+                mRegion.set(0, 0, mPixelWidth, mPixelHeight);
+                if (!mRegion.intersect(left, top, right, bottom)) {
+                    throw new IllegalArgumentException("The given region must intersect with "
+                            + "the pixels' dimensions.");
+                }
             }
             return this;
         }
@@ -811,18 +1000,52 @@ public final class Palette {
                             bitmap.getHeight());
                 }
 
-                // Now generate a quantizer from the Bitmap
-                final ColorCutQuantizer quantizer = new ColorCutQuantizer(
-                        getPixelsFromBitmap(bitmap),
-                        mMaxColors,
-                        mFilters.isEmpty() ? null : mFilters.toArray(new Filter[mFilters.size()]));
+                // Now generate a quantizer from the Bitmap, using a pooled pixel buffer
+                final ArrayPool arrayPool = ArrayPool.getDefault();
+                final int pixelCount = region != null
+                        ? region.width() * region.height()
+                        : bitmap.getWidth() * bitmap.getHeight();
+                final int[] pixels = arrayPool.acquireIntArray(pixelCount);
+                try {
+                    getPixelsFromBitmap(bitmap, pixels);
+                    if (mQuantizer != null) {
+                        swatches = quantize(ColorHistogram.fromPixels(pixels, 0, pixelCount,
+                                pixelCount, 1));
+                    } else {
+                        swatches = new ColorCutQuantizer(pixels, pixelCount, mMaxColors,
+                                mFilters.isEmpty() ? null
+                                        : mFilters.toArray(new Filter[mFilters.size()]),
+                                mParallelism).getQuantizedColors();
+                    }
+                } finally {
+                    arrayPool.release(pixels);
+                }
 
                 // If created a new bitmap, recycle it
                 if (bitmap != mBitmap) {
                     bitmap.recycle();
                 }
 
-                swatches = quantizer.getQuantizedColors();
+                if (logger != null) {
+                    logger.addSplit("Color quantization completed");
+                }
+            } else if (mPixels != null || mPixelBuffer != null || mHistogram != null) {
+                // Count the pixels in place if needed, then quantize the histogram
+                final ColorHistogram histogram = mHistogram != null
+                        ? mHistogram : getHistogramFromPixels();
+
+                if (logger != null) {
+                    logger.addSplit("Histogram computed");
+                }
+
+                if (mQuantizer != null) {
+                    swatches = quantize(histogram);
+                } else {
+                    swatches = new ColorCutQuantizer(histogram, mMaxColors,
+                            mFilters.isEmpty() ? null
+                                    : mFilters.toArray(new Filter[mFilters.size()]),
+                            mParallelism).getQuantizedColors();
+                }
 
                 if (logger != null) {
                     logger.addSplit("Color quantization completed");
@@ -875,28 +1098,160 @@ public final class Palette {
                     }, mBitmap);
         }
 
-        private int[] getPixelsFromBitmap(Bitmap bitmap) {
-            final int bitmapWidth = bitmap.getWidth();
-            final int bitmapHeight = bitmap.getHeight();
-            final int[] pixels = new int[bitmapWidth * bitmapHeight];
-            bitmap.getPixels(pixels, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight);
-
+        /**
+         * Copies the pixels of the bitmap, or of the selected region, into the start of
+         * {@code pixels}.
+         */
+        private void getPixelsFromBitmap(Bitmap bitmap, int[] pixels) {
             if (mRegion == null) {
-                // If we don't have a region, return all of the pixels
-                return pixels;
+                // If we don't have a region, read all of the pixels
+                final int bitmapWidth = bitmap.getWidth();
+                final int bitmapHeight = bitmap.getHeight();
+                bitmap.getPixels(pixels, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight);
             } else {
-                // If we do have a region, lets create a subset array containing only the region's
-                // pixels
+                // If we do have a region, only read the region's pixels rather than copying the
+                // whole bitmap and then extracting the subset
                 final int regionWidth = mRegion.width();
-                final int regionHeight = mRegion.height();
-                // pixels contains all of the pixels, so we need to iterate through each row and
-                // copy the regions pixels into a new smaller array
-                final int[] subsetPixels = new int[regionWidth * regionHeight];
-                for (int row = 0; row < regionHeight; row++) {
-                    System.arraycopy(pixels, ((row + mRegion.top) * bitmapWidth) + mRegion.left,
-                            subsetPixels, row * regionWidth, regionWidth);
+                bitmap.getPixels(pixels, 0, regionWidth, mRegion.left, mRegion.top,
+                        regionWidth, mRegion.height());
+            }
+        }
+
+        /**
+         * Quantizes a histogram with the custom quantizer, applying the filters to its input
+         * and output like the built-in quantizer does.
+         */
+        private List<Swatch> quantize(ColorHistogram histogram) {
+            final float[] hsl = new float[3];
+            final ArrayPool arrayPool = ArrayPool.getDefault();
+            final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+            final ColorHistogram filtered;
+            try {
+                Arrays.fill(hist, 0, ColorHistogram.SIZE, 0);
+                histogram.addTo(hist);
+                for (int i = 0, count = histogram.getColorCount(); i < count; i++) {
+                    final int rgb = histogram.getColor(i);
+                    ColorUtils.colorToHSL(rgb, hsl);
+                    if (!isAllowed(rgb, hsl)) {
+                        hist[ColorHistogram.quantize(rgb)] = 0;
+                    }
+                }
+                filtered = ColorHistogram.fromDense(hist);
+            } finally {
+                arrayPool.release(hist);
+            }
+
+            final List<Swatch> swatches = new ArrayList<>();
+            if (filtered.getColorCount() > 0) {
+                for (Swatch swatch : mQuantizer.quantize(filtered, mMaxColors)) {
+                    if (isAllowed(swatch.getRgb(), swatch.getHsl())) {
+                        swatches.add(swatch);
+                    }
+                }
+            }
+            return swatches;
+        }
+
+        private boolean isAllowed(int rgb, float[] hsl) {
+            for (int i = 0, count = mFilters.size(); i < count; i++) {
+                if (!mFilters.get(i).isAllowed(rgb, hsl)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<Target> getTargets() {
+            return mTargets;
+        }
+
+        /**
+         * Returns a string identifying the parameters which affect the generated palette, used
+         * by {@link PaletteCache}, or null if the palette can't be cached. Quantizers are
+         * identified by {@link Quantizer#getCacheKey()}. Filters other than the default one can't
+         * be identified, as their behavior may depend on their state, so they disable caching.
+         */
+        @Nullable
+        String getCacheKey() {
+            for (int i = 0, count = mFilters.size(); i < count; i++) {
+                if (mFilters.get(i) != DEFAULT_FILTER) {
+                    return null;
+                }
+            }
+            final String quantizerKey = mQuantizer != null ? mQuantizer.getCacheKey() : null;
+            if (mQuantizer != null && quantizerKey == null) {
+                return null;
+            }
+            final StringBuilder key = new StringBuilder();
+            key.append("c=").append(mMaxColors)
+                    .append(";a=").append(mResizeArea)
+                    .append(";d=").append(mResizeMaxDimension)
+                    .append(";p=").append(mParallelism);
+            if (mRegion != null) {
+                key.append(";r=").append(mRegion.left).append(',').append(mRegion.top)
+                        .append(',').append(mRegion.right).append(',').append(mRegion.bottom);
+            }
+            if (quantizerKey != null) {
+                key.append(";q=").append(quantizerKey);
+            }
+            key.append(";f=").append(mFilters.size());
+            key.append(";t=");
+            for (Target target : mTargets) {
+                appendFloats(key, target.mSaturationTargets);
+                appendFloats(key, target.mLightnessTargets);
+                appendFloats(key, target.mWeights);
+                key.append(target.mIsExclusive ? 'x' : 'o').append(',');
+            }
+            return key.toString();
+        }
+
+        private static void appendFloats(StringBuilder builder, float[] values) {
+            for (float value : values) {
+                builder.append(Integer.toHexString(Float.floatToIntBits(value))).append('/');
+            }
+        }
+
+        /**
+         * Computes the histogram of the pixels, or of the selected region, sampling them as
+         * needed to honor the resize values.
+         */
+        private ColorHistogram getHistogramFromPixels() {
+            int offset = mPixelOffset;
+            int width = mPixelWidth;
+            int height = mPixelHeight;
+            if (mRegion != null) {
+                offset += mRegion.top * mPixelStride + mRegion.left;
+                width = mRegion.width();
+                height = mRegion.height();
+            }
+
+            int step = 1;
+            if (mResizeArea > 0) {
+                final int area = width * height;
+                if (area > mResizeArea) {
+                    step = (int) Math.ceil(Math.sqrt(area / (double) mResizeArea));
+                }
+            } else if (mResizeMaxDimension > 0) {
+                final int maxDimension = Math.max(width, height);
+                if (maxDimension > mResizeMaxDimension) {
+                    step = (int) Math.ceil(maxDimension / (double) mResizeMaxDimension);
+                }
+            }
+
+            final ArrayPool arrayPool = ArrayPool.getDefault();
+            final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+            try {
+                Arrays.fill(hist, 0, ColorHistogram.SIZE, 0);
+                if (mPixels != null) {
+                    ColorHistogram.accumulate(mPixels, offset, mPixelStride, width, height, step,
+                            hist);
+                } else {
+                    ColorHistogram.accumulate(mPixelBuffer, offset, mPixelStride, width, height,
+                            step, hist);
                 }
-                return subsetPixels;
+                return ColorHistogram.fromDense(hist);
+            } finally {
+                arrayPool.release(hist);
             }
         }
 
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of generated {@link Palette}s, so that the colors of an image which is shown again,
+ * for example when it scrolls back into view, don't need to be computed again.
+ * <p>
+ * Entries are keyed by an image key provided by the caller, such as a URL or a content id,
+ * together with the parameters of the {@link Palette.Builder}: maximum color count, resize
+ * values, region, parallelism, quantizer, filters and targets. Quantizers are identified by
+ * {@link Quantizer#getCacheKey()}. Filters can't be identified, so the palettes generated with
+ * filters other than the default ones, or with a quantizer which has no cache key, are never
+ * cached: {@link #get} returns null for them and {@link #generate} always generates them.
+ * <p>
+ * Palettes are kept in memory, and optionally in a directory as a compact list of swatches. The
+ * directory is bounded by a size in bytes and the least recently used entries are deleted first,
+ * so it can live in the app's cache directory.
+ * <p>
+ * This class is thread safe.
+ *
+ * <pre>
+ * Palette palette = paletteCache.get(url, Palette.from(bitmap));
+ * if (palette == null) {
+ *     palette = paletteCache.generate(url, Palette.from(bitmap));
+ * }
+ * </pre>
+ */
+public final class PaletteCache {
+
+    private static final String LOG_TAG = "PaletteCache";
+
+    private static final int FORMAT_MAGIC = 0x50414c31;
+    private static final String FILE_SUFFIX = ".palette";
+
+    private final LruCache<String, Palette> mMemoryCache;
+
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+
+    private final Object mDiskLock = new Object();
+    /** File names of the disk entries and their sizes, from least to most recently used. */
+    private LinkedHashMap<String, Long> mDiskEntries;
+    private long mDiskBytes;
+
+    private int mHitCount;
+    private int mDiskHitCount;
+    private int mMissCount;
+
+    /**
+     * Creates a cache holding palettes in memory only.
+     *
+     * @param maxMemoryEntries the maximum number of palettes kept in memory.
+     */
+    public PaletteCache(int maxMemoryEntries) {
+        this(maxMemoryEntries, null, 0);
+    }
+
+    /**
+     * Creates a cache holding palettes in memory and in {@code directory}.
+     *
+     * @param maxMemoryEntries the maximum number of palettes kept in memory.
+     * @param directory the directory to store palettes in, which should not be used for anything
+     *                  else. It is created if needed. If null, palettes are only kept in memory.
+     * @param maxDiskBytes the maximum total size of the files in {@code directory}.
+     */
+    public PaletteCache(int maxMemoryEntries, @Nullable File directory, long maxDiskBytes) {
+        if (directory != null && maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("maxDiskBytes must be > 0");
+        }
+        mMemoryCache = new LruCache<>(maxMemoryEntries);
+        mDirectory = directory;
+        mMaxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Returns the cached palette for {@code imageKey} and the parameters of {@code builder}, or
+     * null if there is none. The builder is not used to generate anything.
+     * <p>
+     * When the palette is not in memory this reads a small file, so calls on the main thread
+     * may perform disk I/O.
+     */
+    @Nullable
+    public Palette get(@NonNull String imageKey, @NonNull Palette.Builder builder) {
+        final String key = getKey(imageKey, builder);
+        if (key == null) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            return null;
+        }
+
+        final Palette palette = mMemoryCache.get(key);
+        if (palette != null) {
+            synchronized (this) {
+                mHitCount++;
+            }
+            return withTargets(palette, builder.getTargets());
+        }
+
+        final List<Palette.Swatch> swatches = readFromDisk(key);
+        if (swatches != null) {
+            final Palette restored = createPalette(swatches, builder.getTargets());
+            mMemoryCache.put(key, restored);
+            synchronized (this) {
+                mDiskHitCount++;
+            }
+            return restored;
+        }
+
+        synchronized (this) {
+            mMissCount++;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached palette for {@code imageKey} and the parameters of {@code builder},
+     * generating it with {@link Palette.Builder#generate()} and caching it if there is none.
+     */
+    @NonNull
+    public Palette generate(@NonNull String imageKey, @NonNull Palette.Builder builder) {
+        // Computed first since generating may change the builder's region
+        final String key = getKey(imageKey, builder);
+        if (key == null) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            return builder.generate();
+        }
+
+        Palette palette = mMemoryCache.get(key);
+        if (palette != null) {
+            synchronized (this) {
+                mHitCount++;
+            }
+            return withTargets(palette, builder.getTargets());
+        }
+
+        final List<Palette.Swatch> swatches = readFromDisk(key);
+        if (swatches != null) {
+            palette = createPalette(swatches, builder.getTargets());
+            synchronized (this) {
+                mDiskHitCount++;
+            }
+        } else {
+            palette = builder.generate();
+            writeToDisk(key, palette.getSwatches());
+            synchronized (this) {
+                mMissCount++;
+            }
+        }
+        mMemoryCache.put(key, palette);
+        return palette;
+    }
+
+    /**
+     * Adds a palette generated from the image identified by {@code imageKey}, with the parameters
+     * of {@code builder}, to the cache. Does nothing if {@code builder} has filters other than the
+     * default ones or a quantizer without a cache key.
+     */
+    public void put(@NonNull String imageKey, @NonNull Palette.Builder builder,
+            @NonNull Palette palette) {
+        final String key = getKey(imageKey, builder);
+        if (key == null) {
+            return;
+        }
+        mMemoryCache.put(key, palette);
+        writeToDisk(key, palette.getSwatches());
+    }
+
+    /**
+     * Removes the palette for {@code imageKey} and the parameters of {@code builder}.
+     */
+    public void remove(@NonNull String imageKey, @NonNull Palette.Builder builder) {
+        final String key = getKey(imageKey, builder);
+        if (key == null) {
+            return;
+        }
+        mMemoryCache.remove(key);
+        if (mDirectory != null) {
+            synchronized (mDiskLock) {
+                ensureDiskEntriesLoaded();
+                deleteDiskEntry(getFileName(key));
+            }
+        }
+    }
+
+    /**
+     * Removes all palettes, from memory and from disk.
+     */
+    public void clear() {
+        mMemoryCache.evictAll();
+        if (mDirectory != null) {
+            synchronized (mDiskLock) {
+                ensureDiskEntriesLoaded();
+                trimDiskTo(0);
+            }
+        }
+    }
+
+    /**
+     * Releases memory in response to {@link ComponentCallbacks2#onTrimMemory(int)}. Palettes
+     * stored on disk are kept.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Returns the number of lookups served from memory.
+     */
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of lookups served from disk.
+     */
+    public synchronized int diskHitCount() {
+        return mDiskHitCount;
+    }
+
+    /**
+     * Returns the number of lookups which found no cached palette.
+     */
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("PaletteCache[memory=%d/%d,hits=%d,diskHits=%d,misses=%d]",
+                mMemoryCache.size(), mMemoryCache.maxSize(), mHitCount, mDiskHitCount,
+                mMissCount);
+    }
+
+    @Nullable
+    private static String getKey(String imageKey, Palette.Builder builder) {
+        final String builderKey = builder.getCacheKey();
+        if (builderKey == null) {
+            return null;
+        }
+        // Prefixed with the length so that image keys can't collide with the parameters
+        return imageKey.length() + ":" + imageKey + ";" + builderKey;
+    }
+
+    private static Palette createPalette(List<Palette.Swatch> swatches, List<Target> targets) {
+        final Palette palette = new Palette(swatches, new ArrayList<>(targets));
+        palette.generate();
+        return palette;
+    }
+
+    /**
+     * Palettes look up swatches by {@link Target} instance, so a cached palette is reselected
+     * for the caller's targets unless it was generated with the very same ones.
+     */
+    private static Palette withTargets(Palette palette, List<Target> targets) {
+        final List<Target> paletteTargets = palette.getTargets();
+        boolean same = paletteTargets.size() == targets.size();
+        for (int i = 0; same && i < targets.size(); i++) {
+            same = paletteTargets.get(i) == targets.get(i);
+        }
+        return same ? palette : createPalette(palette.getSwatches(), targets);
+    }
+
+    private List<Palette.Swatch> readFromDisk(String key) {
+        if (mDirectory == null) {
+            return null;
+        }
+        synchronized (mDiskLock) {
+            ensureDiskEntriesLoaded();
+            final String fileName = getFileName(key);
+            if (mDiskEntries.get(fileName) == null) {
+                return null;
+            }
+            final File file = new File(mDirectory, fileName);
+            try {
+                final List<Palette.Swatch> swatches =
+                        readSwatches(new AtomicFile(file).readFully());
+                if (swatches != null) {
+                    // Persist the access order for the next process
+                    file.setLastModified(System.currentTimeMillis());
+                    return swatches;
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to read " + file, e);
+            }
+            // Unreadable, drop it
+            deleteDiskEntry(fileName);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, List<Palette.Swatch> swatches) {
+        if (mDirectory == null) {
+            return;
+        }
+        final byte[] data = writeSwatches(swatches);
+        synchronized (mDiskLock) {
+            ensureDiskEntriesLoaded();
+            final String fileName = getFileName(key);
+            final AtomicFile file = new AtomicFile(new File(mDirectory, fileName));
+            FileOutputStream out = null;
+            try {
+                out = file.startWrite();
+                out.write(data);
+                file.finishWrite(out);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to write " + file.getBaseFile(), e);
+                file.failWrite(out);
+                deleteDiskEntry(fileName);
+                return;
+            }
+            final Long previous = mDiskEntries.put(fileName, (long) data.length);
+            mDiskBytes += data.length - (previous != null ? previous : 0);
+            trimDiskTo(mMaxDiskBytes);
+        }
+    }
+
+    private void ensureDiskEntriesLoaded() {
+        if (mDiskEntries != null) {
+            return;
+        }
+        mDiskEntries = new LinkedHashMap<>(0, 0.75f, true);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Failed to create " + mDirectory);
+            return;
+        }
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so that the map starts in least recently used order
+        final long[] lastModified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                final long l = lastModified[lhs];
+                final long r = lastModified[rhs];
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (Integer i : order) {
+            final File file = files[i];
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                mDiskEntries.put(file.getName(), file.length());
+                mDiskBytes += file.length();
+            }
+        }
+        trimDiskTo(mMaxDiskBytes);
+    }
+
+    private void trimDiskTo(long maxBytes) {
+        final Iterator<Map.Entry<String, Long>> it = mDiskEntries.entrySet().iterator();
+        while (mDiskBytes > maxBytes && it.hasNext()) {
+            final Map.Entry<String, Long> entry = it.next();
+            new AtomicFile(new File(mDirectory, entry.getKey())).delete();
+            mDiskBytes -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    private void deleteDiskEntry(String fileName) {
+        new AtomicFile(new File(mDirectory, fileName)).delete();
+        final Long size = mDiskEntries.remove(fileName);
+        if (size != null) {
+            mDiskBytes -= size;
+        }
+    }
+
+    private static String getFileName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            final StringBuilder name = new StringBuilder(digest.length * 2 + FILE_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(FILE_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are always available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Entries are stored as a magic number followed by the swatches, as pairs of RGB color and
+     * population. The key itself is only kept as the file name, which is its SHA-1 hash.
+     */
+    private static byte[] writeSwatches(List<Palette.Swatch> swatches) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeShort(swatches.size());
+            for (Palette.Swatch swatch : swatches) {
+                out.writeInt(swatch.getRgb());
+                out.writeInt(swatch.getPopulation());
+            }
+        } catch (IOException e) {
+            // Can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Palette.Swatch> readSwatches(byte[] data) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != FORMAT_MAGIC) {
+            return null;
+        }
+        final int count = in.readUnsignedShort();
+        final List<Palette.Swatch> swatches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int rgb = in.readInt();
+            swatches.add(new Palette.Swatch(rgb, in.readInt()));
+        }
+        return swatches;
+    }
+}
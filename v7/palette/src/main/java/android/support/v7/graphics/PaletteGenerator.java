@@ -0,0 +1,502 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Generates {@link Palette}s in the background on a bounded number of threads, for apps which
+ * request many palettes at once, such as a list of covers being scrolled through.
+ * <p>
+ * Unlike {@link Palette.Builder#generate(Palette.PaletteAsyncListener)}, which starts an
+ * {@link android.os.AsyncTask} per palette on the shared executor, requests are queued here by
+ * priority, and:
+ * <ul>
+ *     <li>the queue is bounded: once it is full, the request with the lowest priority is
+ *     dropped, so stale requests don't pile up;</li>
+ *     <li>requests with the same key while one is queued or running share its result;</li>
+ *     <li>each request returns a {@link Request} which can be cancelled, for example when the
+ *     view it was made for is recycled. A cancelled request's listener is never called.</li>
+ * </ul>
+ * Listeners are called on the main thread. As with
+ * {@link Palette.Builder#generate(Palette.PaletteAsyncListener)}, they are called with null if
+ * the generation throws an exception. If a {@link PaletteCache} is given, palettes are looked up
+ * in and added to it by the background threads.
+ * <p>
+ * This class is thread safe.
+ */
+public final class PaletteGenerator {
+
+    private static final String LOG_TAG = "PaletteGenerator";
+
+    /** How long idle threads wait for new requests before exiting. */
+    private static final long KEEP_ALIVE_MILLIS = 1000;
+
+    private final Object mLock = new Object();
+    private final PriorityQueue<Job> mQueue = new PriorityQueue<>(11, JOB_COMPARATOR);
+    /** Jobs which are queued or running, by key. */
+    private final HashMap<String, Job> mJobs = new HashMap<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final int mMaxThreads;
+    private final int mMaxQueueSize;
+    private final PaletteCache mCache;
+
+    private int mThreadCount;
+    private int mIdleThreadCount;
+    private long mSequence;
+    private boolean mShutdown;
+
+    private int mPeakQueueDepth;
+    private int mCompletedCount;
+    private int mCoalescedCount;
+    private int mCancelledCount;
+    private int mDroppedCount;
+    private int mFailedCount;
+    private long mTotalWaitMillis;
+    private int mStartedCount;
+    private long mTotalLatencyMillis;
+
+    /**
+     * @param maxThreads the maximum number of threads generating palettes at the same time.
+     * @param maxQueueSize the maximum number of requests waiting for a thread.
+     */
+    public PaletteGenerator(int maxThreads, int maxQueueSize) {
+        this(maxThreads, maxQueueSize, null);
+    }
+
+    /**
+     * @param maxThreads the maximum number of threads generating palettes at the same time.
+     * @param maxQueueSize the maximum number of requests waiting for a thread.
+     * @param cache a cache to look palettes up in before generating them, and to add them to.
+     */
+    public PaletteGenerator(int maxThreads, int maxQueueSize, @Nullable PaletteCache cache) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be >= 1");
+        }
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("maxQueueSize must be >= 1");
+        }
+        mMaxThreads = maxThreads;
+        mMaxQueueSize = maxQueueSize;
+        mCache = cache;
+    }
+
+    /**
+     * Same as {@link #generate(String, Palette.Builder, int, Palette.PaletteAsyncListener)} with
+     * a priority of 0.
+     */
+    @NonNull
+    public Request generate(@NonNull String key, @NonNull Palette.Builder builder,
+            @NonNull Palette.PaletteAsyncListener listener) {
+        return generate(key, builder, 0, listener);
+    }
+
+    /**
+     * Queues the generation of a palette.
+     *
+     * @param key identifies the image and the builder parameters. Requests with the same key are
+     *            expected to generate the same palette, so they are only generated once.
+     * @param builder the builder to generate the palette with. It should not be modified until
+     *                the listener is called or the request is cancelled.
+     * @param priority requests with a higher priority are generated first.
+     * @param listener called on the main thread with the palette, or with null if its
+     *                 generation failed, unless the request is cancelled or dropped.
+     * @return a handle to cancel the request.
+     */
+    @NonNull
+    public Request generate(@NonNull String key, @NonNull Palette.Builder builder, int priority,
+            @NonNull Palette.PaletteAsyncListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        synchronized (mLock) {
+            if (mShutdown) {
+                throw new IllegalStateException("PaletteGenerator has been shut down");
+            }
+            final Request request = new Request(listener, SystemClock.uptimeMillis());
+
+            Job job = mJobs.get(key);
+            if (job != null) {
+                // Piggyback on the pending job, moving it up if needed
+                request.mJob = job;
+                job.mRequests.add(request);
+                mCoalescedCount++;
+                if (!job.mRunning && priority > job.mPriority) {
+                    mQueue.remove(job);
+                    job.mPriority = priority;
+                    mQueue.add(job);
+                }
+                return request;
+            }
+
+            job = new Job(key, builder, priority, mSequence++, request.mStartTime);
+            request.mJob = job;
+            job.mRequests.add(request);
+            mJobs.put(key, job);
+            mQueue.add(job);
+
+            if (mQueue.size() > mMaxQueueSize) {
+                dropLowestPriorityJob();
+            }
+            mPeakQueueDepth = Math.max(mPeakQueueDepth, mQueue.size());
+
+            if (mIdleThreadCount > 0) {
+                mLock.notify();
+            } else if (mThreadCount < mMaxThreads) {
+                mThreadCount++;
+                new WorkerThread(mThreadCount).start();
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Cancels all the requests, queued or running.
+     */
+    public void cancelAll() {
+        synchronized (mLock) {
+            for (Job job : new ArrayList<>(mJobs.values())) {
+                for (Request request : new ArrayList<>(job.mRequests)) {
+                    request.cancelLocked();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels all the requests and stops the background threads once the running palettes are
+     * generated. No request can be made afterwards.
+     */
+    public void shutdown() {
+        synchronized (mLock) {
+            cancelAll();
+            mShutdown = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread, coalesced requests counting once.
+     */
+    public int getQueueDepth() {
+        synchronized (mLock) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * Returns the largest value {@link #getQueueDepth()} has had.
+     */
+    public int getPeakQueueDepth() {
+        synchronized (mLock) {
+            return mPeakQueueDepth;
+        }
+    }
+
+    /**
+     * Returns the number of requests whose listener has been called, including the ones called
+     * with null after a failure.
+     */
+    public int getCompletedCount() {
+        synchronized (mLock) {
+            return mCompletedCount;
+        }
+    }
+
+    /**
+     * Returns the number of requests which shared the palette of an earlier request.
+     */
+    public int getCoalescedCount() {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * Returns the number of requests which have been cancelled.
+     */
+    public int getCancelledCount() {
+        synchronized (mLock) {
+            return mCancelledCount;
+        }
+    }
+
+    /**
+     * Returns the number of requests which have been dropped because the queue was full.
+     */
+    public int getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    /**
+     * Returns the number of palettes whose generation threw an exception.
+     */
+    public int getFailedCount() {
+        synchronized (mLock) {
+            return mFailedCount;
+        }
+    }
+
+    /**
+     * Returns the average time palettes waited in the queue before being generated.
+     */
+    public long getAverageWaitMillis() {
+        synchronized (mLock) {
+            return mStartedCount != 0 ? mTotalWaitMillis / mStartedCount : 0;
+        }
+    }
+
+    /**
+     * Returns the average time between a request and the call to its listener.
+     */
+    public long getAverageLatencyMillis() {
+        synchronized (mLock) {
+            return mCompletedCount != 0 ? mTotalLatencyMillis / mCompletedCount : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return String.format("PaletteGenerator[queue=%d,peakQueue=%d,completed=%d,"
+                    + "coalesced=%d,cancelled=%d,dropped=%d,avgWait=%dms,avgLatency=%dms]",
+                    mQueue.size(), mPeakQueueDepth, mCompletedCount, mCoalescedCount,
+                    mCancelledCount, mDroppedCount, getAverageWaitMillis(),
+                    getAverageLatencyMillis());
+        }
+    }
+
+    private void dropLowestPriorityJob() {
+        Job lowest = null;
+        for (Job job : mQueue) {
+            if (lowest == null || JOB_COMPARATOR.compare(job, lowest) > 0) {
+                lowest = job;
+            }
+        }
+        mQueue.remove(lowest);
+        mJobs.remove(lowest.mKey);
+        for (Request request : lowest.mRequests) {
+            request.mCancelled = true;
+            mDroppedCount++;
+        }
+        lowest.mRequests.clear();
+    }
+
+    private Job takeJob() throws InterruptedException {
+        synchronized (mLock) {
+            while (mQueue.isEmpty()) {
+                if (mShutdown) {
+                    return null;
+                }
+                mIdleThreadCount++;
+                try {
+                    mLock.wait(KEEP_ALIVE_MILLIS);
+                } finally {
+                    mIdleThreadCount--;
+                }
+                if (mQueue.isEmpty()) {
+                    // Nothing to do for a while, let the thread go
+                    return null;
+                }
+            }
+            final Job job = mQueue.poll();
+            job.mRunning = true;
+            mStartedCount++;
+            mTotalWaitMillis += SystemClock.uptimeMillis() - job.mQueueTime;
+            return job;
+        }
+    }
+
+    private void runJob(final Job job) {
+        Palette palette = null;
+        try {
+            palette = mCache != null ? mCache.generate(job.mKey, job.mBuilder)
+                    : job.mBuilder.generate();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            Log.e(LOG_TAG, "Failed to generate palette for " + job.mKey, e);
+        }
+
+        final List<Request> requests;
+        synchronized (mLock) {
+            mJobs.remove(job.mKey);
+            if (palette == null) {
+                // Still delivered, with null, so that the requests don't wait forever
+                mFailedCount++;
+            }
+            if (job.mRequests.isEmpty()) {
+                // Everyone lost interest while it was running
+                return;
+            }
+            requests = new ArrayList<>(job.mRequests);
+        }
+
+        final Palette result = palette;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Request request : requests) {
+                    request.deliver(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * A pending request for a palette.
+     */
+    public final class Request {
+        final Palette.PaletteAsyncListener mListener;
+        final long mStartTime;
+        Job mJob;
+        boolean mCancelled;
+        boolean mDone;
+
+        Request(Palette.PaletteAsyncListener listener, long startTime) {
+            mListener = listener;
+            mStartTime = startTime;
+        }
+
+        /**
+         * Cancels the request, so that its listener won't be called. If this is called on the
+         * main thread, the listener is guaranteed not to be called afterwards.
+         */
+        public void cancel() {
+            synchronized (mLock) {
+                cancelLocked();
+            }
+        }
+
+        /**
+         * Returns true if the request has been cancelled, or dropped because the queue was full.
+         */
+        public boolean isCancelled() {
+            synchronized (mLock) {
+                return mCancelled;
+            }
+        }
+
+        /**
+         * Returns true if the listener has been called, with the palette or with null.
+         */
+        public boolean isDone() {
+            synchronized (mLock) {
+                return mDone;
+            }
+        }
+
+        void cancelLocked() {
+            if (mCancelled || mDone) {
+                return;
+            }
+            mCancelled = true;
+            mCancelledCount++;
+            final Job job = mJob;
+            job.mRequests.remove(this);
+            if (job.mRequests.isEmpty() && !job.mRunning) {
+                mQueue.remove(job);
+                mJobs.remove(job.mKey);
+            }
+        }
+
+        void deliver(Palette palette) {
+            synchronized (mLock) {
+                if (mCancelled) {
+                    return;
+                }
+                mDone = true;
+                mCompletedCount++;
+                mTotalLatencyMillis += SystemClock.uptimeMillis() - mStartTime;
+            }
+            mListener.onGenerated(palette);
+        }
+    }
+
+    private static final class Job {
+        final String mKey;
+        final Palette.Builder mBuilder;
+        final long mSequence;
+        final long mQueueTime;
+        final List<Request> mRequests = new ArrayList<>(1);
+        int mPriority;
+        boolean mRunning;
+
+        Job(String key, Palette.Builder builder, int priority, long sequence, long queueTime) {
+            mKey = key;
+            mBuilder = builder;
+            mPriority = priority;
+            mSequence = sequence;
+            mQueueTime = queueTime;
+        }
+    }
+
+    /**
+     * Sorts jobs by descending priority, then in the order they were queued.
+     */
+    private static final Comparator<Job> JOB_COMPARATOR = new Comparator<Job>() {
+        @Override
+        public int compare(Job lhs, Job rhs) {
+            if (lhs.mPriority != rhs.mPriority) {
+                return lhs.mPriority > rhs.mPriority ? -1 : 1;
+            }
+            return lhs.mSequence < rhs.mSequence ? -1 : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+        }
+    };
+
+    private class WorkerThread extends Thread {
+        WorkerThread(int index) {
+            super("PaletteGenerator #" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                Job job;
+                while ((job = takeJob()) != null) {
+                    runJob(job);
+                }
+            } catch (InterruptedException e) {
+                // Exit
+            } finally {
+                synchronized (mLock) {
+                    mThreadCount--;
+                    if (!mQueue.isEmpty() && !mShutdown && mIdleThreadCount == 0) {
+                        // A job was queued as we were leaving, don't strand it
+                        mThreadCount++;
+                        new WorkerThread(mThreadCount).start();
+                    }
+                }
+            }
+        }
+    }
+}
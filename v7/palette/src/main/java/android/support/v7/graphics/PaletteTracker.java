@@ -0,0 +1,380 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.graphics.Bitmap;
+import android.support.annotation.FloatRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ArrayPool;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks the {@link Palette} of a sequence of frames, such as sampled video frames or the frames
+ * of an animation, at a fraction of the cost of generating a palette for every frame.
+ * <p>
+ * Each frame is sampled into a color histogram, which is blended into a moving histogram with
+ * {@link #setDecay(float)}. The moving histogram is only quantized again when its colors have
+ * shifted by more than {@link #setThreshold(float)} since the last quantization, otherwise the
+ * current palette is returned as is. When a new palette is generated, the swatch previously
+ * selected for each {@link Target} is kept while it stays within
+ * {@link #setHysteresis(float)} of the best candidate, so that colors derived from the palette
+ * don't flicker between similar swatches.
+ * <p>
+ * Instances are not thread safe and should be fed frames from a single thread.
+ *
+ * <pre>
+ * PaletteTracker tracker = new PaletteTracker();
+ * ...
+ * // For each sampled frame
+ * Palette palette = tracker.update(frame);
+ * tint(palette.getVibrantColor(defaultColor));
+ * </pre>
+ */
+public final class PaletteTracker {
+
+    private static final float DEFAULT_DECAY = 0.5f;
+    private static final float DEFAULT_THRESHOLD = 0.1f;
+    private static final float DEFAULT_HYSTERESIS = 0.05f;
+
+    /**
+     * Shifts turning a histogram index into a coarse one, keeping 3 of the 5 bits of each
+     * component. Changes are measured on the coarse histogram, which isn't sensitive to noise.
+     */
+    private static final int COARSE_SHIFT = 2;
+    private static final int COARSE_SIZE = 1 << 9;
+
+    /** Total population of the histograms handed to the quantizer. */
+    private static final int QUANTIZE_POPULATION = 1 << 16;
+
+    private final List<Target> mTargets = new ArrayList<>();
+    private final List<Palette.Filter> mFilters = new ArrayList<>();
+
+    private int mMaxColors = Palette.DEFAULT_CALCULATE_NUMBER_COLORS;
+    private int mResizeArea = Palette.DEFAULT_RESIZE_BITMAP_AREA;
+    private float mDecay = DEFAULT_DECAY;
+    private float mThreshold = DEFAULT_THRESHOLD;
+    private float mHysteresis = DEFAULT_HYSTERESIS;
+
+    // Fraction of the pixels in each color, blended over the frames
+    private float[] mMovingHistogram;
+    // Coarse moving histogram, now and at the time of the last quantization
+    private final float[] mCoarseHistogram = new float[COARSE_SIZE];
+    private final float[] mQuantizedHistogram = new float[COARSE_SIZE];
+    private int[] mRow;
+
+    private Palette mPalette;
+    private int mFrameCount;
+    private int mQuantizeCount;
+
+    public PaletteTracker() {
+        mFilters.add(Palette.DEFAULT_FILTER);
+
+        mTargets.add(Target.LIGHT_VIBRANT);
+        mTargets.add(Target.VIBRANT);
+        mTargets.add(Target.DARK_VIBRANT);
+        mTargets.add(Target.LIGHT_MUTED);
+        mTargets.add(Target.MUTED);
+        mTargets.add(Target.DARK_MUTED);
+    }
+
+    /**
+     * Set the maximum number of colors to use in the quantization step.
+     *
+     * @see Palette.Builder#maximumColorCount(int)
+     */
+    @NonNull
+    public PaletteTracker maximumColorCount(int colors) {
+        mMaxColors = colors;
+        return this;
+    }
+
+    /**
+     * Set the number of pixels sampled from each frame. Frames larger than this are sampled on
+     * a regular grid rather than scaled. If {@code area} <= 0, every pixel is counted.
+     *
+     * @see Palette.Builder#resizeBitmapArea(int)
+     */
+    @NonNull
+    public PaletteTracker resizeFrameArea(int area) {
+        mResizeArea = area;
+        return this;
+    }
+
+    /**
+     * Set the weight kept by the previous frames when a frame is added. With 0 only the latest
+     * frame is used, higher values smooth out short changes. Defaults to 0.5.
+     */
+    @NonNull
+    public PaletteTracker setDecay(
+            @FloatRange(from = 0, to = 1, toInclusive = false) float decay) {
+        if (decay < 0 || decay >= 1) {
+            throw new IllegalArgumentException("decay must be in [0, 1)");
+        }
+        mDecay = decay;
+        return this;
+    }
+
+    /**
+     * Set the fraction of the pixels which must have changed color since the last quantization
+     * for the palette to be generated again. With 0 every frame which differs from the last
+     * quantized one is quantized again. Defaults to 0.1.
+     */
+    @NonNull
+    public PaletteTracker setThreshold(@FloatRange(from = 0, to = 1) float threshold) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("threshold must be in [0, 1]");
+        }
+        mThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Set how much better, in {@link Target} score, a new swatch needs to be than the one
+     * previously selected for a target to replace it. With 0 the best swatch is always
+     * selected. Defaults to 0.05.
+     */
+    @NonNull
+    public PaletteTracker setHysteresis(@FloatRange(from = 0) float hysteresis) {
+        if (hysteresis < 0) {
+            throw new IllegalArgumentException("hysteresis must be >= 0");
+        }
+        mHysteresis = hysteresis;
+        return this;
+    }
+
+    /**
+     * Clear all added filters. This includes any default filters added automatically.
+     */
+    @NonNull
+    public PaletteTracker clearFilters() {
+        mFilters.clear();
+        return this;
+    }
+
+    /**
+     * Add a filter to be able to have fine grained control over which colors are allowed in the
+     * resulting palette.
+     */
+    @NonNull
+    public PaletteTracker addFilter(@NonNull Palette.Filter filter) {
+        mFilters.add(filter);
+        return this;
+    }
+
+    /**
+     * Clear all added targets. This includes any default targets added automatically.
+     */
+    @NonNull
+    public PaletteTracker clearTargets() {
+        mTargets.clear();
+        return this;
+    }
+
+    /**
+     * Add a target profile to be generated in the palette.
+     */
+    @NonNull
+    public PaletteTracker addTarget(@NonNull Target target) {
+        if (!mTargets.contains(target)) {
+            mTargets.add(target);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a frame held in a {@link Bitmap} and returns the palette of the sequence.
+     */
+    @NonNull
+    public Palette update(@NonNull Bitmap frame) {
+        final int width = frame.getWidth();
+        final int height = frame.getHeight();
+        final int step = getSampleStep(width, height);
+        if (mRow == null || mRow.length < width) {
+            mRow = new int[width];
+        }
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+        try {
+            Arrays.fill(hist, 0, ColorHistogram.SIZE, 0);
+            // Only read the rows which are sampled
+            for (int y = 0; y < height; y += step) {
+                frame.getPixels(mRow, 0, width, 0, y, width, 1);
+                ColorHistogram.accumulate(mRow, 0, width, width, 1, step, hist);
+            }
+            return update(hist, ((width + step - 1) / step) * ((height + step - 1) / step));
+        } finally {
+            arrayPool.release(hist);
+        }
+    }
+
+    /**
+     * Adds a frame of ARGB pixels held in an array and returns the palette of the sequence.
+     *
+     * @see Palette.Builder#Builder(int[], int, int, int, int)
+     */
+    @NonNull
+    public Palette update(@NonNull int[] pixels, int offset, int stride, int width, int height) {
+        final int step = getSampleStep(width, height);
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+        try {
+            Arrays.fill(hist, 0, ColorHistogram.SIZE, 0);
+            ColorHistogram.accumulate(pixels, offset, stride, width, height, step, hist);
+            return update(hist, ((width + step - 1) / step) * ((height + step - 1) / step));
+        } finally {
+            arrayPool.release(hist);
+        }
+    }
+
+    /**
+     * Adds a frame of ARGB pixels held in a buffer and returns the palette of the sequence.
+     *
+     * @see Palette.Builder#Builder(IntBuffer, int, int, int, int)
+     */
+    @NonNull
+    public Palette update(@NonNull IntBuffer pixels, int offset, int stride, int width,
+            int height) {
+        final int step = getSampleStep(width, height);
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+        try {
+            Arrays.fill(hist, 0, ColorHistogram.SIZE, 0);
+            ColorHistogram.accumulate(pixels, offset, stride, width, height, step, hist);
+            return update(hist, ((width + step - 1) / step) * ((height + step - 1) / step));
+        } finally {
+            arrayPool.release(hist);
+        }
+    }
+
+    /**
+     * Returns the current palette, or null if no frame has been added yet.
+     */
+    @Nullable
+    public Palette getPalette() {
+        return mPalette;
+    }
+
+    /**
+     * Forgets all the frames added so far, for example when playback moves to other content.
+     */
+    public void reset() {
+        mMovingHistogram = null;
+        mPalette = null;
+    }
+
+    /**
+     * Returns the number of frames added.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the number of times a palette has been generated.
+     */
+    public int getQuantizeCount() {
+        return mQuantizeCount;
+    }
+
+    private int getSampleStep(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Frame is empty");
+        }
+        final long area = (long) width * height;
+        if (mResizeArea > 0 && area > mResizeArea) {
+            return (int) Math.ceil(Math.sqrt(area / (double) mResizeArea));
+        }
+        return 1;
+    }
+
+    private static int toCoarseIndex(int index) {
+        final int r = index >> (10 + COARSE_SHIFT);
+        final int g = (index >> (5 + COARSE_SHIFT)) & 0x7;
+        final int b = (index >> COARSE_SHIFT) & 0x7;
+        return r << 6 | g << 3 | b;
+    }
+
+    private Palette update(int[] hist, int sampleCount) {
+        mFrameCount++;
+
+        float[] moving = mMovingHistogram;
+        final boolean first = moving == null;
+        if (first) {
+            moving = mMovingHistogram = new float[ColorHistogram.SIZE];
+        }
+
+        // Blend the frame in
+        final float scale = (first ? 1f : (1f - mDecay)) / sampleCount;
+        final float decay = first ? 0f : mDecay;
+        final float[] coarse = mCoarseHistogram;
+        Arrays.fill(coarse, 0);
+        for (int i = 0; i < ColorHistogram.SIZE; i++) {
+            final float value = moving[i] * decay + hist[i] * scale;
+            moving[i] = value;
+            coarse[toCoarseIndex(i)] += value;
+        }
+
+        // Then measure how far we are from the last quantized distribution
+        final float[] quantized = mQuantizedHistogram;
+        float distance = 0;
+        for (int i = 0; i < COARSE_SIZE; i++) {
+            distance += Math.abs(coarse[i] - quantized[i]);
+        }
+
+        // The distance counts each moved pixel twice, once where it left and once where it went
+        if (mPalette == null || distance / 2 > mThreshold) {
+            quantize();
+        }
+        return mPalette;
+    }
+
+    private void quantize() {
+        final float[] moving = mMovingHistogram;
+        final ArrayPool arrayPool = ArrayPool.getDefault();
+        final int[] hist = arrayPool.acquireIntArray(ColorHistogram.SIZE);
+        final ColorHistogram histogram;
+        try {
+            for (int i = 0; i < ColorHistogram.SIZE; i++) {
+                hist[i] = Math.round(moving[i] * QUANTIZE_POPULATION);
+            }
+            histogram = ColorHistogram.fromDense(hist);
+        } finally {
+            arrayPool.release(hist);
+        }
+        System.arraycopy(mCoarseHistogram, 0, mQuantizedHistogram, 0, COARSE_SIZE);
+
+        final List<Palette.Swatch> swatches;
+        if (histogram.getColorCount() == 0) {
+            swatches = new ArrayList<>();
+        } else {
+            final ColorCutQuantizer quantizer = new ColorCutQuantizer(histogram, mMaxColors,
+                    mFilters.isEmpty() ? null
+                            : mFilters.toArray(new Palette.Filter[mFilters.size()]), 1);
+            swatches = quantizer.getQuantizedColors();
+        }
+
+        final Palette palette = new Palette(swatches, new ArrayList<>(mTargets));
+        palette.generate(mPalette, mHysteresis);
+        mPalette = palette;
+        mQuantizeCount++;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * An algorithm reducing the colors of an image to a small number of {@link Palette.Swatch}es,
+ * which can be set with {@link Palette.Builder#setQuantizer(Quantizer)}.
+ * <p>
+ * By default {@link Palette} uses a median cut quantizer. {@link WuQuantizer} usually gives
+ * swatches closer to the image's colors for a similar cost, and {@link KMeansQuantizer} can
+ * refine the output of any other quantizer.
+ */
+public interface Quantizer {
+
+    /**
+     * Reduces the colors of {@code histogram} to at most {@code maxColors} swatches.
+     * <p>
+     * The colors excluded by the builder's {@link Palette.Filter}s have already been removed
+     * from the histogram, and the returned swatches are filtered again afterwards. The
+     * population of each swatch should be the number of pixels it represents.
+     *
+     * @param histogram the colors of the image, which has at least one color.
+     * @param maxColors the maximum number of swatches to return.
+     */
+    @NonNull
+    List<Palette.Swatch> quantize(@NonNull ColorHistogram histogram, int maxColors);
+
+    /**
+     * Returns a string identifying this quantizer and its parameters, used by
+     * {@link PaletteCache} to key the palettes it generates. Two quantizers with the same key
+     * must return the same swatches for the same histogram.
+     *
+     * @return the key, or null if the palettes generated by this quantizer should not be
+     *         cached.
+     */
+    @Nullable
+    String getCacheKey();
+}
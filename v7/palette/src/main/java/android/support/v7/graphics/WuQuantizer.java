@@ -0,0 +1,386 @@
+/*
+ * Copyright 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Quantizer} implementing Xiaolin Wu's color quantizer, which splits the color space
+ * into boxes so as to minimize the variance of the colors within each box.
+ * <p>
+ * The cumulative moments of the histogram are computed once in a table of 33x33x33 entries,
+ * after which the variance of any box can be read in constant time. Each split is then found by
+ * a linear search along each axis of the box, so the cost of the splits only depends on the
+ * number of colors requested, not on the size of the image.
+ * <p>
+ * Instances are stateless and can be shared between threads.
+ */
+public final class WuQuantizer implements Quantizer {
+
+    private static final int QUANTIZE_WORD_WIDTH = 5;
+    private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
+
+    // The tables have an extra leading slice of zeros on each axis, so that boxes can be
+    // expressed with exclusive lower bounds
+    private static final int SIDE = (1 << QUANTIZE_WORD_WIDTH) + 1;
+    private static final int TABLE_SIZE = SIDE * SIDE * SIDE;
+
+    private static final int DIRECTION_RED = 0;
+    private static final int DIRECTION_GREEN = 1;
+    private static final int DIRECTION_BLUE = 2;
+
+    @NonNull
+    @Override
+    public List<Palette.Swatch> quantize(@NonNull ColorHistogram histogram, int maxColors) {
+        final Moments moments = new Moments(histogram);
+
+        final Box[] boxes = new Box[maxColors];
+        final double[] variances = new double[maxColors];
+        boxes[0] = new Box(0, SIDE - 1, 0, SIDE - 1, 0, SIDE - 1);
+
+        int boxCount = maxColors;
+        int next = 0;
+        for (int i = 1; i < maxColors; i++) {
+            boxes[i] = new Box();
+            if (moments.cut(boxes[next], boxes[i])) {
+                // Boxes of a single cell can't be split any further
+                variances[next] = boxes[next].volume() > 1 ? moments.variance(boxes[next]) : 0;
+                variances[i] = boxes[i].volume() > 1 ? moments.variance(boxes[i]) : 0;
+            } else {
+                // The box can't be split, try another one
+                variances[next] = 0;
+                i--;
+            }
+
+            // Split the box with the largest variance next
+            next = 0;
+            double maxVariance = variances[0];
+            for (int k = 1; k <= i; k++) {
+                if (variances[k] > maxVariance) {
+                    maxVariance = variances[k];
+                    next = k;
+                }
+            }
+            if (maxVariance <= 0) {
+                boxCount = i + 1;
+                break;
+            }
+        }
+
+        final List<Palette.Swatch> swatches = new ArrayList<>(boxCount);
+        for (int i = 0; i < boxCount; i++) {
+            final Box box = boxes[i];
+            final long weight = moments.volume(box, moments.mWeights);
+            if (weight > 0) {
+                swatches.add(new Palette.Swatch(Color.rgb(
+                        toRgb888(moments.volume(box, moments.mRedMoments), weight),
+                        toRgb888(moments.volume(box, moments.mGreenMoments), weight),
+                        toRgb888(moments.volume(box, moments.mBlueMoments), weight)),
+                        (int) weight));
+            }
+        }
+        return swatches;
+    }
+
+    @NonNull
+    @Override
+    public String getCacheKey() {
+        return "wu";
+    }
+
+    private static int toRgb888(long moment, long weight) {
+        // Scale the mean up from the quantized word width to 8 bits
+        final int value = (int) Math.round(moment * (double) (1 << (8 - QUANTIZE_WORD_WIDTH))
+                / weight);
+        return Math.min(value, 255);
+    }
+
+    private static int index(int r, int g, int b) {
+        return (r * SIDE + g) * SIDE + b;
+    }
+
+    /**
+     * A box of the color space. Lower bounds are exclusive and upper bounds inclusive.
+     */
+    private static final class Box {
+        int r0, r1;
+        int g0, g1;
+        int b0, b1;
+
+        Box() {
+        }
+
+        Box(int r0, int r1, int g0, int g1, int b0, int b1) {
+            this.r0 = r0;
+            this.r1 = r1;
+            this.g0 = g0;
+            this.g1 = g1;
+            this.b0 = b0;
+            this.b1 = b1;
+        }
+
+        int volume() {
+            return (r1 - r0) * (g1 - g0) * (b1 - b0);
+        }
+    }
+
+    /**
+     * Cumulative moments of the histogram: entry (r, g, b) of each table holds the sum over all
+     * colors with components lower or equal to (r, g, b).
+     */
+    private static final class Moments {
+        final long[] mWeights = new long[TABLE_SIZE];
+        final long[] mRedMoments = new long[TABLE_SIZE];
+        final long[] mGreenMoments = new long[TABLE_SIZE];
+        final long[] mBlueMoments = new long[TABLE_SIZE];
+        final double[] mSquaredMoments = new double[TABLE_SIZE];
+
+        Moments(ColorHistogram histogram) {
+            for (int i = 0, count = histogram.getColorCount(); i < count; i++) {
+                final int rgb = histogram.getColor(i);
+                final int r = (rgb >> (16 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+                final int g = (rgb >> (8 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+                final int b = (rgb >> (8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+                final long population = histogram.getPopulation(i);
+
+                final int index = index(r + 1, g + 1, b + 1);
+                mWeights[index] += population;
+                mRedMoments[index] += population * r;
+                mGreenMoments[index] += population * g;
+                mBlueMoments[index] += population * b;
+                mSquaredMoments[index] += population * (double) (r * r + g * g + b * b);
+            }
+            accumulate(mWeights);
+            accumulate(mRedMoments);
+            accumulate(mGreenMoments);
+            accumulate(mBlueMoments);
+            accumulate(mSquaredMoments);
+        }
+
+        private static void accumulate(long[] table) {
+            final long[] area = new long[SIDE];
+            for (int r = 1; r < SIDE; r++) {
+                for (int b = 0; b < SIDE; b++) {
+                    area[b] = 0;
+                }
+                for (int g = 1; g < SIDE; g++) {
+                    long line = 0;
+                    for (int b = 1; b < SIDE; b++) {
+                        final int index = index(r, g, b);
+                        line += table[index];
+                        area[b] += line;
+                        table[index] = table[index(r - 1, g, b)] + area[b];
+                    }
+                }
+            }
+        }
+
+        private static void accumulate(double[] table) {
+            final double[] area = new double[SIDE];
+            for (int r = 1; r < SIDE; r++) {
+                for (int b = 0; b < SIDE; b++) {
+                    area[b] = 0;
+                }
+                for (int g = 1; g < SIDE; g++) {
+                    double line = 0;
+                    for (int b = 1; b < SIDE; b++) {
+                        final int index = index(r, g, b);
+                        line += table[index];
+                        area[b] += line;
+                        table[index] = table[index(r - 1, g, b)] + area[b];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the sum of a table over a box.
+         */
+        long volume(Box box, long[] table) {
+            return table[index(box.r1, box.g1, box.b1)]
+                    - table[index(box.r1, box.g1, box.b0)]
+                    - table[index(box.r1, box.g0, box.b1)]
+                    + table[index(box.r1, box.g0, box.b0)]
+                    - table[index(box.r0, box.g1, box.b1)]
+                    + table[index(box.r0, box.g1, box.b0)]
+                    + table[index(box.r0, box.g0, box.b1)]
+                    - table[index(box.r0, box.g0, box.b0)];
+        }
+
+        double volume(Box box, double[] table) {
+            return table[index(box.r1, box.g1, box.b1)]
+                    - table[index(box.r1, box.g1, box.b0)]
+                    - table[index(box.r1, box.g0, box.b1)]
+                    + table[index(box.r1, box.g0, box.b0)]
+                    - table[index(box.r0, box.g1, box.b1)]
+                    + table[index(box.r0, box.g1, box.b0)]
+                    + table[index(box.r0, box.g0, box.b1)]
+                    - table[index(box.r0, box.g0, box.b0)];
+        }
+
+        /**
+         * Returns the part of {@link #volume(Box, long[])} which doesn't depend on the upper
+         * bound of the box in {@code direction}.
+         */
+        private static long bottom(Box box, int direction, long[] table) {
+            switch (direction) {
+                case DIRECTION_RED:
+                    return -table[index(box.r0, box.g1, box.b1)]
+                            + table[index(box.r0, box.g1, box.b0)]
+                            + table[index(box.r0, box.g0, box.b1)]
+                            - table[index(box.r0, box.g0, box.b0)];
+                case DIRECTION_GREEN:
+                    return -table[index(box.r1, box.g0, box.b1)]
+                            + table[index(box.r1, box.g0, box.b0)]
+                            + table[index(box.r0, box.g0, box.b1)]
+                            - table[index(box.r0, box.g0, box.b0)];
+                default:
+                    return -table[index(box.r1, box.g1, box.b0)]
+                            + table[index(box.r1, box.g0, box.b0)]
+                            + table[index(box.r0, box.g1, box.b0)]
+                            - table[index(box.r0, box.g0, box.b0)];
+            }
+        }
+
+        /**
+         * Returns the rest of {@link #volume(Box, long[])} when the upper bound of the box in
+         * {@code direction} is {@code position}.
+         */
+        private static long top(Box box, int direction, int position, long[] table) {
+            switch (direction) {
+                case DIRECTION_RED:
+                    return table[index(position, box.g1, box.b1)]
+                            - table[index(position, box.g1, box.b0)]
+                            - table[index(position, box.g0, box.b1)]
+                            + table[index(position, box.g0, box.b0)];
+                case DIRECTION_GREEN:
+                    return table[index(box.r1, position, box.b1)]
+                            - table[index(box.r1, position, box.b0)]
+                            - table[index(box.r0, position, box.b1)]
+                            + table[index(box.r0, position, box.b0)];
+                default:
+                    return table[index(box.r1, box.g1, position)]
+                            - table[index(box.r1, box.g0, position)]
+                            - table[index(box.r0, box.g1, position)]
+                            + table[index(box.r0, box.g0, position)];
+            }
+        }
+
+        /**
+         * Returns the weighted variance of the colors in a box.
+         */
+        double variance(Box box) {
+            final double dr = volume(box, mRedMoments);
+            final double dg = volume(box, mGreenMoments);
+            final double db = volume(box, mBlueMoments);
+            return volume(box, mSquaredMoments)
+                    - (dr * dr + dg * dg + db * db) / volume(box, mWeights);
+        }
+
+        /**
+         * Finds the position in {@code [first, last)} along {@code direction} at which cutting
+         * the box minimizes the sum of the variances of the two halves, which is when the
+         * returned value is maximized. The position is written in {@code cut[0]}, or -1 if no
+         * cut leaves pixels on both sides.
+         */
+        private double maximize(Box box, int direction, int first, int last, int[] cut,
+                long wholeR, long wholeG, long wholeB, long wholeW) {
+            final long baseR = bottom(box, direction, mRedMoments);
+            final long baseG = bottom(box, direction, mGreenMoments);
+            final long baseB = bottom(box, direction, mBlueMoments);
+            final long baseW = bottom(box, direction, mWeights);
+
+            double max = 0;
+            cut[0] = -1;
+            for (int i = first; i < last; i++) {
+                long halfR = baseR + top(box, direction, i, mRedMoments);
+                long halfG = baseG + top(box, direction, i, mGreenMoments);
+                long halfB = baseB + top(box, direction, i, mBlueMoments);
+                long halfW = baseW + top(box, direction, i, mWeights);
+                if (halfW == 0) {
+                    // The lower half is empty
+                    continue;
+                }
+                double temp = ((double) halfR * halfR + (double) halfG * halfG
+                        + (double) halfB * halfB) / halfW;
+
+                halfR = wholeR - halfR;
+                halfG = wholeG - halfG;
+                halfB = wholeB - halfB;
+                halfW = wholeW - halfW;
+                if (halfW == 0) {
+                    // The upper half is empty
+                    continue;
+                }
+                temp += ((double) halfR * halfR + (double) halfG * halfG
+                        + (double) halfB * halfB) / halfW;
+
+                if (temp > max) {
+                    max = temp;
+                    cut[0] = i;
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Cuts {@code box} in two, keeping the lower half in it and writing the upper half in
+         * {@code other}. Returns false if the box can't be cut.
+         */
+        boolean cut(Box box, Box other) {
+            final long wholeR = volume(box, mRedMoments);
+            final long wholeG = volume(box, mGreenMoments);
+            final long wholeB = volume(box, mBlueMoments);
+            final long wholeW = volume(box, mWeights);
+
+            final int[] cutR = new int[1];
+            final int[] cutG = new int[1];
+            final int[] cutB = new int[1];
+            final double maxR = maximize(box, DIRECTION_RED, box.r0 + 1, box.r1, cutR,
+                    wholeR, wholeG, wholeB, wholeW);
+            final double maxG = maximize(box, DIRECTION_GREEN, box.g0 + 1, box.g1, cutG,
+                    wholeR, wholeG, wholeB, wholeW);
+            final double maxB = maximize(box, DIRECTION_BLUE, box.b0 + 1, box.b1, cutB,
+                    wholeR, wholeG, wholeB, wholeW);
+
+            other.r1 = box.r1;
+            other.g1 = box.g1;
+            other.b1 = box.b1;
+            if (maxR >= maxG && maxR >= maxB) {
+                if (cutR[0] < 0) {
+                    return false;
+                }
+                other.r0 = box.r1 = cutR[0];
+                other.g0 = box.g0;
+                other.b0 = box.b0;
+            } else if (maxG >= maxR && maxG >= maxB) {
+                other.g0 = box.g1 = cutG[0];
+                other.r0 = box.r0;
+                other.b0 = box.b0;
+            } else {
+                other.b0 = box.b1 = cutB[0];
+                other.r0 = box.r0;
+                other.g0 = box.g0;
+            }
+            return true;
+        }
+    }
+}